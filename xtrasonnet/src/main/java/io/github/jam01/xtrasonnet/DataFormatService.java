@@ -7,43 +7,110 @@ package io.github.jam01.xtrasonnet;
  * compliance with the Elastic License 2.0.
  */
 
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 import org.jspecify.annotations.Nullable;
 import io.github.jam01.xtrasonnet.document.Document;
 import io.github.jam01.xtrasonnet.document.MediaType;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import io.github.jam01.xtrasonnet.plugins.DefaultAvroPlugin;
+import io.github.jam01.xtrasonnet.plugins.DefaultCBORPlugin;
 import io.github.jam01.xtrasonnet.plugins.DefaultCSVPlugin;
 import io.github.jam01.xtrasonnet.plugins.DefaultExcelPlugin;
+import io.github.jam01.xtrasonnet.plugins.DefaultFixedWidthPlugin;
 import io.github.jam01.xtrasonnet.plugins.DefaultJSONPlugin;
 import io.github.jam01.xtrasonnet.plugins.DefaultJavaPlugin;
+import io.github.jam01.xtrasonnet.plugins.DefaultMessagePackPlugin;
+import io.github.jam01.xtrasonnet.plugins.DefaultNDJSONPlugin;
 import io.github.jam01.xtrasonnet.plugins.DefaultPlainTextPlugin;
+import io.github.jam01.xtrasonnet.plugins.DefaultProtobufPlugin;
+import io.github.jam01.xtrasonnet.plugins.DefaultSmilePlugin;
 import io.github.jam01.xtrasonnet.plugins.DefaultXMLPlugin$;
+import io.github.jam01.xtrasonnet.plugins.MappedFiles;
 import io.github.jam01.xtrasonnet.spi.DataFormatPlugin;
 import io.github.jam01.xtrasonnet.spi.PluginException;
 import sjsonnet.EvalScope;
 import sjsonnet.Position;
 import sjsonnet.Val;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
+/**
+ * Finds the plugin that reads or writes each media type.
+ * <p>
+ * Content compressed as named by the {@value MediaTypes#PARAM_ENCODING} parameter, {@code gzip} or
+ * {@code deflate}, is handled here rather than by any plugin: it is read through a decompressing stream,
+ * and written through a compressing one, so neither side of it is ever held whole. Plugins see the
+ * media type without the parameter, as they do content marked {@code identity}, which is not compressed.
+ */
 public final class DataFormatService {
     private final List<DataFormatPlugin> plugins;
     public static final DataFormatService DEFAULT =
-            new DataFormatService(Arrays.asList(new DefaultJSONPlugin(), new DefaultJavaPlugin(), DefaultXMLPlugin$.MODULE$,
-                    new DefaultCSVPlugin(), new DefaultPlainTextPlugin(), new DefaultExcelPlugin()));
+            new DataFormatService(Arrays.asList(new DefaultJSONPlugin(), new DefaultCBORPlugin(), new DefaultSmilePlugin(),
+                    new DefaultMessagePackPlugin(), new DefaultAvroPlugin(), new DefaultProtobufPlugin(),
+                    new DefaultNDJSONPlugin(), new DefaultJavaPlugin(), DefaultXMLPlugin$.MODULE$, new DefaultCSVPlugin(),
+                    new DefaultFixedWidthPlugin(), new DefaultPlainTextPlugin(), new DefaultExcelPlugin()));
+
+    // Which plugin reads or writes a media type as a class, resolved once. Every transform and every
+    // xtr.read or xtr.write resolved again, asking each plugin in turn to check its types, parameters and
+    // classes. Held per class, so a class and its loader are never kept from collection, and at most
+    // MAX_CACHED_TYPES media types a class: parameters may be anything, a charset or a record path, and
+    // each distinct set is a distinct media type. Misses are not kept, they are errors, or left to the
+    // next plugin, and any number of them could be asked for.
+    private static final int MAX_CACHED_TYPES = 64;
+
+    private final ClassValue<Map<MediaType, DataFormatPlugin>> readers = new Resolutions();
+    private final ClassValue<Map<MediaType, DataFormatPlugin>> writers = new Resolutions();
+    private final Map<MediaType, DataFormatPlugin> nullReaders = new ConcurrentHashMap<>();
+
+    private static final class Resolutions extends ClassValue<Map<MediaType, DataFormatPlugin>> {
+        @Override
+        protected Map<MediaType, DataFormatPlugin> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    }
 
     public DataFormatService(List<DataFormatPlugin> plugins) {
-        this.plugins = plugins;
+        // a copy: resolutions are cached, and would not see later changes to the caller's list
+        this.plugins = List.copyOf(plugins);
     }
 
     public List<DataFormatPlugin> getPlugins() {
         return Collections.unmodifiableList(plugins);
     }
 
-    public Optional<DataFormatPlugin> thatCanWrite(MediaType output, Class<?> target) {
+    public Optional<DataFormatPlugin> thatCanWrite(MediaType output, @Nullable Class<?> target) {
+        // a null target has no ClassValue to be kept under, and is rare enough to resolve each time
+        if (target == null) {
+            return findWriter(output, null);
+        }
+        return resolve(writers.get(target), output, () -> findWriter(output, target));
+    }
+
+    private Optional<DataFormatPlugin> findWriter(MediaType output, @Nullable Class<?> target) {
         for (DataFormatPlugin plugin : plugins) {
             if (plugin.canWrite(output, target)) {
                 return Optional.of(plugin);
@@ -53,6 +120,12 @@ public final class DataFormatService {
     }
 
     public Optional<DataFormatPlugin> thatCanRead(Document<?> doc) {
+        @Nullable Object content = doc.getContent();
+        return resolve(content == null ? nullReaders : readers.get(content.getClass()), doc.getMediaType(),
+                () -> findReader(doc));
+    }
+
+    private Optional<DataFormatPlugin> findReader(Document<?> doc) {
         for (DataFormatPlugin plugin : plugins) {
             if (plugin.canRead(doc)) {
                 return Optional.of(plugin);
@@ -61,6 +134,21 @@ public final class DataFormatService {
         return Optional.empty();
     }
 
+    // past the bound a media type is still resolved, just not kept
+    private static Optional<DataFormatPlugin> resolve(Map<MediaType, DataFormatPlugin> resolved, MediaType mediaType,
+                                                      Supplier<Optional<DataFormatPlugin>> find) {
+        @Nullable DataFormatPlugin plugin = resolved.get(mediaType);
+        if (plugin != null) {
+            return Optional.of(plugin);
+        }
+
+        Optional<DataFormatPlugin> found = find.get();
+        if (found.isPresent() && resolved.size() < MAX_CACHED_TYPES) {
+            resolved.putIfAbsent(mediaType, found.get());
+        }
+        return found;
+    }
+
     /** The media types the registered plugins handle, in plugin order. */
     public Set<MediaType> supportedMediaTypes() {
         Set<MediaType> all = new LinkedHashSet<>();
@@ -76,21 +164,199 @@ public final class DataFormatService {
     }
 
     public <T> Document<T> mandatoryWrite(Val input, MediaType mediaType, @Nullable Class<T> targetType, EvalScope ev) throws PluginException {
-        return thatCanWrite(mediaType, targetType)
+        @Nullable ContentEncoding encoding = ContentEncoding.of(mediaType);
+        if (encoding != null) {
+            return writeEncoded(input, mediaType, encoding, targetType, ev);
+        }
+
+        MediaType plain = mediaType.withoutParameter(MediaTypes.PARAM_ENCODING); // any encoding=identity
+        return thatCanWrite(plain, targetType)
                 .orElseThrow(() -> new IllegalArgumentException(
                         "No plugin can write " + mediaType + " as " + (targetType == null ? "null" : targetType.getName())
                                 + ". Supported output media types: " + describeSupported()))
-                .write(input, mediaType, targetType, ev);
+                .write(input, plain, targetType, ev);
+    }
+
+    /**
+     * Writes the input into the given stream, through the first plugin that can write the media type as
+     * either bytes or a String. The stream is flushed but left open.
+     */
+    public void mandatoryWriteTo(Val input, MediaType mediaType, OutputStream out, EvalScope ev) throws PluginException {
+        @Nullable ContentEncoding encoding = ContentEncoding.of(mediaType);
+        if (encoding != null) {
+            writeEncodedTo(input, mediaType, encoding, out, ev);
+            return;
+        }
+
+        MediaType plain = mediaType.withoutParameter(MediaTypes.PARAM_ENCODING); // any encoding=identity
+        thatCanWrite(plain, byte[].class)
+                .or(() -> thatCanWrite(plain, String.class))
+                .orElseThrow(() -> noWriterFor(mediaType, OutputStream.class))
+                .writeTo(input, plain, out, ev);
+    }
+
+    /**
+     * Writes the input into the given writer, through the first plugin that can write the media type as
+     * either a String or bytes. The writer is flushed but left open.
+     */
+    public void mandatoryWriteTo(Val input, MediaType mediaType, Writer out, EvalScope ev) throws PluginException {
+        if (ContentEncoding.of(mediaType) != null) {
+            throw new IllegalArgumentException("Cannot write " + mediaType + " to a Writer, compressed content is binary;"
+                    + " write it to an OutputStream");
+        }
+
+        MediaType plain = mediaType.withoutParameter(MediaTypes.PARAM_ENCODING); // any encoding=identity
+        thatCanWrite(plain, String.class)
+                .or(() -> thatCanWrite(plain, byte[].class))
+                .orElseThrow(() -> noWriterFor(mediaType, Writer.class))
+                .writeTo(input, plain, out, ev);
+    }
+
+    private IllegalArgumentException noWriterFor(MediaType mediaType, Class<?> sink) {
+        return new IllegalArgumentException("No plugin can write " + mediaType + " to a " + sink.getSimpleName()
+                + ". Supported output media types: " + describeSupported());
     }
 
     public Val.Literal mandatoryRead(Document<?> doc, Position pos) throws PluginException {
-        return thatCanRead(doc)
+        @Nullable ContentEncoding encoding = ContentEncoding.of(doc.getMediaType());
+        if (encoding != null) {
+            return readEncoded(doc, encoding, pos);
+        }
+
+        MediaType plainType = doc.getMediaType().withoutParameter(MediaTypes.PARAM_ENCODING); // any encoding=identity
+        Document<?> plain = plainType == doc.getMediaType() ? doc : doc.withMediaType(plainType);
+        return thatCanRead(plain)
                 // getContent() may be null, and dereferencing it here replaced the real problem
                 // with a NullPointerException
                 .orElseThrow(() -> new IllegalArgumentException(
                         "No plugin can read " + doc.getMediaType() + " content of type "
                                 + (doc.getContent() == null ? "null" : doc.getContent().getClass().getName())
                                 + ". Supported input media types: " + describeSupported()))
-                .read(doc, pos);
+                .read(plain, pos);
+    }
+
+    // the plugin reads the decompressing stream as it would any other, a block at a time
+    private Val.Literal readEncoded(Document<?> doc, ContentEncoding encoding, Position pos) {
+        @Nullable Object content = doc.getContent();
+        MediaType decoded = doc.getMediaType().withoutParameter(MediaTypes.PARAM_ENCODING);
+        if (content == null) {
+            return mandatoryRead(Document.of(null, decoded), pos);
+        }
+
+        InputStream compressed;
+        try {
+            if (content instanceof InputStream is) {
+                compressed = new FilterInputStream(is) {
+                    @Override
+                    public void close() {
+                        // the stream is the caller's; closing the decompressor only releases its inflater
+                    }
+                };
+            } else if (content instanceof byte[] bytes) {
+                compressed = new ByteArrayInputStream(bytes);
+            } else if (content instanceof ByteBuffer buffer) {
+                compressed = new ByteBufferBackedInputStream(buffer.duplicate());
+            } else if (content instanceof Path path) {
+                compressed = MappedFiles.newInputStream(path);
+            } else if (content instanceof File file) {
+                compressed = MappedFiles.newInputStream(file.toPath());
+            } else {
+                throw new IllegalArgumentException("Cannot read " + doc.getMediaType() + " content of type "
+                        + content.getClass().getName() + "; compressed content must be an InputStream, byte[], ByteBuffer, Path or File");
+            }
+        } catch (IOException e) {
+            throw new PluginException("Unable to read " + encoding.value + " content", e);
+        }
+
+        // closed whatever happens, the file's mapping too, even when the gzip header cannot be read
+        try (compressed; InputStream is = encoding.decode(compressed)) {
+            return mandatoryRead(Document.of(is, decoded), pos);
+        } catch (IOException e) {
+            throw new PluginException("Unable to read " + encoding.value + " content", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Document<T> writeEncoded(Val input, MediaType mediaType, ContentEncoding encoding,
+                                         @Nullable Class<T> targetType, EvalScope ev) {
+        if (targetType != null && targetType.isAssignableFrom(OutputStream.class)) {
+            var out = new ByteArrayOutputStream();
+            writeEncodedTo(input, mediaType, encoding, out, ev);
+            return (Document<T>) Document.of(out, mediaType);
+        }
+
+        if (targetType != null && targetType.isAssignableFrom(byte[].class)) {
+            var out = new ByteArrayOutputStream();
+            writeEncodedTo(input, mediaType, encoding, out, ev);
+            return (Document<T>) Document.of(out.toByteArray(), mediaType);
+        }
+
+        throw new IllegalArgumentException("Cannot write " + mediaType + " as " + (targetType == null ? "null" : targetType.getName())
+                + ", compressed content is binary; write it as a byte[] or to an OutputStream");
+    }
+
+    // the plugin writes into the compressor, which writes out a block at a time as it fills
+    private void writeEncodedTo(Val input, MediaType mediaType, ContentEncoding encoding, OutputStream out, EvalScope ev) {
+        MediaType decoded = mediaType.withoutParameter(MediaTypes.PARAM_ENCODING);
+        var shielded = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                // the stream is the caller's, and is flushed but left open
+                out.flush();
+            }
+        };
+
+        try {
+            OutputStream compressor = encoding.encode(shielded);
+            mandatoryWriteTo(input, decoded, compressor, ev);
+            // Finished only once the plugin is done. Finishing after a failure would write the trailer
+            // behind whatever was written, leaving a truncated stream that still decompresses cleanly.
+            // Left unfinished, the caller's stream is plainly incomplete, and the deflater is freed once
+            // the compressor is collected.
+            compressor.close();
+        } catch (IOException e) {
+            throw new PluginException("Unable to write " + encoding.value + " content", e);
+        }
+    }
+
+    private enum ContentEncoding {
+        GZIP("gzip"),
+        DEFLATE("deflate");
+
+        private static final int BUFFER_SIZE = 8192;
+
+        final String value;
+
+        ContentEncoding(String value) {
+            this.value = value;
+        }
+
+        // null when the content isn't compressed
+        static @Nullable ContentEncoding of(MediaType mediaType) {
+            @Nullable String value = mediaType.getParameter(MediaTypes.PARAM_ENCODING);
+            if (value == null || value.equalsIgnoreCase("identity")) {
+                return null;
+            }
+
+            return switch (value.toLowerCase(Locale.ROOT)) {
+                case "gzip", "x-gzip" -> GZIP;
+                case "deflate" -> DEFLATE;
+                default -> throw new IllegalArgumentException("Unsupported " + MediaTypes.PARAM_ENCODING + " '" + value
+                        + "' of " + mediaType + "; supported: gzip, deflate");
+            };
+        }
+
+        InputStream decode(InputStream in) throws IOException {
+            return this == GZIP ? new GZIPInputStream(in, BUFFER_SIZE) : new InflaterInputStream(in);
+        }
+
+        OutputStream encode(OutputStream out) throws IOException {
+            return this == GZIP ? new GZIPOutputStream(out, BUFFER_SIZE) : new DeflaterOutputStream(out);
+        }
     }
 }
@@ -17,6 +17,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.Charset;
@@ -73,7 +74,30 @@ public final class ResourceResolver {
         return is;
     }
 
-    private static URL findClasspathResource(String resource) {
+    /**
+     * The local file a resource is read from, when there is one: a {@code file:} location, or a
+     * classpath resource served from a directory rather than from inside a jar. Null for anything
+     * else, including a resource that does not exist.
+     */
+    public static @Nullable File asFile(String resource) {
+        int idx = resource.indexOf(':');
+        if (idx == -1 || resource.startsWith("classpath:")) {
+            URL url = findClasspathResource(resource.substring(idx + 1));
+            if (url == null || !"file".equals(url.getProtocol())) return null;
+
+            try {
+                return new File(url.toURI());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                return null;
+            }
+        } else if (resource.startsWith("file")) {
+            return new File(resource.substring(idx + 1));
+        }
+
+        return null;
+    }
+
+    private static @Nullable URL findClasspathResource(String resource) {
         URL url = null;
 
         ClassLoader tccl = Thread.currentThread().getContextClassLoader();
@@ -0,0 +1,209 @@
+package io.github.jam01.xtrasonnet;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.MediaType;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Transformation scripts by location, recompiled in the background when they change.
+ * <p>
+ * Rebuilding Transformers is the only other way to pick up an edited script, and it compiles on
+ * whichever request thread gets there first -- every thread at once, right after a deployment. Here a
+ * single daemon thread polls the file behind each script, and behind every import the script has read,
+ * and recompiles off the request path. The result is published as a new generation, with its own pool
+ * of Transformers, in one atomic swap: calls already running finish on the generation they borrowed
+ * from, and the next call gets the new one.
+ * <p>
+ * Only local files can be watched: {@code file:} locations, and classpath resources served from a
+ * directory rather than from inside a jar ({@link ResourceResolver#asFile}). Anything else is compiled
+ * once and never reloaded. A script that no longer compiles is logged and the previous generation kept,
+ * so a bad save does not take a route down.
+ * <p>
+ * A Transformer is still never shared between threads; see {@link Transformer}. Each generation pools
+ * them the way {@code camel-xtrasonnet}'s {@code XtrasonnetLanguage.poolFor} does.
+ */
+public final class ScriptRegistry implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ScriptRegistry.class);
+
+    private final Function<String, TransformerBuilder> builders;
+    private final ScheduledExecutorService watcher;
+    // replaced whole on reload, never mutated in place: that is what makes the swap atomic
+    private final Map<String, Generation> scripts = new ConcurrentHashMap<>();
+
+    /** Check for changes at the given interval, building each script with default settings. */
+    public ScriptRegistry(Duration interval) {
+        this(interval, TransformerBuilder::new);
+    }
+
+    /**
+     * Check for changes at the given interval.
+     *
+     * @param builders configures a builder for a script's text -- input names, libraries, plugins. It
+     *                 is called again on every reload, from the watcher thread.
+     */
+    public ScriptRegistry(Duration interval, Function<String, TransformerBuilder> builders) {
+        Objects.requireNonNull(interval);
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("interval must be positive, got " + interval);
+        }
+
+        this.builders = Objects.requireNonNull(builders);
+        this.watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "xtrasonnet-script-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long millis = interval.toMillis();
+        watcher.scheduleWithFixedDelay(this::reloadChanged, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Compile the script at the given location, if it is not registered already. {@code transform}
+     * does this on first use; calling it up front keeps that first compile off the request path too.
+     */
+    public void register(String location) {
+        generation(location);
+    }
+
+    public Document<String> transform(String location, Document<?> payload) {
+        return transform(location, payload, Collections.emptyMap(), MediaTypes.ANY, String.class);
+    }
+
+    public <T> Document<T> transform(String location, Document<?> payload, Map<String, Document<?>> inputs,
+                                     MediaType output, Class<T> target) {
+        // read once: whatever is swapped in while this call runs, it borrows from and returns to the
+        // generation it started with
+        Generation current = generation(location);
+        Transformer transformer = current.borrow();
+        try {
+            return transformer.transform(payload, inputs, output, target);
+        } finally {
+            current.pool.add(transformer);
+        }
+    }
+
+    @Override
+    public void close() {
+        watcher.shutdownNow();
+    }
+
+    private Generation generation(String location) {
+        return scripts.computeIfAbsent(location, this::compile);
+    }
+
+    private Generation compile(String location) {
+        Generation next = new Generation(location);
+        next.pool.add(next.build()); // compile eagerly, so a broken script fails here and not later
+        return next;
+    }
+
+    private void reloadChanged() {
+        for (Map.Entry<String, Generation> entry : scripts.entrySet()) {
+            String location = entry.getKey();
+            if (!entry.getValue().isStale()) continue;
+
+            try {
+                Generation next = compile(location);
+                // replace only the generation that was checked: a concurrent register may not race a
+                // stale one back in
+                if (scripts.replace(location, entry.getValue(), next)) {
+                    logger.info("Reloaded transformation script {}", location);
+                }
+            } catch (Throwable e) {
+                // anything escaping would cancel the scheduled task, and with it every later reload. A
+                // script deep enough to overflow the stack is as much a bad save as a syntax error; the
+                // rest of VirtualMachineError means the JVM itself is failing, and is no script's fault
+                if (e instanceof VirtualMachineError && !(e instanceof StackOverflowError)) throw (VirtualMachineError) e;
+
+                // keep serving the last good version, and only complain once per change
+                entry.getValue().acceptStamps();
+                logger.warn("Could not reload transformation script {}, keeping the previous version", location, e);
+            }
+        }
+    }
+
+    // the last-modified time and length together, so an edit within the filesystem's timestamp
+    // granularity is still caught whenever it changes the size
+    private record Stamp(long lastModified, long length) {
+        static Stamp of(File file) {
+            return new Stamp(file.lastModified(), file.length());
+        }
+    }
+
+    /** One compiled version of a script, the files it was read from, and the Transformers built for it. */
+    private final class Generation {
+        private final String location;
+        private final String script;
+        private final Map<File, Stamp> watched = new ConcurrentHashMap<>();
+        private final Queue<Transformer> pool = new ConcurrentLinkedQueue<>();
+
+        Generation(String location) {
+            this.location = location;
+            // stamped before reading, so an edit landing in between shows as a change on the next check
+            watch(location);
+            try {
+                this.script = ResourceResolver.asString(location, null);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read transformation script " + location, e);
+            }
+        }
+
+        Transformer borrow() {
+            Transformer transformer = pool.poll();
+            return transformer != null ? transformer : build();
+        }
+
+        Transformer build() {
+            // imports are read when evaluation first reaches them, not when compiling, so they join
+            // the watch list as they are read
+            return builders.apply(script).build(ResourcePath.recordingImporter(this::watch));
+        }
+
+        void watch(String resource) {
+            @Nullable File file = ResourceResolver.asFile(resource);
+            if (file != null) watched.putIfAbsent(file, Stamp.of(file));
+        }
+
+        boolean isStale() {
+            for (Map.Entry<File, Stamp> entry : watched.entrySet()) {
+                if (!entry.getValue().equals(Stamp.of(entry.getKey()))) return true;
+            }
+            return false;
+        }
+
+        void acceptStamps() {
+            watched.replaceAll((file, stamp) -> Stamp.of(file));
+        }
+
+        @Override
+        public String toString() {
+            return location;
+        }
+    }
+}
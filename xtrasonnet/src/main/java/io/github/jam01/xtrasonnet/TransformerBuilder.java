@@ -13,6 +13,7 @@ import io.github.jam01.xtrasonnet.document.MediaType;
 import io.github.jam01.xtrasonnet.spi.DataFormatPlugin;
 import io.github.jam01.xtrasonnet.spi.Library;
 import sjsonnet.DefaultParseCache;
+import sjsonnet.Importer;
 import sjsonnet.stdlib.StdLibModule$;
 
 import java.util.ArrayList;
@@ -129,8 +130,13 @@ public class TransformerBuilder {
     }
 
     public Transformer build() {
+        return build(ResourcePath.importer());
+    }
+
+    // ScriptRegistry builds through here to learn which resources the script's imports read
+    Transformer build(Importer importer) {
         return new Transformer(script, inputNames, libs, service,
-                ResourcePath.root(), new DefaultParseCache(), ResourcePath.importer(),
+                ResourcePath.root(), new DefaultParseCache(), importer,
                 settings == null ? null : settings.build(),
                 StdLibModule$.MODULE$.Default().module());
     }
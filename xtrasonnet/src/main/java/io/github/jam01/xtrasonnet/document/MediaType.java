@@ -784,6 +784,20 @@ public class MediaType implements Comparable<MediaType>, Serializable {
         return new MediaType(this, params1);
     }
 
+    /**
+     * Return a replica of this instance without the given parameter.
+     *
+     * @return the same instance if the media type doesn't contain the parameter, or a new one otherwise
+     */
+    public MediaType withoutParameter(String k) {
+        if (!getParameters().containsKey(k)) {
+            return this;
+        }
+        Map<String, String> params = new LinkedHashMap<>(getParameters());
+        params.remove(k);
+        return new MediaType(this, params);
+    }
+
     /**
      * Parse the given String value into a {@code MediaType} object,
      * with this method name following the 'valueOf' naming convention
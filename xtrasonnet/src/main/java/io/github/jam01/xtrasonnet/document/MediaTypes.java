@@ -295,12 +295,31 @@ public class MediaTypes {
 
     public static final String TEXT_CSV_VALUE = "text/csv";
 
+    public static final MediaType TEXT_FIXED_WIDTH;
+
+    public static final String TEXT_FIXED_WIDTH_VALUE = "text/x-fixed-width";
+
     public static final MediaType APPLICATION_EXCEL;
     public static final String APPLICATION_EXCEL_VALUE = "application/vnd.ms-excel";
 
     public static final MediaType APPLICATION_OOXML_SPREADSHEET_SHEET;
     public static final String APPLICATION_OOXML_SPREADSHEET_SHEET_VALUE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
 
+    public static final MediaType APPLICATION_SMILE;
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    public static final MediaType APPLICATION_MSGPACK;
+    public static final String APPLICATION_MSGPACK_VALUE = "application/msgpack";
+
+    public static final MediaType APPLICATION_AVRO;
+    public static final String APPLICATION_AVRO_VALUE = "application/avro";
+
+    public static final MediaType APPLICATION_NDJSON;
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    public static final MediaType APPLICATION_PROTOBUF;
+    public static final String APPLICATION_PROTOBUF_VALUE = "application/x-protobuf";
+
     // See Null Object pattern
     /**
      * Public constant media type for representing an unknown content type. This is meant to used to signal to xtrasonnet
@@ -315,6 +334,8 @@ public class MediaTypes {
 
     public static final String PARAM_QUALITY_FACTOR = "q";
 
+    public static final String PARAM_ENCODING = "encoding";
+
     static {
         // Not using "valueOf' to avoid static init cost
         ANY = new MediaType("*", "*");
@@ -343,8 +364,14 @@ public class MediaTypes {
         TEXT_XML = new MediaType("text", "xml");
         APPLICATION_JAVA = new MediaType("application", "x-java-object");
         TEXT_CSV = new MediaType("text", "csv");
+        TEXT_FIXED_WIDTH = new MediaType("text", "x-fixed-width");
         APPLICATION_EXCEL = new MediaType("application", "vnd.ms-excel");
         APPLICATION_OOXML_SPREADSHEET_SHEET = new MediaType("application", "vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+        APPLICATION_MSGPACK = new MediaType("application", "msgpack");
+        APPLICATION_AVRO = new MediaType("application", "avro");
+        APPLICATION_NDJSON = new MediaType("application", "x-ndjson");
+        APPLICATION_PROTOBUF = new MediaType("application", "x-protobuf");
         UNKNOWN = new MediaType("unknown", "unknown");
     }
 }
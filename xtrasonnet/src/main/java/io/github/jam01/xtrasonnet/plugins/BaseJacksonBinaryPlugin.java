@@ -0,0 +1,166 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.MediaType;
+import io.github.jam01.xtrasonnet.spi.BasePlugin;
+import io.github.jam01.xtrasonnet.spi.PluginException;
+import sjsonnet.EvalScope;
+import sjsonnet.Materializer$;
+import sjsonnet.Position;
+import sjsonnet.Val;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Reads and writes a binary JSON format through its Jackson parser and generator. Tokens are visited
+ * straight into Vals when reading, and Vals straight into tokens when writing, so there is neither JSON
+ * text nor a tree of JsonNodes in between.
+ * <p>
+ * The factory given should leave the sources it reads and the targets it writes to open, see
+ * {@link com.fasterxml.jackson.core.StreamReadFeature#AUTO_CLOSE_SOURCE} and
+ * {@link com.fasterxml.jackson.core.StreamWriteFeature#AUTO_CLOSE_TARGET}: an InputStream read, and
+ * streams given to {@link #writeTo(Val, MediaType, OutputStream, EvalScope)}, are the caller's.
+ */
+public abstract class BaseJacksonBinaryPlugin extends BasePlugin {
+    private final MediaType mediaType;
+    private final JsonFactory factory;
+    private final String format;
+
+    protected BaseJacksonBinaryPlugin(MediaType mediaType, JsonFactory factory, String format) {
+        this.mediaType = mediaType;
+        this.factory = factory;
+        this.format = format;
+
+        supportedTypes.add(mediaType);
+
+        readerSupportedClasses.add(byte[].class);
+        readerSupportedClasses.add(ByteBuffer.class);
+        readerSupportedClasses.add(InputStream.class);
+        readerSupportedClasses.add(Path.class);
+        readerSupportedClasses.add(File.class);
+
+        writerSupportedClasses.add(byte[].class);
+        writerSupportedClasses.add(ByteBuffer.class);
+        writerSupportedClasses.add(OutputStream.class);
+    }
+
+    @Override
+    public JsonNode read(Document<?> doc) throws PluginException {
+        throw new UnsupportedOperationException("Use #read(Val, Position)");
+    }
+
+    @Override
+    public <T> Document<T> write(JsonNode input, MediaType mediaType, Class<T> targetType) throws PluginException {
+        throw new UnsupportedOperationException("Use #write(Val, MediaType, Class<T>, EvalScope)");
+    }
+
+    @Override
+    public Val.Literal read(Document<?> doc, Position pos) throws PluginException {
+        if (doc.getContent() == null) {
+            return new Val.Null(pos);
+        }
+
+        try {
+            Object content = doc.getContent();
+            if (content instanceof Path path) {
+                return readOwned(MappedFiles.newInputStream(path), pos);
+            } else if (content instanceof File file) {
+                return readOwned(MappedFiles.newInputStream(file.toPath()), pos);
+            }
+
+            try (JsonParser parser = createParser(doc)) {
+                return JsonParserTransformer$.MODULE$.transform(parser, new LiteralVisitor(pos));
+            }
+        } catch (IOException e) {
+            throw new PluginException("Unable to read " + format, e);
+        }
+    }
+
+    // a stream opened here, which the parser leaves open like any other
+    private Val.Literal readOwned(InputStream is, Position pos) throws IOException {
+        try (is; JsonParser parser = factory.createParser(is)) {
+            return JsonParserTransformer$.MODULE$.transform(parser, new LiteralVisitor(pos));
+        }
+    }
+
+    private JsonParser createParser(Document<?> doc) throws IOException {
+        Object content = doc.getContent();
+        if (content instanceof byte[] bytes) {
+            return factory.createParser(bytes);
+        } else if (content instanceof ByteBuffer buffer) {
+            // the buffer's own array when it has one; a direct buffer is read in place, never copied whole
+            ByteBuffer slice = buffer.slice();
+            if (slice.hasArray()) {
+                return factory.createParser(slice.array(), slice.arrayOffset(), slice.remaining());
+            }
+            return factory.createParser(new ByteBufferBackedInputStream(slice));
+        } else if (content instanceof InputStream is) {
+            return factory.createParser(is);
+        } else {
+            throw unsupportedReadClass(doc);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Document<T> write(Val input, MediaType mediaType, Class<T> targetType, EvalScope ev) throws PluginException {
+        if (targetType.isAssignableFrom(OutputStream.class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out, this.mediaType);
+        }
+
+        if (targetType.isAssignableFrom(ByteBuffer.class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(ByteBuffer.wrap(out.toByteArray()), this.mediaType);
+        }
+
+        if (targetType.isAssignableFrom(byte[].class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out.toByteArray(), this.mediaType);
+        }
+
+        throw unsupportedWriteClass(mediaType, targetType);
+    }
+
+    /**
+     * Writes the input into the given stream as each value is evaluated. The stream is flushed, but left
+     * open.
+     */
+    @Override
+    public void writeTo(Val input, MediaType mediaType, OutputStream out, EvalScope ev) throws PluginException {
+        // closing the generator flushes it, and the stream with it
+        try (JsonGenerator gen = factory.createGenerator(out)) {
+            Materializer$.MODULE$.apply0(input, new JsonGeneratorVisitor(gen), ev);
+        } catch (IOException e) {
+            throw new PluginException("Unable to write " + format, e);
+        }
+    }
+
+    @Override
+    public void writeTo(Val input, MediaType mediaType, Writer out, EvalScope ev) throws PluginException {
+        // the default would decode the bytes as characters
+        throw new PluginException(format + " is binary, and cannot be written to a Writer; write it to an OutputStream");
+    }
+}
@@ -0,0 +1,314 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import io.github.jam01.xtrasonnet.ResourceResolver;
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.MediaType;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import io.github.jam01.xtrasonnet.spi.BasePlugin;
+import io.github.jam01.xtrasonnet.spi.PluginException;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaParseException;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.jspecify.annotations.Nullable;
+import sjsonnet.EvalScope;
+import sjsonnet.Position;
+import sjsonnet.Val;
+import upickle.core.ArrVisitor;
+import upickle.core.Visitor;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Avro binary data, decoded straight into Vals and encoded straight from them through an {@link AvroCodec}
+ * compiled once per schema.
+ * <p>
+ * An object container file carries its own schema, and is read as an array of its records. Anything else
+ * is read as a single datum of the schema named by the {@value #PARAM_SCHEMA} parameter: either one of the
+ * schemas this plugin was constructed with, or a resource such as {@code classpath:schemas/order.avsc}.
+ */
+public class DefaultAvroPlugin extends BasePlugin {
+    public static final String PARAM_SCHEMA = "schema";
+    public static final String PARAM_CONTAINER = "container";
+
+    private final Map<String, Schema> registry;
+
+    // Codecs of the schemas containers carry, compiled once each. Keyed by the schema itself, so equal
+    // schemas read from different files share one codec. Containers may carry any schema at all, so at
+    // most MAX_CONTAINER_CODECS are kept, and any past those is compiled for the container alone.
+    private static final int MAX_CONTAINER_CODECS = 64;
+    private final Map<Schema, AvroCodec> containerCodecs = new ConcurrentHashMap<>();
+
+    public DefaultAvroPlugin() {
+        this(Map.of());
+    }
+
+    /**
+     * @param registry schemas by name, looked up before the {@value #PARAM_SCHEMA} parameter is resolved as
+     *                 a resource; a stand-in for a schema registry
+     */
+    public DefaultAvroPlugin(Map<String, Schema> registry) {
+        this.registry = Map.copyOf(registry);
+
+        supportedTypes.add(MediaTypes.APPLICATION_AVRO);
+        supportedTypes.add(new MediaType("avro", "binary"));
+
+        readerParams.add(PARAM_SCHEMA);
+        writerParams.add(PARAM_SCHEMA);
+        writerParams.add(PARAM_CONTAINER);
+
+        readerSupportedClasses.add(byte[].class);
+        readerSupportedClasses.add(ByteBuffer.class);
+        readerSupportedClasses.add(InputStream.class);
+        readerSupportedClasses.add(Path.class);
+        readerSupportedClasses.add(File.class);
+
+        writerSupportedClasses.add(byte[].class);
+        writerSupportedClasses.add(ByteBuffer.class);
+        writerSupportedClasses.add(OutputStream.class);
+    }
+
+    @Override
+    public JsonNode read(Document<?> doc) throws PluginException {
+        throw new UnsupportedOperationException("Use #read(Val, Position)");
+    }
+
+    @Override
+    public <T> Document<T> write(JsonNode input, MediaType mediaType, Class<T> targetType) throws PluginException {
+        throw new UnsupportedOperationException("Use #write(Val, MediaType, Class<T>, EvalScope)");
+    }
+
+    // the schema named by the media type, resolved and compiled once per set of parameters
+    private Optional<AvroCodec> codecOf(MediaType mediaType) {
+        return configFor(mediaType, mt -> {
+            String ref = mt.getParameter(PARAM_SCHEMA);
+            if (ref == null) return Optional.empty();
+
+            Schema schema = registry.get(ref);
+            if (schema == null) {
+                try (InputStream is = ResourceResolver.asStream(ref)) {
+                    schema = new Schema.Parser().parse(is);
+                } catch (IOException | SchemaParseException e) {
+                    throw new PluginException("Could not read Avro schema " + ref + ": " + e.getMessage(), e);
+                }
+            }
+            return Optional.of(AvroCodec$.MODULE$.of(schema));
+        });
+    }
+
+    @Override
+    public Val.Literal read(Document<?> doc, Position pos) throws PluginException {
+        Object content = doc.getContent();
+        if (content == null) {
+            return new Val.Null(pos);
+        }
+
+        try {
+            if (content instanceof byte[] bytes) {
+                return read(bytes, 0, bytes.length, doc.getMediaType(), pos);
+            } else if (content instanceof ByteBuffer buffer && buffer.hasArray()) {
+                return read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), doc.getMediaType(), pos);
+            } else if (content instanceof ByteBuffer buffer) {
+                return read(new ByteBufferBackedInputStream(buffer.slice()), doc.getMediaType(), pos);
+            } else if (content instanceof InputStream is) {
+                // closing a container's DataFileStream closes the stream beneath it, and this one is the caller's
+                return read(new FilterInputStream(is) {
+                    @Override
+                    public void close() {
+                    }
+                }, doc.getMediaType(), pos);
+            } else if (content instanceof Path path) {
+                try (InputStream is = MappedFiles.newInputStream(path)) {
+                    return read(is, doc.getMediaType(), pos);
+                }
+            } else if (content instanceof File file) {
+                try (InputStream is = MappedFiles.newInputStream(file.toPath())) {
+                    return read(is, doc.getMediaType(), pos);
+                }
+            } else {
+                throw unsupportedReadClass(doc);
+            }
+        } catch (IOException | AvroRuntimeException e) {
+            throw new PluginException("Unable to read Avro", e);
+        }
+    }
+
+    private Val.Literal read(byte[] bytes, int offset, int length, MediaType mediaType, Position pos) throws IOException {
+        if (length >= DataFileConstants.MAGIC.length
+                && Arrays.equals(bytes, offset, offset + DataFileConstants.MAGIC.length, DataFileConstants.MAGIC, 0, DataFileConstants.MAGIC.length)) {
+            return readContainer(new ByteArrayInputStream(bytes, offset, length), pos);
+        }
+        return readDatum(DecoderFactory.get().binaryDecoder(bytes, offset, length, null), mediaType, pos);
+    }
+
+    private Val.Literal read(InputStream is, MediaType mediaType, Position pos) throws IOException {
+        // the magic is looked at, and put back
+        InputStream in = is.markSupported() ? is : new BufferedInputStream(is);
+        in.mark(DataFileConstants.MAGIC.length);
+        byte[] magic = in.readNBytes(DataFileConstants.MAGIC.length);
+        in.reset();
+
+        if (Arrays.equals(magic, DataFileConstants.MAGIC)) {
+            return readContainer(in, pos);
+        }
+        return readDatum(DecoderFactory.get().binaryDecoder(in, null), mediaType, pos);
+    }
+
+    private Val.Literal readDatum(Decoder in, MediaType mediaType, Position pos) {
+        AvroCodec codec = codecOf(mediaType).orElseThrow(() -> new PluginException(
+                "Avro content is not an object container file, and so needs a schema; set the '" + PARAM_SCHEMA + "' parameter"));
+        return codec.reader().read(in, new LiteralVisitor(pos));
+    }
+
+    private AvroCodec containerCodecOf(Schema schema) {
+        @Nullable AvroCodec codec = containerCodecs.get(schema);
+        if (codec != null) {
+            return codec;
+        }
+
+        codec = AvroCodec$.MODULE$.of(schema);
+        if (containerCodecs.size() < MAX_CONTAINER_CODECS) {
+            @Nullable AvroCodec raced = containerCodecs.putIfAbsent(schema, codec);
+            if (raced != null) return raced;
+        }
+        return codec;
+    }
+
+    // each record is visited straight into the array, and none is held by the stream
+    private Val.Literal readContainer(InputStream in, Position pos) throws IOException {
+        ArrVisitor<Object, Val.Literal> records = new LiteralVisitor(pos).visitArray(-1, -1).narrow();
+        try (var stream = new DataFileStream<>(in, new VisitingDatumReader(records.subVisitor()))) {
+            while (stream.hasNext()) {
+                records.visitValue(stream.next(), -1);
+            }
+        }
+        return records.visitEnd(-1);
+    }
+
+    /** Reads each datum into the given visitor, with the codec of the schema the container declares. */
+    private final class VisitingDatumReader implements DatumReader<Object> {
+        private final Visitor<?, ?> visitor;
+        private @Nullable AvroCodec codec;
+
+        VisitingDatumReader(Visitor<?, ?> visitor) {
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void setSchema(Schema schema) {
+            codec = containerCodecOf(schema);
+        }
+
+        @Override
+        public Object read(@Nullable Object reuse, Decoder in) {
+            return codec.reader().read(in, visitor);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Document<T> write(Val input, MediaType mediaType, Class<T> targetType, EvalScope ev) throws PluginException {
+        if (targetType.isAssignableFrom(OutputStream.class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out, MediaTypes.APPLICATION_AVRO);
+        }
+
+        if (targetType.isAssignableFrom(ByteBuffer.class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(ByteBuffer.wrap(out.toByteArray()), MediaTypes.APPLICATION_AVRO);
+        }
+
+        if (targetType.isAssignableFrom(byte[].class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out.toByteArray(), MediaTypes.APPLICATION_AVRO);
+        }
+
+        throw unsupportedWriteClass(mediaType, targetType);
+    }
+
+    /**
+     * Writes the input as a single datum of the schema, or with {@code container=true} writes an Array of
+     * them as an object container file, record by record as each is evaluated. The stream is flushed, but
+     * left open.
+     */
+    @Override
+    public void writeTo(Val input, MediaType mediaType, OutputStream out, EvalScope ev) throws PluginException {
+        AvroCodec codec = codecOf(mediaType).orElseThrow(() -> new PluginException(
+                "Writing Avro requires a schema; set the '" + PARAM_SCHEMA + "' parameter"));
+
+        try {
+            if (mediaType.getParameterAsBoolean(PARAM_CONTAINER, false)) {
+                if (!(input instanceof Val.Arr arr)) {
+                    throw new IllegalArgumentException("Writing an Avro container requires an Array, found: " + input.prettyName());
+                }
+
+                // flushed rather than closed: closing would close the stream, which is the caller's
+                var writer = new DataFileWriter<>(new ValDatumWriter(codec, ev));
+                writer.create(codec.schema(), out);
+                for (int i = 0; i < arr.length(); i++) {
+                    writer.append(arr.value(i));
+                }
+                writer.flush();
+            } else {
+                BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+                codec.writer().write(input, encoder, ev);
+                encoder.flush();
+            }
+        } catch (IOException | AvroRuntimeException e) {
+            throw new PluginException("Unable to write Avro", e);
+        }
+    }
+
+    @Override
+    public void writeTo(Val input, MediaType mediaType, Writer out, EvalScope ev) throws PluginException {
+        // the default would decode the bytes as characters
+        throw new PluginException("Avro is binary, and cannot be written to a Writer; write it to an OutputStream");
+    }
+
+    private record ValDatumWriter(AvroCodec codec, EvalScope ev) implements DatumWriter<Val> {
+        @Override
+        public void setSchema(Schema schema) {
+            // always the codec's own
+        }
+
+        @Override
+        public void write(Val datum, Encoder out) {
+            codec.writer().write(datum, out, ev);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+
+/**
+ * Concise Binary Object Representation, RFC 8949.
+ */
+public class DefaultCBORPlugin extends BaseJacksonBinaryPlugin {
+    // a configured factory is safe to share
+    private static final CBORFactory FACTORY = CBORFactory.builder()
+            .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    public DefaultCBORPlugin() {
+        super(MediaTypes.APPLICATION_CBOR, FACTORY, "CBOR");
+    }
+}
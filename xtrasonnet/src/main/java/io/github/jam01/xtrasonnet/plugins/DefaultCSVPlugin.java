@@ -7,6 +7,8 @@ package io.github.jam01.xtrasonnet.plugins;
  * compliance with the Elastic License 2.0.
  */
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectReader;
@@ -19,11 +21,21 @@ import io.github.jam01.xtrasonnet.document.Document;
 import io.github.jam01.xtrasonnet.document.MediaType;
 import io.github.jam01.xtrasonnet.document.MediaTypes;
 import io.github.jam01.xtrasonnet.spi.PluginException;
+import org.jspecify.annotations.Nullable;
+import sjsonnet.EvalScope;
+import sjsonnet.Materializer$;
+import sjsonnet.Position;
+import sjsonnet.Val;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +62,10 @@ public class DefaultCSVPlugin extends BaseJacksonPlugin {
     // even callers who correctly kept one Transformer per thread. ObjectReader is immutable, so the
     // entries themselves are safe to share.
     private final Map<Map<String, String>, ObjectReader> readerCache = new ConcurrentHashMap<>();
+    // keyed by the parameters and the first row's columns, which between them decide the schema.
+    // Parameters come from callers and columns from data, so both caches keep only the first keys seen;
+    // see BasePlugin.cached
+    private final Map<WriterKey, ObjectWriter> writerCache = new ConcurrentHashMap<>();
 
     public DefaultCSVPlugin() {
         supportedTypes.add(MediaTypes.TEXT_CSV);
@@ -66,6 +82,8 @@ public class DefaultCSVPlugin extends BaseJacksonPlugin {
         readerSupportedClasses.add(InputStream.class);
         readerSupportedClasses.add(byte[].class);
         readerSupportedClasses.add(String.class);
+        readerSupportedClasses.add(Path.class);
+        readerSupportedClasses.add(File.class);
 
         writerSupportedClasses.add(OutputStream.class);
         writerSupportedClasses.add(byte[].class);
@@ -78,19 +96,79 @@ public class DefaultCSVPlugin extends BaseJacksonPlugin {
             return NullNode.getInstance();
         }
 
+        ObjectReader reader = readerFor(doc.getMediaType());
+
+        // Read data from CSV file
+        try {
+            if (String.class.isAssignableFrom(doc.getContent().getClass())) {
+                return reader.readTree((String) doc.getContent());
+            } else if (byte[].class.isAssignableFrom(doc.getContent().getClass())) {
+                return reader.readTree(((byte[]) doc.getContent()));
+            } else if (InputStream.class.isAssignableFrom(doc.getContent().getClass())) {
+                return reader.readTree((InputStream) doc.getContent());
+            } else if (doc.getContent() instanceof Path path) {
+                return reader.readTree(MappedFiles.newInputStream(path));
+            } else if (doc.getContent() instanceof File file) {
+                return reader.readTree(MappedFiles.newInputStream(file.toPath()));
+            } else {
+                throw unsupportedReadClass(doc);
+            }
+        } catch (JsonProcessingException jpe) {
+            throw new PluginException("Unable to convert CSV to JSON", jpe);
+        } catch (IOException e) {
+            throw new PluginException("Unable to read the byte array", e);
+        }
+    }
+
+    // Drives the parser's tokens straight into Vals. Going through read(Document) held the whole file
+    // as a tree of JsonNodes, and then a second time as Vals, before the script could see any of it.
+    @Override
+    public Val.Literal read(Document<?> doc, Position pos) throws PluginException {
+        if (doc.getContent() == null) {
+            return new Val.Null(pos);
+        }
+
+        ObjectReader reader = readerFor(doc.getMediaType());
+
+        try (JsonParser parser = createParser(reader, doc)) {
+            return JsonParserTransformer$.MODULE$.transform(parser, new LiteralVisitor(pos));
+        } catch (JsonProcessingException jpe) {
+            throw new PluginException("Unable to convert CSV to JSON", jpe);
+        } catch (IOException e) {
+            throw new PluginException("Unable to read the byte array", e);
+        }
+    }
+
+    private JsonParser createParser(ObjectReader reader, Document<?> doc) throws IOException {
+        if (String.class.isAssignableFrom(doc.getContent().getClass())) {
+            return reader.createParser((String) doc.getContent());
+        } else if (byte[].class.isAssignableFrom(doc.getContent().getClass())) {
+            return reader.createParser((byte[]) doc.getContent());
+        } else if (InputStream.class.isAssignableFrom(doc.getContent().getClass())) {
+            return reader.createParser((InputStream) doc.getContent());
+        } else if (doc.getContent() instanceof Path path) {
+            return reader.createParser(MappedFiles.newInputStream(path)); // closed with the parser
+        } else if (doc.getContent() instanceof File file) {
+            return reader.createParser(MappedFiles.newInputStream(file.toPath()));
+        } else {
+            throw unsupportedReadClass(doc);
+        }
+    }
+
+    private ObjectReader readerFor(MediaType mediaType) {
         // MediaType.getParameters returns an unmodifiable map, so it is safe as a key
-        ObjectReader reader = readerCache.computeIfAbsent(doc.getMediaType().getParameters(), (p) -> {
-            CsvSchema.Builder builder = baseBuilderFor(doc.getMediaType());
+        return cached(readerCache, mediaType.getParameters(), (p) -> {
+            CsvSchema.Builder builder = baseBuilderFor(mediaType);
 
             // assume header line present unless explicitly a value other than "present"
-            boolean headerln = doc.getMediaType().notContainsParameter(PARAM_HEADER_LINE) || doc.getMediaType().isParameterEqual(PARAM_HEADER_LINE, HEADER_LN_PRESENT_VALUE);
+            boolean headerln = mediaType.notContainsParameter(PARAM_HEADER_LINE) || mediaType.isParameterEqual(PARAM_HEADER_LINE, HEADER_LN_PRESENT_VALUE);
             if (headerln) {
                 builder.setUseHeader(true); // returning an Obj
                 return CSV_MAPPER.readerFor(Map.class).with(builder.build());
             } else {
                 builder.setUseHeader(false);
-                char separator = doc.getMediaType().getParameterAsChar(PARAM_SEPARATOR_CHAR, CsvSchema.DEFAULT_COLUMN_SEPARATOR);
-                List<String> columns = doc.getMediaType().getParameterAsList(PARAM_COLUMNS, separator, Collections.emptyList());
+                char separator = mediaType.getParameterAsChar(PARAM_SEPARATOR_CHAR, CsvSchema.DEFAULT_COLUMN_SEPARATOR);
+                List<String> columns = mediaType.getParameterAsList(PARAM_COLUMNS, separator, Collections.emptyList());
                 if (!columns.isEmpty()) { // columns found in param, return Obj with param columns
                     for (String column : columns) {
                         builder.addColumn(column);
@@ -100,61 +178,115 @@ public class DefaultCSVPlugin extends BaseJacksonPlugin {
                 return CSV_MAPPER.readerFor(List.class).with(builder.build()); // skip columns, returns Arr[Arr]
             }
         });
+    }
 
-        // Read data from CSV file
-        try {
-            if (String.class.isAssignableFrom(doc.getContent().getClass())) {
-                return reader.readTree((String) doc.getContent());
-            } else if (byte[].class.isAssignableFrom(doc.getContent().getClass())) {
-                return reader.readTree(((byte[]) doc.getContent()));
-            } else if (InputStream.class.isAssignableFrom(doc.getContent().getClass())) {
-                return reader.readTree((InputStream) doc.getContent());
-            } else {
-                throw unsupportedReadClass(doc);
-            }
-        } catch (JsonProcessingException jpe) {
-            throw new PluginException("Unable to convert CSV to JSON", jpe);
+    @Override
+    public <T> Document<T> write(JsonNode node, MediaType mediaType, Class<T> targetType) throws PluginException {
+        assertArrayNode(node, "Writing CSV requires an Array, found: " + node.getNodeType().name());
+        ObjectWriter writer = writerFor(mediaType, node.isEmpty() ? null : node.elements().next());
+        return writeCsv(writer, node, mediaType, targetType);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Document<T> write(Val input, MediaType mediaType, Class<T> targetType, EvalScope ev) throws PluginException {
+        if (targetType.isAssignableFrom(String.class)) {
+            var out = new StringWriter();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out.toString(), MediaTypes.TEXT_CSV);
+        }
+
+        if (targetType.isAssignableFrom(OutputStream.class)) {
+            // must be the ByteArrayOutputStream itself: wrapping it hands back a stream whose
+            // bytes the caller has no way to reach
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out, MediaTypes.TEXT_CSV);
+        }
+
+        if (targetType.isAssignableFrom(byte[].class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out.toByteArray(), MediaTypes.TEXT_CSV);
+        }
+
+        throw unsupportedWriteClass(mediaType, targetType);
+    }
+
+    /**
+     * Writes the input as UTF-8 CSV into the given stream, row by row as each is evaluated, without
+     * holding the output or a tree of it in memory. The stream is flushed, but left open.
+     */
+    @Override
+    public void writeTo(Val input, MediaType mediaType, OutputStream out, EvalScope ev) throws PluginException {
+        ObjectWriter writer = writerFor(input, mediaType, ev);
+        try (JsonGenerator gen = writer.createGenerator(out)) {
+            Materializer$.MODULE$.apply0(input, new JsonGeneratorVisitor(gen), ev);
         } catch (IOException e) {
-            throw new PluginException("Unable to read the byte array", e);
+            throw new PluginException("Unable to write CSV", e);
         }
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Writes the input as CSV into the given writer, row by row as each is evaluated, without holding
+     * the output or a tree of it in memory. The writer is flushed, but left open.
+     */
     @Override
-    public <T> Document<T> write(JsonNode node, MediaType mediaType, Class<T> targetType) throws PluginException {
-        assertArrayNode(node, "Writing CSV requires an Array, found: " + node.getNodeType().name());
-        if (node.isEmpty()) { // nothing to infer a schema from, and no rows to write
-            return writeCsv(CSV_MAPPER.writerFor(JsonNode.class).with(baseBuilderFor(mediaType).build()), node, mediaType, targetType);
+    public void writeTo(Val input, MediaType mediaType, Writer out, EvalScope ev) throws PluginException {
+        ObjectWriter writer = writerFor(input, mediaType, ev);
+        try (JsonGenerator gen = writer.createGenerator(out)) {
+            Materializer$.MODULE$.apply0(input, new JsonGeneratorVisitor(gen), ev);
+        } catch (IOException e) {
+            throw new PluginException("Unable to write CSV", e);
         }
-        JsonNode first = node.elements().next();
+    }
 
-        ObjectWriter writer;
-        CsvSchema.Builder builder = baseBuilderFor(mediaType);
+    // Only the first row is materialized up front, as a JsonNode, since it decides the schema; the rest
+    // are visited straight into the generator.
+    private ObjectWriter writerFor(Val input, MediaType mediaType, EvalScope ev) {
+        if (!(input instanceof Val.Arr arr)) {
+            throw new IllegalArgumentException("Writing CSV requires an Array, found: " + input.prettyName());
+        }
+
+        JsonNode first = arr.length() == 0 ? null : Materializer$.MODULE$.apply0(arr.value(0), JsonNodeVisitor$.MODULE$, ev);
+        return writerFor(mediaType, first);
+    }
+
+    private ObjectWriter writerFor(MediaType mediaType, @Nullable JsonNode first) {
+        if (first == null) { // nothing to infer a schema from, and no rows to write
+            return csvWriter(baseBuilderFor(mediaType));
+        }
 
         // assume header line present unless explicitly a value other than "present"
         boolean headerln = mediaType.notContainsParameter(PARAM_HEADER_LINE) || mediaType.getParameterAsBoolean(PARAM_HEADER_LINE, HEADER_LN_PRESENT_VALUE);
         char separator = mediaType.getParameterAsChar(PARAM_SEPARATOR_CHAR, CsvSchema.DEFAULT_COLUMN_SEPARATOR);
         List<String> paramColumns = mediaType.getParameterAsList(PARAM_COLUMNS, separator, Collections.emptyList());
 
-        if (first.isObject() && headerln) { // no header param, use first Obj for headers
-            builder.setUseHeader(true);
-            assertObjectNode(first, "The combination of parameters given requires an Object, found: " + node.getNodeType().name());
-            first.fieldNames().forEachRemaining(builder::addColumn);
-            writer = CSV_MAPPER.writerFor(JsonNode.class).with(builder.build());
-        } else if (first.isObject()) { // skip headers, but still need columns -- use first Obj fieldNames as dummies
-            builder.setUseHeader(false);
-            first.fieldNames().forEachRemaining(builder::addColumn);
-            writer = CSV_MAPPER.writerFor(JsonNode.class).with(builder.build());
+        if (first.isObject()) {
+            List<String> columns = new ArrayList<>(first.size());
+            first.fieldNames().forEachRemaining(columns::add);
+
+            return cached(writerCache, new WriterKey(mediaType.getParameters(), columns), k -> {
+                CsvSchema.Builder builder = baseBuilderFor(mediaType);
+                // with a header, the first Obj names it; without, its fieldNames still serve as dummy columns
+                builder.setUseHeader(headerln);
+                columns.forEach(builder::addColumn);
+                return csvWriter(builder);
+            });
         } else if (first.isArray() && mediaType.notContainsParameter(PARAM_HEADER_LINE)) { // an array and doesn't explicitly want header
-            builder.setUseHeader(false);
-            writer = CSV_MAPPER.writerFor(JsonNode.class).with(builder.build());
+            return cached(writerCache, new WriterKey(mediaType.getParameters(), null), k -> {
+                CsvSchema.Builder builder = baseBuilderFor(mediaType);
+                builder.setUseHeader(false);
+                return csvWriter(builder);
+            });
         } else if (first.isArray() && headerln) {
             if (paramColumns.isEmpty()) throw new IllegalArgumentException("Cannot satisfy parameter " + PARAM_HEADER_LINE + " for an Arr without column names in " + PARAM_COLUMNS);
-            builder.setUseHeader(true);
-            for (String column : paramColumns) {
-                builder.addColumn(column);
-            }
-            writer = CSV_MAPPER.writerFor(JsonNode.class).with(builder.build());
+            return cached(writerCache, new WriterKey(mediaType.getParameters(), null), k -> {
+                CsvSchema.Builder builder = baseBuilderFor(mediaType);
+                builder.setUseHeader(true);
+                paramColumns.forEach(builder::addColumn);
+                return csvWriter(builder);
+            });
         } else {
             // name what was actually considered; the previous text was a dead end for the user
             throw new IllegalArgumentException(("Cannot write CSV from an Array of %s with %s=%s and %s=%s. "
@@ -162,8 +294,11 @@ public class DefaultCSVPlugin extends BaseJacksonPlugin {
                     first.getNodeType().name().toLowerCase(), PARAM_HEADER_LINE, headerln ? HEADER_LN_PRESENT_VALUE : HEADER_LN_ABSENT_VALUE,
                     PARAM_COLUMNS, paramColumns.isEmpty() ? "<unset>" : paramColumns, PARAM_COLUMNS));
         }
+    }
 
-        return writeCsv(writer, node, mediaType, targetType);
+    // closing the generator must not close a stream the caller handed to writeTo
+    private static ObjectWriter csvWriter(CsvSchema.Builder builder) {
+        return CSV_MAPPER.writerFor(JsonNode.class).with(builder.build()).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
     }
 
     @SuppressWarnings("unchecked")
@@ -192,6 +327,11 @@ public class DefaultCSVPlugin extends BaseJacksonPlugin {
         }
     }
 
+    // the columns are those of the first Obj, or null when rows are Arrs and any columns come from
+    // the parameters
+    private record WriterKey(Map<String, String> parameters, @Nullable List<String> columns) {
+    }
+
     private CsvSchema.Builder baseBuilderFor(MediaType type) {
         CsvSchema.Builder builder = CsvSchema.builder();
         builder.setLineSeparator("\r\n"); // https://www.ietf.org/rfc/rfc4180.html#section-2
@@ -7,6 +7,8 @@ package io.github.jam01.xtrasonnet.plugins;
  * compliance with the Elastic License 2.0.
  */
 
+import org.jspecify.annotations.Nullable;
+
 import io.github.jam01.xtrasonnet.document.Document;
 import io.github.jam01.xtrasonnet.document.MediaType;
 import io.github.jam01.xtrasonnet.document.MediaTypes;
@@ -15,30 +17,53 @@ import io.github.jam01.xtrasonnet.spi.PluginException;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.DateUtil;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
-import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import sjsonnet.EvalScope;
+import sjsonnet.Materializer$;
 import sjsonnet.Position;
 import sjsonnet.Val;
+import upickle.core.ArrVisitor;
+import upickle.core.ObjVisitor;
 import upickle.core.Visitor;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 
 public class DefaultExcelPlugin extends BasePlugin {
+    public static final String PARAM_SHEETS = "sheets";
+    public static final String PARAM_RANGE = "range";
+    public static final String PARAM_COLUMNS = "columns";
+    public static final String PARAM_MAX_ROWS = "maxrows";
+    public static final String PARAM_WINDOW = "window";
+    // SXSSF's own default
+    private static final int DEFAULT_WINDOW = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+
     public DefaultExcelPlugin() {
         supportedTypes.add(MediaTypes.APPLICATION_EXCEL);
         supportedTypes.add(MediaTypes.APPLICATION_OOXML_SPREADSHEET_SHEET);
 
+        readerParams.add(PARAM_SHEETS);
+        readerParams.add(PARAM_RANGE);
+        readerParams.add(PARAM_COLUMNS);
+        readerParams.add(PARAM_MAX_ROWS);
+
+        writerParams.add(PARAM_WINDOW);
+
         readerSupportedClasses.add(InputStream.class);
         readerSupportedClasses.add(File.class);
+
+        writerSupportedClasses.add(OutputStream.class);
+        writerSupportedClasses.add(byte[].class);
     }
 
+    // only ever xlsx: naming the output application/vnd.ms-excel would claim it is xls
     @Override
     public boolean canWrite(MediaType requestedType, Class<?> clazz) {
-        return false;
+        return MediaTypes.APPLICATION_OOXML_SPREADSHEET_SHEET.includes(requestedType) && super.canWrite(requestedType, clazz);
     }
 
     @Override
@@ -48,47 +73,44 @@ public class DefaultExcelPlugin extends BasePlugin {
         }
 
         var bVisitor = new LiteralVisitor(pos).visitObject(-1, -1).narrow();
-        Class<?> targetType = doc.getContent().getClass();
-
-        try (Workbook book = File.class.isAssignableFrom(targetType) ? WorkbookFactory.create((File) doc.getContent()) : WorkbookFactory.create((InputStream) doc.getContent())) {
-            var sheets = book.iterator();
-
-            while (sheets.hasNext()) {
-                var sheet = sheets.next();
-                var rows = sheet.iterator();
-                var bKeyVisitor = bVisitor.visitKey(-1);
-                bVisitor.visitKeyValue(bKeyVisitor.visitString(sheet.getSheetName(), -1));
-                var sVisitor = bVisitor.subVisitor().visitArray(-1, -1).narrow();
-
-                while (rows.hasNext()) {
-                    var row = rows.next();
-                    var cells = row.iterator();
-                    var rVisitor = sVisitor.subVisitor().visitObject(-1, true, -1).narrow();
-
-                    while (cells.hasNext()) {
-                        var cell = cells.next();
-                        var rKeyVisitor = rVisitor.visitKey(-1);
-                        rVisitor.visitKeyValue(rKeyVisitor.visitString(CellReference.convertNumToColString(cell.getAddress().getColumn()), -1));
-                        var cVisitor = rVisitor.subVisitor();
-
-                        var type = cell.getCellType();
-                        Val.Literal val = literalOf(type, cell, cVisitor);
-                        rVisitor.visitValue(val, -1);
-                    }
-                    sVisitor.visitValue(rVisitor.visitEnd(-1), -1);
-                }
+        var selection = configFor(doc.getMediaType(), SpreadsheetReader.Selection::of);
+        SpreadsheetReader.read(doc.getContent(), pos, selection, new SpreadsheetReader.Sink() {
+            private @Nullable ArrVisitor<Object, ?> sVisitor;
+            private @Nullable ObjVisitor<Object, ?> rVisitor;
+
+            @Override
+            public void startSheet(String name) {
+                bVisitor.visitKeyValue(bVisitor.visitKey(-1).visitString(name, -1));
+                sVisitor = bVisitor.subVisitor().visitArray(-1, -1).narrow();
+            }
+
+            @Override
+            public void startRow() {
+                rVisitor = sVisitor.subVisitor().visitObject(-1, true, -1).narrow();
+            }
+
+            @Override
+            public void cell(String column, Val.Literal value) {
+                rVisitor.visitKeyValue(rVisitor.visitKey(-1).visitString(column, -1));
+                rVisitor.visitValue(value, -1);
+            }
+
+            @Override
+            public void endRow() {
+                sVisitor.visitValue(rVisitor.visitEnd(-1), -1);
+            }
+
+            @Override
+            public void endSheet() {
                 bVisitor.visitValue(sVisitor.visitEnd(-1), -1);
             }
-        } catch (IOException ex) {
-            // this method declares PluginException; IllegalStateException with no message left the
-            // caller with a bare stack trace
-            throw new PluginException("Could not read spreadsheet: " + ex.getMessage(), ex);
-        }
+        });
 
         return bVisitor.visitEnd(-1);
     }
 
-    // package private so MatrixExcelPlugin shares one cell conversion instead of its own copy
+    // package private so every spreadsheet read shares one cell conversion; SpreadsheetReader's
+    // streaming path mirrors it for cells read without the object model
     static Val.Literal literalOf(CellType type, Cell cell, Visitor<?, ?> cVisitor) {
         if (CellType.BOOLEAN == type) {
             if (cell.getBooleanCellValue()) return (Val.Literal) cVisitor.visitTrue(-1);
@@ -111,8 +133,47 @@ public class DefaultExcelPlugin extends BasePlugin {
         }
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public <T> Document<T> write(Val input, MediaType mediaType, Class<T> targetType, EvalScope ev) throws PluginException {
-        throw new UnsupportedOperationException("Writing excel files is unsupported");
+        if (targetType.isAssignableFrom(OutputStream.class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out, MediaTypes.APPLICATION_OOXML_SPREADSHEET_SHEET);
+        }
+
+        if (targetType.isAssignableFrom(byte[].class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out.toByteArray(), MediaTypes.APPLICATION_OOXML_SPREADSHEET_SHEET);
+        }
+
+        throw unsupportedWriteClass(mediaType, targetType);
+    }
+
+    /**
+     * Writes the input as an xlsx workbook into the given stream, which is flushed but left open. Rows are
+     * written as they are evaluated, and only the last of them are kept in memory, 100 unless the {@code window}
+     * parameter says otherwise; those before are flushed to a compressed temporary file until the workbook
+     * is complete.
+     */
+    @Override
+    public void writeTo(Val input, MediaType mediaType, OutputStream out, EvalScope ev) throws PluginException {
+        int window = SpreadsheetReader.intParameter(mediaType, PARAM_WINDOW, 1, DEFAULT_WINDOW);
+
+        try (var book = new SXSSFWorkbook(window)) {
+            book.setCompressTempFiles(true);
+            Materializer$.MODULE$.apply0(input, new SpreadsheetVisitor(book), ev);
+            book.write(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new PluginException("Unable to write spreadsheet", e);
+        }
+    }
+
+    @Override
+    public void writeTo(Val input, MediaType mediaType, Writer out, EvalScope ev) throws PluginException {
+        // the default would decode the workbook's bytes as characters
+        throw new PluginException("A spreadsheet is binary, and cannot be written to a Writer; write it to an OutputStream");
     }
 }
@@ -0,0 +1,181 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.MediaType;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import io.github.jam01.xtrasonnet.spi.BasePlugin;
+import io.github.jam01.xtrasonnet.spi.PluginException;
+import sjsonnet.EvalScope;
+import sjsonnet.Materializer$;
+import sjsonnet.Position;
+import sjsonnet.Val;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Fixed-width records, such as mainframe extracts, read as an Array of objects and written from one,
+ * with the columns of the layout named by the {@value #PARAM_LAYOUT} parameter; see
+ * {@link FixedWidthLayout} for its format. Each layout is read and compiled once per set of parameters.
+ * <p>
+ * Records are lines, unless {@value #PARAM_DELIMITED} is {@code false}, in which case they follow one
+ * another with nothing between them, each of the layout's length. Text is read and written in the media
+ * type's charset, UTF-8 by default.
+ */
+public class DefaultFixedWidthPlugin extends BasePlugin {
+    public static final String PARAM_LAYOUT = "layout";
+    public static final String PARAM_DELIMITED = "delimited";
+
+    public DefaultFixedWidthPlugin() {
+        supportedTypes.add(MediaTypes.TEXT_FIXED_WIDTH);
+
+        readerParams.add(PARAM_LAYOUT);
+        readerParams.add(PARAM_DELIMITED);
+        writerParams.addAll(readerParams);
+
+        readerSupportedClasses.add(String.class);
+        readerSupportedClasses.add(CharSequence.class);
+        readerSupportedClasses.add(byte[].class);
+        readerSupportedClasses.add(InputStream.class);
+        readerSupportedClasses.add(Reader.class);
+        readerSupportedClasses.add(Path.class);
+        readerSupportedClasses.add(File.class);
+
+        writerSupportedClasses.add(String.class);
+        writerSupportedClasses.add(CharSequence.class);
+        writerSupportedClasses.add(byte[].class);
+        writerSupportedClasses.add(OutputStream.class);
+    }
+
+    @Override
+    public JsonNode read(Document<?> doc) throws PluginException {
+        throw new UnsupportedOperationException("Use #read(Val, Position)");
+    }
+
+    @Override
+    public <T> Document<T> write(JsonNode input, MediaType mediaType, Class<T> targetType) throws PluginException {
+        throw new UnsupportedOperationException("Use #write(Val, MediaType, Class<T>, EvalScope)");
+    }
+
+    private FixedWidthLayout layoutOf(MediaType mediaType) {
+        return configFor(mediaType, mt -> {
+            String ref = mt.getParameter(PARAM_LAYOUT);
+            if (ref == null) {
+                throw new PluginException("Fixed-width records require a layout; set the '" + PARAM_LAYOUT + "' parameter");
+            }
+            return FixedWidthLayout.of(ref);
+        });
+    }
+
+    private static Charset charsetOf(MediaType mediaType) {
+        Charset charset = mediaType.getCharset();
+        return charset == null ? StandardCharsets.UTF_8 : charset;
+    }
+
+    @Override
+    public Val.Literal read(Document<?> doc, Position pos) throws PluginException {
+        Object content = doc.getContent();
+        if (content == null) {
+            return new Val.Null(pos);
+        }
+
+        MediaType mediaType = doc.getMediaType();
+        FixedWidthLayout layout = layoutOf(mediaType);
+        boolean delimited = mediaType.getParameterAsBoolean(PARAM_DELIMITED, true);
+        Charset charset = charsetOf(mediaType);
+
+        try {
+            if (content instanceof String str) {
+                return layout.read(new StringReader(str), delimited, pos);
+            } else if (content instanceof CharSequence chars) {
+                return layout.read(new StringReader(chars.toString()), delimited, pos);
+            } else if (content instanceof byte[] bytes) {
+                return layout.read(new InputStreamReader(new ByteArrayInputStream(bytes), charset), delimited, pos);
+            } else if (content instanceof InputStream is) {
+                return layout.read(new InputStreamReader(is, charset), delimited, pos);
+            } else if (content instanceof Reader reader) {
+                return layout.read(reader, delimited, pos);
+            } else if (content instanceof Path path) {
+                try (var reader = new InputStreamReader(MappedFiles.newInputStream(path), charset)) {
+                    return layout.read(reader, delimited, pos);
+                }
+            } else if (content instanceof File file) {
+                try (var reader = new InputStreamReader(MappedFiles.newInputStream(file.toPath()), charset)) {
+                    return layout.read(reader, delimited, pos);
+                }
+            } else {
+                throw unsupportedReadClass(doc);
+            }
+        } catch (IOException e) {
+            throw new PluginException("Unable to read fixed-width records", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Document<T> write(Val input, MediaType mediaType, Class<T> targetType, EvalScope ev) throws PluginException {
+        MediaType written = MediaTypes.TEXT_FIXED_WIDTH.withParameter(MediaTypes.PARAM_CHARSET, charsetOf(mediaType).name());
+
+        if (targetType.isAssignableFrom(String.class) || targetType.isAssignableFrom(CharSequence.class)) {
+            var out = new StringWriter();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out.toString(), written);
+        }
+
+        if (targetType.isAssignableFrom(OutputStream.class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out, written);
+        }
+
+        if (targetType.isAssignableFrom(byte[].class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out.toByteArray(), written);
+        }
+
+        throw unsupportedWriteClass(mediaType, targetType);
+    }
+
+    /** Writes the records in the media type's charset. The stream is flushed, but left open. */
+    @Override
+    public void writeTo(Val input, MediaType mediaType, OutputStream out, EvalScope ev) throws PluginException {
+        // flushed rather than closed: the stream is the caller's
+        var writer = new BufferedWriter(new OutputStreamWriter(out, charsetOf(mediaType)));
+        writeTo(input, mediaType, writer, ev);
+    }
+
+    @Override
+    public void writeTo(Val input, MediaType mediaType, Writer out, EvalScope ev) throws PluginException {
+        var visitor = new FixedWidthVisitor(layoutOf(mediaType), out,
+                mediaType.getParameterAsBoolean(PARAM_DELIMITED, true));
+        try {
+            Materializer$.MODULE$.apply0(input, visitor, ev);
+            out.flush();
+        } catch (IOException e) {
+            throw new PluginException("Unable to write fixed-width records", e);
+        }
+    }
+}
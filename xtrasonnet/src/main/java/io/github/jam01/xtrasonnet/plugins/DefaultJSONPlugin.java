@@ -30,6 +30,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -107,9 +109,17 @@ public class DefaultJSONPlugin extends BasePlugin {
         throw unsupportedReadClass(doc);
     }
 
+    // parsed straight from the mapped pages; a file too large to map whole is streamed instead
     private static Val.Literal fromPath(Path s, LiteralVisitor v) {
-        try (final var inputStream = Files.newInputStream(s)) {
-            return InputStreamParser.transform(inputStream, v);
+        try {
+            ByteBuffer mapped = MappedFiles.map(s);
+            if (mapped != null) {
+                return ByteBufferParser$.MODULE$.transform(mapped, v);
+            }
+
+            try (final var inputStream = Files.newInputStream(s)) {
+                return InputStreamParser.transform(inputStream, v);
+            }
         } catch (IOException e) { throw new PluginException(e); }
     }
 
@@ -153,6 +163,38 @@ public class DefaultJSONPlugin extends BasePlugin {
         throw unsupportedWriteClass(mediaType, targetType);
     }
 
+    @Override
+    public void writeTo(Val input, MediaType mediaType, OutputStream out, EvalScope ev) throws PluginException {
+        Charset charset = mediaType.getCharset();
+        int indent = mediaType.getParameters().containsKey(PARAM_FORMAT) ? 4 : -1;
+
+        try {
+            if (charset == null || StandardCharsets.UTF_8.equals(charset)) {
+                Materializer$.MODULE$.apply0(input, Renderer.outputStreamRenderer(out, indent, false), ev);
+            } else {
+                // the encoder buffers too, so it is flushed rather than closed: the stream is the caller's
+                var writer = new OutputStreamWriter(out, charset);
+                Materializer$.MODULE$.apply0(input, Renderer.writerRenderer(writer, indent, false), ev);
+                writer.flush();
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new PluginException("Unable to write JSON", e);
+        }
+    }
+
+    @Override
+    public void writeTo(Val input, MediaType mediaType, Writer out, EvalScope ev) throws PluginException {
+        int indent = mediaType.getParameters().containsKey(PARAM_FORMAT) ? 4 : -1;
+
+        try {
+            Materializer$.MODULE$.apply0(input, Renderer.writerRenderer(out, indent, false), ev);
+            out.flush();
+        } catch (IOException e) {
+            throw new PluginException("Unable to write JSON", e);
+        }
+    }
+
     /**
      * The byte renderer emits UTF-8, which is what RFC 8259 s8.1 requires for interchange and what
      * callers get by default. Re-encode only when a different charset was explicitly requested.
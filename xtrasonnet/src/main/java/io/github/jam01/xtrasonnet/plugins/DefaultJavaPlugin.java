@@ -9,6 +9,7 @@ package io.github.jam01.xtrasonnet.plugins;
 
 import org.jspecify.annotations.Nullable;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.MapperFeature;
@@ -16,15 +17,23 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import io.github.jam01.xtrasonnet.document.Document;
 import io.github.jam01.xtrasonnet.document.Documents;
 import io.github.jam01.xtrasonnet.document.MediaType;
 import io.github.jam01.xtrasonnet.document.MediaTypes;
 import io.github.jam01.xtrasonnet.spi.PluginException;
+import sjsonnet.EvalScope;
+import sjsonnet.Materializer$;
+import sjsonnet.Position;
+import sjsonnet.Val;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
@@ -39,6 +48,8 @@ public final class DefaultJavaPlugin extends BaseJacksonPlugin {
     // instance's base -- camel-xtrasonnet installs exactly such a plugin. Concurrent, because the map
     // is keyed on user-supplied media type parameters and reached from every thread using the plugin.
     private final Map<Map<String, String>, ObjectMapper> mapperCache = new ConcurrentHashMap<>();
+    // one per mapper, keyed by identity: what a reader caches depends on how its mapper is configured
+    private final Map<ObjectMapper, JavaObjectReader> readers = new ConcurrentHashMap<>();
 
     public DefaultJavaPlugin() {
         this(null);
@@ -81,10 +92,23 @@ public final class DefaultJavaPlugin extends BaseJacksonPlugin {
         }
 
         ObjectMapper mapper = mapperFor(doc.getMediaType());
-        // TODO: 8/11/22 can we go direct to ujson somehow?
         return mapper.valueToTree(doc.getContent());
     }
 
+    // Walks the content straight into Vals. Going through read(Document) built a JsonNode copy of the
+    // whole graph only to walk that a second time, which in Camel -- where most bodies are Maps -- was
+    // the largest part of reading an input.
+    @Override
+    public Val.Literal read(Document<?> doc, Position pos) throws PluginException {
+        JavaObjectReader reader = readers.computeIfAbsent(mapperFor(doc.getMediaType()), JavaObjectReader::new);
+        try {
+            return reader.transform(doc.getContent(), new LiteralVisitor(pos));
+        } catch (StackOverflowError e) {
+            // what Jackson reports for the same graph, rather than a bare error from deep in the walk
+            throw new PluginException("Unable to read Java object: infinite recursion, the object graph likely contains a cycle");
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <T> Document<T> write(JsonNode input, MediaType mediaType, Class<T> targetType) throws PluginException {
@@ -109,6 +133,59 @@ public final class DefaultJavaPlugin extends BaseJacksonPlugin {
         return new Document.BasicDocument<>(converted, mediaType.withParameter(PARAM_TYPE, targetType.getName()));
     }
 
+    // Builds the output in one pass. Going through write(JsonNode) materialized a JsonNode tree, copied
+    // that into Maps and Lists, and for a typed target had the mapper serialize those again only to
+    // deserialize the result.
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Document<T> write(Val input, MediaType mediaType, Class<T> targetType, EvalScope ev) throws PluginException {
+        if (input instanceof Val.Null) {
+            return (Document<T>) Documents.Null();
+        }
+
+        ObjectMapper mapper = mapperFor(mediaType);
+        T converted;
+
+        try {
+            if (isPlainTarget(input, targetType)) {
+                Object inputAsJava = Materializer$.MODULE$.apply0(input, JavaObjectVisitor$.MODULE$, ev);
+                if (targetType.isInstance(inputAsJava)) {
+                    converted = (T) inputAsJava;
+                } else {
+                    converted = mapper.convertValue(inputAsJava, targetType);
+                }
+            } else {
+                converted = bind(input, mapper, targetType, ev);
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            throw new PluginException("Unable to convert to target type", e);
+        }
+
+        return new Document.BasicDocument<>(converted, mediaType.withParameter(PARAM_TYPE, targetType.getName()));
+    }
+
+    // whether the Maps and Lists JavaObjectVisitor builds are the result itself; scalars are cheap
+    // enough to convert after the fact either way
+    private static boolean isPlainTarget(Val input, Class<?> targetType) {
+        if (input instanceof Val.Obj) return targetType.isAssignableFrom(LinkedHashMap.class);
+        if (input instanceof Val.Arr) return targetType.isAssignableFrom(ArrayList.class);
+        return true;
+    }
+
+    // streams the value as tokens into the target type's deserializer, which is what convertValue does
+    // internally, minus the Maps and Lists it would have serialized from
+    private static <T> T bind(Val input, ObjectMapper mapper, Class<T> targetType, EvalScope ev) throws IOException {
+        var tokens = new TokenBuffer(mapper, false);
+        if (mapper.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)) {
+            tokens.forceUseOfBigDecimal(true);
+        }
+
+        Materializer$.MODULE$.apply0(input, new JsonGeneratorVisitor(tokens), ev);
+        try (JsonParser parser = tokens.asParser()) {
+            return mapper.readValue(parser, targetType);
+        }
+    }
+
     private ObjectMapper mapperFor(MediaType mediaType) throws PluginException {
         Map<String, String> parameters = mediaType.getParameters();
         if (parameters.containsKey(PARAM_DATE_FORMAT)) {
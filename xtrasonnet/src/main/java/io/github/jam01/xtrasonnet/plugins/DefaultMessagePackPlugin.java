@@ -0,0 +1,155 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.MediaType;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import io.github.jam01.xtrasonnet.spi.BasePlugin;
+import io.github.jam01.xtrasonnet.spi.PluginException;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePackException;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import sjsonnet.EvalScope;
+import sjsonnet.Materializer$;
+import sjsonnet.Position;
+import sjsonnet.Val;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * MessagePack, read straight into Vals and written straight from them, with neither JSON text nor a tree
+ * in between. A ByteBuffer is read in place, whether on the heap or direct, and so is a file, through its
+ * memory map.
+ */
+public class DefaultMessagePackPlugin extends BasePlugin {
+    public DefaultMessagePackPlugin() {
+        supportedTypes.add(MediaTypes.APPLICATION_MSGPACK);
+        supportedTypes.add(new MediaType("application", "x-msgpack"));
+
+        readerSupportedClasses.add(byte[].class);
+        readerSupportedClasses.add(ByteBuffer.class);
+        readerSupportedClasses.add(InputStream.class);
+        readerSupportedClasses.add(Path.class);
+        readerSupportedClasses.add(File.class);
+
+        writerSupportedClasses.add(byte[].class);
+        writerSupportedClasses.add(ByteBuffer.class);
+        writerSupportedClasses.add(OutputStream.class);
+    }
+
+    @Override
+    public JsonNode read(Document<?> doc) throws PluginException {
+        throw new UnsupportedOperationException("Use #read(Val, Position)");
+    }
+
+    @Override
+    public <T> Document<T> write(JsonNode input, MediaType mediaType, Class<T> targetType) throws PluginException {
+        throw new UnsupportedOperationException("Use #write(Val, MediaType, Class<T>, EvalScope)");
+    }
+
+    @Override
+    public Val.Literal read(Document<?> doc, Position pos) throws PluginException {
+        if (doc.getContent() == null) {
+            return new Val.Null(pos);
+        }
+
+        try (MessageUnpacker unpacker = createUnpacker(doc)) {
+            return MessagePackTransformer$.MODULE$.transform(unpacker, new LiteralVisitor(pos));
+        } catch (IOException | MessagePackException e) {
+            throw new PluginException("Unable to read MessagePack", e);
+        }
+    }
+
+    private MessageUnpacker createUnpacker(Document<?> doc) throws IOException {
+        Object content = doc.getContent();
+        if (content instanceof byte[] bytes) {
+            return MessagePack.newDefaultUnpacker(bytes);
+        } else if (content instanceof ByteBuffer buffer) {
+            // wrapped, not copied; a slice, so the caller's position is left where it was
+            return MessagePack.newDefaultUnpacker(buffer.slice());
+        } else if (content instanceof InputStream is) {
+            // closing the unpacker closes its input, and this stream is the caller's
+            return MessagePack.newDefaultUnpacker(new FilterInputStream(is) {
+                @Override
+                public void close() {
+                }
+            });
+        } else if (content instanceof Path path) {
+            return unpackerOf(path);
+        } else if (content instanceof File file) {
+            return unpackerOf(file.toPath());
+        } else {
+            throw unsupportedReadClass(doc);
+        }
+    }
+
+    private static MessageUnpacker unpackerOf(Path path) throws IOException {
+        ByteBuffer mapped = MappedFiles.map(path);
+        if (mapped != null) {
+            return MessagePack.newDefaultUnpacker(mapped);
+        }
+        return MessagePack.newDefaultUnpacker(Files.newInputStream(path)); // closed with the unpacker
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Document<T> write(Val input, MediaType mediaType, Class<T> targetType, EvalScope ev) throws PluginException {
+        if (targetType.isAssignableFrom(OutputStream.class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out, MediaTypes.APPLICATION_MSGPACK);
+        }
+
+        if (targetType.isAssignableFrom(ByteBuffer.class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(ByteBuffer.wrap(out.toByteArray()), MediaTypes.APPLICATION_MSGPACK);
+        }
+
+        if (targetType.isAssignableFrom(byte[].class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out.toByteArray(), MediaTypes.APPLICATION_MSGPACK);
+        }
+
+        throw unsupportedWriteClass(mediaType, targetType);
+    }
+
+    /**
+     * Writes the input into the given stream as each value is evaluated. The stream is flushed, but left
+     * open.
+     */
+    @Override
+    public void writeTo(Val input, MediaType mediaType, OutputStream out, EvalScope ev) throws PluginException {
+        MessagePacker packer = MessagePack.newDefaultPacker(out); // flushed rather than closed: the stream is the caller's
+        try {
+            Materializer$.MODULE$.apply0(input, new MessagePackVisitor(packer), ev);
+            packer.flush();
+        } catch (IOException | MessagePackException e) {
+            throw new PluginException("Unable to write MessagePack", e);
+        }
+    }
+
+    @Override
+    public void writeTo(Val input, MediaType mediaType, Writer out, EvalScope ev) throws PluginException {
+        // the default would decode the bytes as characters
+        throw new PluginException("MessagePack is binary, and cannot be written to a Writer; write it to an OutputStream");
+    }
+}
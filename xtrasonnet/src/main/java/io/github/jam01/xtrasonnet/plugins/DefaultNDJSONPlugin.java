@@ -0,0 +1,176 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.MediaType;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import io.github.jam01.xtrasonnet.render.Renderer;
+import io.github.jam01.xtrasonnet.spi.BasePlugin;
+import io.github.jam01.xtrasonnet.spi.PluginException;
+import sjsonnet.EvalScope;
+import sjsonnet.Materializer$;
+import sjsonnet.Position;
+import sjsonnet.Val;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Newline-delimited JSON, one document per line, read as an Array whose elements are parsed only as they
+ * are looked at; see {@link JsonLines}. Files are read from their memory map, so only the lines looked at
+ * are ever brought onto the heap. An InputStream's bytes are read whole, but left unparsed.
+ * <p>
+ * An Array is written one element per line, each rendered straight to the sink as it is evaluated.
+ */
+public class DefaultNDJSONPlugin extends BasePlugin {
+    public DefaultNDJSONPlugin() {
+        supportedTypes.add(MediaTypes.APPLICATION_NDJSON);
+        supportedTypes.add(new MediaType("application", "jsonl"));
+
+        readerSupportedClasses.add(String.class);
+        readerSupportedClasses.add(CharSequence.class);
+        readerSupportedClasses.add(Path.class);
+        readerSupportedClasses.add(File.class);
+        readerSupportedClasses.add(ByteBuffer.class);
+        readerSupportedClasses.add(byte[].class);
+        readerSupportedClasses.add(InputStream.class);
+
+        writerSupportedClasses.add(String.class);
+        writerSupportedClasses.add(CharSequence.class);
+        writerSupportedClasses.add(ByteBuffer.class);
+        writerSupportedClasses.add(OutputStream.class);
+        writerSupportedClasses.add(byte[].class);
+    }
+
+    @Override
+    public JsonNode read(Document<?> doc) throws PluginException {
+        throw new UnsupportedOperationException("Use #read(Val, Position)");
+    }
+
+    @Override
+    public <T> Document<T> write(JsonNode input, MediaType mediaType, Class<T> targetType) throws PluginException {
+        throw new UnsupportedOperationException("Use #write(Val, MediaType, Class<T>, EvalScope)");
+    }
+
+    @Override
+    public Val.Literal read(Document<?> doc, Position pos) throws PluginException {
+        Object content = doc.getContent();
+        if (content == null) {
+            return new Val.Null(pos);
+        }
+
+        try {
+            if (content instanceof CharSequence chars) {
+                return JsonLines$.MODULE$.read(chars, pos);
+            } else if (content instanceof ByteBuffer buffer) {
+                return JsonLines$.MODULE$.read(buffer, pos);
+            } else if (content instanceof byte[] bytes) {
+                return JsonLines$.MODULE$.read(ByteBuffer.wrap(bytes), pos);
+            } else if (content instanceof InputStream is) {
+                return JsonLines$.MODULE$.read(ByteBuffer.wrap(is.readAllBytes()), pos);
+            } else if (content instanceof Path path) {
+                return fromPath(path, pos);
+            } else if (content instanceof File file) {
+                return fromPath(file.toPath(), pos);
+            } else {
+                throw unsupportedReadClass(doc);
+            }
+        } catch (IOException e) {
+            throw new PluginException("Unable to read NDJSON", e);
+        }
+    }
+
+    // the elements parse from the mapped pages, which a stream could only offer by copying them all
+    private static Val.Literal fromPath(Path path, Position pos) throws IOException {
+        MappedByteBuffer mapped = MappedFiles.map(path);
+        if (mapped != null) {
+            return JsonLines$.MODULE$.read(mapped, pos);
+        }
+
+        throw new PluginException("Unable to read NDJSON: " + path + " is too large to map; read it as an InputStream");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Document<T> write(Val input, MediaType mediaType, Class<T> targetType, EvalScope ev) throws PluginException {
+        if (targetType.isAssignableFrom(String.class) || targetType.isAssignableFrom(CharSequence.class)) {
+            var out = new StringWriter();
+            writeTo(input, mediaType, out, ev);
+            return new Document.BasicDocument<>((T) out.toString(), MediaTypes.APPLICATION_NDJSON);
+        }
+
+        if (targetType.isAssignableFrom(OutputStream.class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return new Document.BasicDocument<>((T) out, MediaTypes.APPLICATION_NDJSON);
+        }
+
+        if (targetType.isAssignableFrom(ByteBuffer.class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return new Document.BasicDocument<>((T) ByteBuffer.wrap(out.toByteArray()), MediaTypes.APPLICATION_NDJSON);
+        }
+
+        if (targetType.isAssignableFrom(byte[].class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return new Document.BasicDocument<>((T) out.toByteArray(), MediaTypes.APPLICATION_NDJSON);
+        }
+
+        throw unsupportedWriteClass(mediaType, targetType);
+    }
+
+    /** Writes each element of the Array as a line of UTF-8 JSON. The stream is flushed, but left open. */
+    @Override
+    public void writeTo(Val input, MediaType mediaType, OutputStream out, EvalScope ev) throws PluginException {
+        Val.Arr arr = lines(input);
+        // the renderer writes out whatever it holds as each document ends, so lines interleave in order
+        var renderer = Renderer.outputStreamRenderer(out, -1, false);
+        try {
+            for (int i = 0; i < arr.length(); i++) {
+                Materializer$.MODULE$.apply0(arr.value(i), renderer, ev);
+                out.write('\n');
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new PluginException("Unable to write NDJSON", e);
+        }
+    }
+
+    @Override
+    public void writeTo(Val input, MediaType mediaType, Writer out, EvalScope ev) throws PluginException {
+        Val.Arr arr = lines(input);
+        var renderer = Renderer.writerRenderer(out, -1, false);
+        try {
+            for (int i = 0; i < arr.length(); i++) {
+                Materializer$.MODULE$.apply0(arr.value(i), renderer, ev);
+                out.write('\n');
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new PluginException("Unable to write NDJSON", e);
+        }
+    }
+
+    private static Val.Arr lines(Val input) {
+        if (input instanceof Val.Arr arr) {
+            return arr;
+        }
+        throw new IllegalArgumentException("Writing NDJSON requires an Array of documents, found: " + input.prettyName());
+    }
+}
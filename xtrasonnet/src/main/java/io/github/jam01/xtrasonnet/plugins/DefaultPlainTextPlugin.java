@@ -16,38 +16,214 @@ import sjsonnet.EvalScope;
 import sjsonnet.Position;
 import sjsonnet.Val;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Text read as a String, and written from one, in the media type's charset, UTF-8 by default.
+ * <p>
+ * With {@value #PARAM_LINES} set to {@code true}, text is read as an Array of its lines, each decoded only
+ * when looked at; see {@link TextLines}. Files are read from their memory map, so only the lines looked at
+ * are ever brought onto the heap, and an InputStream's bytes are read whole, but left undecoded. An Array
+ * of Strings is written one per line, each straight to the sink as it is evaluated.
+ */
 public class DefaultPlainTextPlugin extends BasePlugin {
+    public static final String PARAM_LINES = "lines";
+
     public DefaultPlainTextPlugin() {
         supportedTypes.add(MediaTypes.TEXT_PLAIN);
 
+        readerParams.add(PARAM_LINES);
+        writerParams.add(PARAM_LINES);
+
         readerSupportedClasses.add(String.class);
+        readerSupportedClasses.add(CharSequence.class);
+        readerSupportedClasses.add(byte[].class);
+        readerSupportedClasses.add(ByteBuffer.class);
+        readerSupportedClasses.add(InputStream.class);
+        readerSupportedClasses.add(Reader.class);
+        readerSupportedClasses.add(Path.class);
+        readerSupportedClasses.add(File.class);
+
         writerSupportedClasses.add(String.class);
+        writerSupportedClasses.add(byte[].class);
+        writerSupportedClasses.add(OutputStream.class);
+    }
+
+    private static Charset charsetOf(MediaType mediaType) {
+        Charset charset = mediaType.getCharset();
+        return charset == null ? StandardCharsets.UTF_8 : charset;
     }
 
     @Override
     public Val.Literal read(Document<?> doc, Position pos) throws PluginException {
-        if (doc.getContent() == null) {
+        Object content = doc.getContent();
+        if (content == null) {
             return new Val.Null(pos);
         }
 
-        if (String.class.isAssignableFrom(doc.getContent().getClass())) {
-            return new Val.Str(pos, (String) doc.getContent());
+        MediaType mediaType = doc.getMediaType();
+        Charset charset = charsetOf(mediaType);
+        try {
+            if (mediaType.getParameterAsBoolean(PARAM_LINES, false)) {
+                return readLines(doc, content, charset, pos);
+            }
+
+            if (content instanceof String str) {
+                return new Val.Str(pos, str);
+            } else if (content instanceof CharSequence chars) {
+                return new Val.Str(pos, chars.toString());
+            } else if (content instanceof byte[] bytes) {
+                return new Val.Str(pos, new String(bytes, charset));
+            } else if (content instanceof ByteBuffer buffer) {
+                // a duplicate, so the caller's buffer is read but never moved
+                return new Val.Str(pos, charset.decode(buffer.duplicate()).toString());
+            } else if (content instanceof InputStream is) {
+                return new Val.Str(pos, new String(is.readAllBytes(), charset));
+            } else if (content instanceof Reader reader) {
+                var out = new StringWriter();
+                reader.transferTo(out);
+                return new Val.Str(pos, out.toString());
+            } else if (content instanceof Path path) {
+                try (InputStream is = MappedFiles.newInputStream(path)) {
+                    return new Val.Str(pos, new String(is.readAllBytes(), charset));
+                }
+            } else if (content instanceof File file) {
+                try (InputStream is = MappedFiles.newInputStream(file.toPath())) {
+                    return new Val.Str(pos, new String(is.readAllBytes(), charset));
+                }
+            } else {
+                throw unsupportedReadClass(doc);
+            }
+        } catch (IOException e) {
+            throw new PluginException("Unable to read plain text", e);
+        }
+    }
+
+    private Val.Literal readLines(Document<?> doc, Object content, Charset charset, Position pos) throws IOException {
+        if (content instanceof CharSequence chars) {
+            return TextLines$.MODULE$.read(chars, pos);
+        } else if (content instanceof Reader reader) {
+            return TextLines$.MODULE$.read(reader, pos);
+        }
+
+        // lines are found in the bytes, before decoding, unless the charset's newline is more than one byte
+        boolean bytewise = TextLines$.MODULE$.newline(charset) >= 0;
+        if (content instanceof byte[] bytes) {
+            return bytewise
+                    ? TextLines$.MODULE$.read(ByteBuffer.wrap(bytes), charset, pos)
+                    : TextLines$.MODULE$.read(new String(bytes, charset), pos);
+        } else if (content instanceof ByteBuffer buffer) {
+            return bytewise
+                    ? TextLines$.MODULE$.read(buffer, charset, pos)
+                    : TextLines$.MODULE$.read(charset.decode(buffer.duplicate()), pos);
+        } else if (content instanceof InputStream is) {
+            return bytewise
+                    ? TextLines$.MODULE$.read(ByteBuffer.wrap(is.readAllBytes()), charset, pos)
+                    : TextLines$.MODULE$.read(new InputStreamReader(is, charset), pos);
+        } else if (content instanceof Path path) {
+            return linesOf(path, charset, bytewise, pos);
+        } else if (content instanceof File file) {
+            return linesOf(file.toPath(), charset, bytewise, pos);
         } else {
             throw unsupportedReadClass(doc);
         }
     }
 
+    // the lines decode from the mapped pages, which a stream could only offer by copying them all
+    private static Val.Literal linesOf(Path path, Charset charset, boolean bytewise, Position pos) throws IOException {
+        MappedByteBuffer mapped = bytewise ? MappedFiles.map(path) : null;
+        if (mapped != null) {
+            return TextLines$.MODULE$.read(mapped, charset, pos);
+        }
+
+        try (var reader = new InputStreamReader(MappedFiles.newInputStream(path), charset)) {
+            return TextLines$.MODULE$.read(reader, pos);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <T> Document<T> write(Val input, MediaType mediaType, Class<T> targetType, EvalScope ev) throws PluginException {
-        if (!(input instanceof Val.Str)) {
-            throw new PluginException("Input for Plain Text writer must be a String, got " + input.prettyName());
-        }
+        MediaType written = mediaType.getCharset() == null
+                ? MediaTypes.TEXT_PLAIN
+                : MediaTypes.TEXT_PLAIN.withParameter(MediaTypes.PARAM_CHARSET, mediaType.getCharset().name());
 
         if (targetType.isAssignableFrom(String.class)) {
-            return (Document<T>) new Document.BasicDocument<>(input.asString(), MediaTypes.TEXT_PLAIN);
-        } else {
-            throw new IllegalArgumentException("Only strings can be written as plain text.");
+            if (mediaType.getParameterAsBoolean(PARAM_LINES, false)) {
+                var out = new StringWriter();
+                writeTo(input, mediaType, out, ev);
+                return (Document<T>) new Document.BasicDocument<>(out.toString(), written);
+            }
+            return (Document<T>) new Document.BasicDocument<>(text(input), written);
+        }
+
+        if (targetType.isAssignableFrom(OutputStream.class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out, written);
+        }
+
+        if (targetType.isAssignableFrom(byte[].class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out.toByteArray(), written);
+        }
+
+        throw new IllegalArgumentException("Only strings can be written as plain text.");
+    }
+
+    /** Writes the text in the media type's charset. The stream is flushed, but left open. */
+    @Override
+    public void writeTo(Val input, MediaType mediaType, OutputStream out, EvalScope ev) throws PluginException {
+        // flushed rather than closed: the stream is the caller's
+        var writer = new BufferedWriter(new OutputStreamWriter(out, charsetOf(mediaType)));
+        writeTo(input, mediaType, writer, ev);
+    }
+
+    @Override
+    public void writeTo(Val input, MediaType mediaType, Writer out, EvalScope ev) throws PluginException {
+        try {
+            if (mediaType.getParameterAsBoolean(PARAM_LINES, false)) {
+                if (!(input instanceof Val.Arr arr)) {
+                    throw new IllegalArgumentException("Writing plain text lines requires an Array of Strings, found: " + input.prettyName());
+                }
+                for (int i = 0; i < arr.length(); i++) {
+                    Val line = arr.value(i);
+                    if (!(line instanceof Val.Str)) {
+                        throw new IllegalArgumentException("Writing plain text lines requires an Array of Strings, found: "
+                                + line.prettyName() + " at index " + i);
+                    }
+                    out.write(line.asString());
+                    out.write('\n');
+                }
+            } else {
+                out.write(text(input));
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new PluginException("Unable to write plain text", e);
+        }
+    }
+
+    private static String text(Val input) {
+        if (!(input instanceof Val.Str)) {
+            throw new PluginException("Input for Plain Text writer must be a String, got " + input.prettyName());
         }
+        return input.asString();
     }
 }
@@ -0,0 +1,282 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.protobuf.AnyProto;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.DescriptorValidationException;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.DurationProto;
+import com.google.protobuf.EmptyProto;
+import com.google.protobuf.FieldMaskProto;
+import com.google.protobuf.StructProto;
+import com.google.protobuf.TimestampProto;
+import com.google.protobuf.WrappersProto;
+import io.github.jam01.xtrasonnet.ResourceResolver;
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.MediaType;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import io.github.jam01.xtrasonnet.spi.BasePlugin;
+import io.github.jam01.xtrasonnet.spi.PluginException;
+import sjsonnet.EvalScope;
+import sjsonnet.Position;
+import sjsonnet.Val;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Protobuf messages, decoded to Vals and encoded from them through a {@link ProtobufCodec} of the message
+ * type named by the {@value #PARAM_MESSAGE} parameter, e.g. {@code acme.orders.Order}.
+ * <p>
+ * The type is one of the descriptors this plugin was constructed with, such as those of generated classes,
+ * or one found in the descriptor set named by the {@value #PARAM_DESCRIPTOR} parameter, as written by
+ * {@code protoc --include_imports --descriptor_set_out}. Each set is read once, however many types are
+ * used from it.
+ */
+public class DefaultProtobufPlugin extends BasePlugin {
+    public static final String PARAM_DESCRIPTOR = "descriptor";
+    public static final String PARAM_MESSAGE = "message";
+
+    // the well-known types, so that sets written without --include_imports still build
+    private static final Map<String, FileDescriptor> BUNDLED = Map.of(
+            "google/protobuf/any.proto", AnyProto.getDescriptor(),
+            "google/protobuf/duration.proto", DurationProto.getDescriptor(),
+            "google/protobuf/empty.proto", EmptyProto.getDescriptor(),
+            "google/protobuf/field_mask.proto", FieldMaskProto.getDescriptor(),
+            "google/protobuf/struct.proto", StructProto.getDescriptor(),
+            "google/protobuf/timestamp.proto", TimestampProto.getDescriptor(),
+            "google/protobuf/wrappers.proto", WrappersProto.getDescriptor());
+
+    private final Map<String, Descriptor> registry;
+    private final Map<String, Map<String, Descriptor>> descriptorSets = new ConcurrentHashMap<>();
+
+    public DefaultProtobufPlugin() {
+        this(List.of());
+    }
+
+    /**
+     * @param descriptors message types looked up by full name before any descriptor set is read, e.g.
+     *                    {@code Order.getDescriptor()} of a generated class
+     */
+    public DefaultProtobufPlugin(Collection<Descriptor> descriptors) {
+        var registry = new HashMap<String, Descriptor>();
+        for (Descriptor descriptor : descriptors) {
+            registry.put(descriptor.getFullName(), descriptor);
+        }
+        this.registry = Map.copyOf(registry);
+
+        supportedTypes.add(MediaTypes.APPLICATION_PROTOBUF);
+        supportedTypes.add(new MediaType("application", "protobuf"));
+
+        readerParams.add(PARAM_DESCRIPTOR);
+        readerParams.add(PARAM_MESSAGE);
+        writerParams.add(PARAM_DESCRIPTOR);
+        writerParams.add(PARAM_MESSAGE);
+
+        readerSupportedClasses.add(byte[].class);
+        readerSupportedClasses.add(ByteBuffer.class);
+        readerSupportedClasses.add(InputStream.class);
+        readerSupportedClasses.add(Path.class);
+        readerSupportedClasses.add(File.class);
+
+        writerSupportedClasses.add(byte[].class);
+        writerSupportedClasses.add(ByteBuffer.class);
+        writerSupportedClasses.add(OutputStream.class);
+    }
+
+    @Override
+    public JsonNode read(Document<?> doc) throws PluginException {
+        throw new UnsupportedOperationException("Use #read(Val, Position)");
+    }
+
+    @Override
+    public <T> Document<T> write(JsonNode input, MediaType mediaType, Class<T> targetType) throws PluginException {
+        throw new UnsupportedOperationException("Use #write(Val, MediaType, Class<T>, EvalScope)");
+    }
+
+    // the message type named by the media type, looked up once per set of parameters
+    private ProtobufCodec codecOf(MediaType mediaType) {
+        return configFor(mediaType, mt -> {
+            String name = mt.getParameter(PARAM_MESSAGE);
+            if (name == null) {
+                throw new PluginException("Protobuf requires a message type; set the '" + PARAM_MESSAGE + "' parameter");
+            }
+
+            Descriptor descriptor = registry.get(name);
+            if (descriptor == null) {
+                String ref = mt.getParameter(PARAM_DESCRIPTOR);
+                if (ref == null) {
+                    throw new PluginException("Protobuf message " + name + " is not registered; set the '"
+                            + PARAM_DESCRIPTOR + "' parameter to a descriptor set that defines it");
+                }
+
+                descriptor = descriptorSets.computeIfAbsent(ref, DefaultProtobufPlugin::readDescriptorSet).get(name);
+                if (descriptor == null) {
+                    throw new PluginException("Protobuf message " + name + " is not defined by descriptor set " + ref);
+                }
+            }
+            return ProtobufCodec$.MODULE$.of(descriptor);
+        });
+    }
+
+    @Override
+    public Val.Literal read(Document<?> doc, Position pos) throws PluginException {
+        Object content = doc.getContent();
+        if (content == null) {
+            return new Val.Null(pos);
+        }
+
+        ProtobufCodec codec = codecOf(doc.getMediaType());
+        try {
+            if (content instanceof byte[] bytes) {
+                return codec.read(CodedInputStream.newInstance(bytes), new LiteralVisitor(pos));
+            } else if (content instanceof ByteBuffer buffer) {
+                // a slice, so the caller's buffer is read but never moved
+                return codec.read(CodedInputStream.newInstance(buffer.slice()), new LiteralVisitor(pos));
+            } else if (content instanceof InputStream is) {
+                return codec.read(CodedInputStream.newInstance(is), new LiteralVisitor(pos));
+            } else if (content instanceof Path path) {
+                return fromPath(codec, path, pos);
+            } else if (content instanceof File file) {
+                return fromPath(codec, file.toPath(), pos);
+            } else {
+                throw unsupportedReadClass(doc);
+            }
+        } catch (IOException e) {
+            throw new PluginException("Unable to read protobuf", e);
+        }
+    }
+
+    private static Val.Literal fromPath(ProtobufCodec codec, Path path, Position pos) throws IOException {
+        ByteBuffer mapped = MappedFiles.map(path);
+        if (mapped != null) {
+            return codec.read(CodedInputStream.newInstance(mapped), new LiteralVisitor(pos));
+        }
+
+        try (InputStream is = MappedFiles.newInputStream(path)) {
+            return codec.read(CodedInputStream.newInstance(is), new LiteralVisitor(pos));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Document<T> write(Val input, MediaType mediaType, Class<T> targetType, EvalScope ev) throws PluginException {
+        if (targetType.isAssignableFrom(OutputStream.class)) {
+            var out = new ByteArrayOutputStream();
+            writeTo(input, mediaType, out, ev);
+            return (Document<T>) new Document.BasicDocument<>(out, MediaTypes.APPLICATION_PROTOBUF);
+        }
+
+        if (targetType.isAssignableFrom(ByteBuffer.class)) {
+            return (Document<T>) new Document.BasicDocument<>(
+                    ByteBuffer.wrap(codecOf(mediaType).write(input, ev).toByteArray()), MediaTypes.APPLICATION_PROTOBUF);
+        }
+
+        if (targetType.isAssignableFrom(byte[].class)) {
+            return (Document<T>) new Document.BasicDocument<>(
+                    codecOf(mediaType).write(input, ev).toByteArray(), MediaTypes.APPLICATION_PROTOBUF);
+        }
+
+        throw unsupportedWriteClass(mediaType, targetType);
+    }
+
+    /** Writes the input as a single message. The stream is flushed, but left open. */
+    @Override
+    public void writeTo(Val input, MediaType mediaType, OutputStream out, EvalScope ev) throws PluginException {
+        try {
+            codecOf(mediaType).write(input, ev).writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new PluginException("Unable to write protobuf", e);
+        }
+    }
+
+    @Override
+    public void writeTo(Val input, MediaType mediaType, Writer out, EvalScope ev) throws PluginException {
+        // the default would decode the bytes as characters
+        throw new PluginException("Protobuf is binary, and cannot be written to a Writer; write it to an OutputStream");
+    }
+
+    // every message type of the set by full name, nested ones included
+    private static Map<String, Descriptor> readDescriptorSet(String ref) {
+        FileDescriptorSet set;
+        try (InputStream is = ResourceResolver.asStream(ref)) {
+            set = FileDescriptorSet.parseFrom(is);
+        } catch (IOException e) {
+            throw new PluginException("Could not read protobuf descriptor set " + ref + ": " + e.getMessage(), e);
+        }
+
+        var protos = new HashMap<String, FileDescriptorProto>();
+        for (FileDescriptorProto proto : set.getFileList()) {
+            protos.put(proto.getName(), proto);
+        }
+
+        var files = new HashMap<String, FileDescriptor>();
+        var messages = new HashMap<String, Descriptor>();
+        try {
+            for (FileDescriptorProto proto : set.getFileList()) {
+                for (Descriptor descriptor : build(proto.getName(), protos, files, ref).getMessageTypes()) {
+                    addWithNested(descriptor, messages);
+                }
+            }
+        } catch (DescriptorValidationException e) {
+            throw new PluginException("Invalid protobuf descriptor set " + ref + ": " + e.getMessage(), e);
+        }
+        return Map.copyOf(messages);
+    }
+
+    // files are built after the files they import
+    private static FileDescriptor build(String name, Map<String, FileDescriptorProto> protos,
+                                        Map<String, FileDescriptor> files, String ref) throws DescriptorValidationException {
+        FileDescriptor file = files.get(name);
+        if (file != null) {
+            return file;
+        }
+
+        FileDescriptorProto proto = protos.get(name);
+        if (proto == null) {
+            file = BUNDLED.get(name);
+            if (file == null) {
+                throw new PluginException("Protobuf descriptor set " + ref + " does not include " + name
+                        + ", an import; write it with protoc --include_imports");
+            }
+            return file;
+        }
+
+        var dependencies = new FileDescriptor[proto.getDependencyCount()];
+        for (int i = 0; i < dependencies.length; i++) {
+            dependencies[i] = build(proto.getDependency(i), protos, files, ref);
+        }
+        file = FileDescriptor.buildFrom(proto, dependencies);
+        files.put(name, file);
+        return file;
+    }
+
+    private static void addWithNested(Descriptor descriptor, Map<String, Descriptor> messages) {
+        messages.put(descriptor.getFullName(), descriptor);
+        for (Descriptor nested : descriptor.getNestedTypes()) {
+            addWithNested(nested, messages);
+        }
+    }
+}
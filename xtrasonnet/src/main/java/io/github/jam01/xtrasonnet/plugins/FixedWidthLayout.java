@@ -0,0 +1,297 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.jam01.xtrasonnet.ResourceResolver;
+import io.github.jam01.xtrasonnet.spi.PluginException;
+import sjsonnet.Position;
+import sjsonnet.Val;
+import upickle.core.ArrVisitor;
+import upickle.core.ObjVisitor;
+import upickle.core.Visitor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The columns of a fixed-width record, compiled from a layout file into the offsets, lengths and
+ * conversions of each, once. Records are read by slicing a buffer of characters at those offsets, with
+ * no splitting, matching or copying of a record before it is taken apart; {@link FixedWidthVisitor}
+ * writes them by filling one.
+ * <p>
+ * A layout is a JSON file such as:
+ * <pre>{@code
+ * {
+ *   "columns": [
+ *     { "name": "id",     "length": 6, "type": "integer" },
+ *     { "name": "name",   "length": 20, "trim": "right" },
+ *     { "name": "amount", "offset": 26, "length": 9, "type": "decimal", "scale": 2 }
+ *   ]
+ * }
+ * }</pre>
+ * where a column's offset is zero based and defaults to the end of the column before it, its type is
+ * one of {@code string}, {@code integer} or {@code decimal}, and a decimal's scale is the number of
+ * digits implied after its point. Trimming is of spaces, from {@code both} ends by default, the
+ * {@code left}, the {@code right} or {@code none}. Columns may leave gaps between them, but may not
+ * overlap. The layout's {@code length} is that of a whole record, no shorter than the end of its last
+ * column, which it defaults to.
+ */
+final class FixedWidthLayout {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    enum Type { STRING, INTEGER, DECIMAL }
+
+    enum Trim { BOTH, LEFT, RIGHT, NONE }
+
+    record Column(String name, int offset, int length, Type type, int scale, Trim trim) {
+        int end() {
+            return offset + length;
+        }
+    }
+
+    private final Column[] columns;
+    private final Map<String, Integer> byName;
+    private final int length;
+
+    private FixedWidthLayout(Column[] columns, int length) {
+        this.columns = columns;
+        this.length = length;
+
+        var byName = new HashMap<String, Integer>();
+        for (int i = 0; i < columns.length; i++) {
+            byName.put(columns[i].name(), i);
+        }
+        this.byName = Map.copyOf(byName);
+    }
+
+    /** Reads and compiles the layout found at the given resource, e.g. {@code classpath:layouts/orders.json}. */
+    static FixedWidthLayout of(String ref) {
+        JsonNode layout;
+        try (InputStream is = ResourceResolver.asStream(ref)) {
+            layout = MAPPER.readTree(is);
+        } catch (IOException e) {
+            throw new PluginException("Could not read fixed-width layout " + ref + ": " + e.getMessage(), e);
+        }
+
+        JsonNode nodes = layout.path("columns");
+        if (!nodes.isArray() || nodes.isEmpty()) {
+            throw new PluginException("Fixed-width layout " + ref + " has no columns");
+        }
+
+        var columns = new Column[nodes.size()];
+        int next = 0;
+        for (int i = 0; i < columns.length; i++) {
+            JsonNode node = nodes.get(i);
+            String name = node.path("name").asText(null);
+            int offset = node.path("offset").asInt(next);
+            int length = node.path("length").asInt(0);
+            if (name == null || offset < 0 || length <= 0 || offset > Integer.MAX_VALUE - length) {
+                throw new PluginException("Fixed-width layout " + ref + " has an invalid column at " + i
+                        + "; each needs a name, an offset of zero or more, and a length greater than zero");
+            }
+
+            Type type = valueOf(Type.class, node.path("type").asText("string"), ref, name);
+            Trim trim = valueOf(Trim.class, node.path("trim").asText("both"), ref, name);
+            int scale = type == Type.DECIMAL ? node.path("scale").asInt(0) : 0;
+
+            // names are interned, so that every record shares the one instance of each key
+            columns[i] = new Column(name.intern(), offset, length, type, scale, trim);
+            next = columns[i].end();
+        }
+
+        // columns may be declared in any order, but no two may share a character: each would be written
+        // over the other
+        Column[] byOffset = columns.clone();
+        Arrays.sort(byOffset, Comparator.comparingInt(Column::offset));
+        for (int i = 1; i < byOffset.length; i++) {
+            if (byOffset[i].offset() < byOffset[i - 1].end()) {
+                throw new PluginException("Fixed-width layout " + ref + " has overlapping columns " + byOffset[i - 1].name()
+                        + " [" + byOffset[i - 1].offset() + ", " + byOffset[i - 1].end() + ") and " + byOffset[i].name()
+                        + " [" + byOffset[i].offset() + ", " + byOffset[i].end() + ")");
+            }
+        }
+
+        int end = byOffset[byOffset.length - 1].end();
+        int length = layout.path("length").asInt(end);
+        if (length < end) {
+            throw new PluginException("Fixed-width layout " + ref + " has a length of " + length
+                    + ", shorter than its columns, which end at " + end);
+        }
+        return new FixedWidthLayout(columns, length);
+    }
+
+    private static <E extends Enum<E>> E valueOf(Class<E> type, String name, String ref, String column) {
+        try {
+            return Enum.valueOf(type, name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new PluginException("Fixed-width layout " + ref + " has an invalid " + type.getSimpleName().toLowerCase(Locale.ROOT)
+                    + " '" + name + "' for column " + column);
+        }
+    }
+
+    int length() {
+        return length;
+    }
+
+    Column[] columns() {
+        return columns;
+    }
+
+    /** The index of the named column, or -1 when the layout has none by that name. */
+    int indexOf(String name) {
+        Integer i = byName.get(name);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Reads every record of the Reader as an object of its columns. Records are its lines, or when not
+     * {@code delimited}, consecutive runs of the layout's length; empty lines are skipped.
+     */
+    Val.Literal read(Reader in, boolean delimited, Position pos) throws IOException {
+        ArrVisitor<Object, Val.Literal> records = new LiteralVisitor(pos).visitArray(-1, -1).narrow();
+
+        char[] buf = new char[Math.max(8192, length * 2)];
+        int start = 0, end = 0, scan = 0;
+        long record = 0;
+        boolean eof = false;
+        while (true) {
+            if (delimited) {
+                int nl = -1;
+                for (int i = scan; i < end; i++) {
+                    if (buf[i] == '\n') {
+                        nl = i;
+                        break;
+                    }
+                }
+
+                if (nl >= 0 || (eof && start < end)) {
+                    int lineEnd = nl >= 0 ? nl : end;
+                    int recordEnd = lineEnd > start && buf[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+                    record++;
+                    if (recordEnd > start) {
+                        records.visitValue(readRecord(buf, start, recordEnd, record, records.subVisitor()), -1);
+                    }
+                    start = scan = nl >= 0 ? nl + 1 : end;
+                    continue;
+                }
+                scan = end;
+            } else if (end - start >= length || (eof && start < end && !isLineBreaks(buf, start, end))) {
+                int recordEnd = Math.min(start + length, end);
+                records.visitValue(readRecord(buf, start, recordEnd, ++record, records.subVisitor()), -1);
+                start = recordEnd;
+                continue;
+            }
+
+            if (eof) {
+                break;
+            }
+
+            // keep what is left of a record, and read more behind it
+            if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, end - start);
+                end -= start;
+                scan -= start;
+                start = 0;
+            } else if (end == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+
+            int read = in.read(buf, end, buf.length - end);
+            if (read < 0) {
+                eof = true;
+            } else {
+                end += read;
+            }
+        }
+
+        return records.visitEnd(-1);
+    }
+
+    // what some tools end a file of undelimited records with
+    private static boolean isLineBreaks(char[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] != '\n' && buf[i] != '\r') return false;
+        }
+        return true;
+    }
+
+    // a record from buf[from, to), whose columns past its end are read as blank
+    private Object readRecord(char[] buf, int from, int to, long record, Visitor<?, ?> visitor) {
+        ObjVisitor<Object, ?> obj = visitor.visitObject(columns.length, true, -1).narrow();
+        for (Column column : columns) {
+            int s = Math.min(from + column.offset(), to);
+            int e = Math.min(from + column.end(), to);
+            if (column.trim() == Trim.BOTH || column.trim() == Trim.LEFT || column.type() != Type.STRING) {
+                while (s < e && buf[s] == ' ') s++;
+            }
+            if (column.trim() == Trim.BOTH || column.trim() == Trim.RIGHT || column.type() != Type.STRING) {
+                while (e > s && buf[e - 1] == ' ') e--;
+            }
+
+            obj.visitKeyValue(obj.visitKey(-1).visitString(column.name(), -1));
+            obj.visitValue(readValue(column, buf, s, e, record, obj.subVisitor()), -1);
+        }
+        return obj.visitEnd(-1);
+    }
+
+    private static Object readValue(Column column, char[] buf, int s, int e, long record, Visitor<?, ?> v) {
+        if (column.type() == Type.STRING) {
+            return v.visitString(new String(buf, s, e - s), -1);
+        }
+        if (s == e) {
+            return v.visitNull(-1); // a blank number
+        }
+
+        // the digits are read in place; only a decimal becomes a String, to be visited as one. A sign with
+        // no digits after it, even none at all, is left to be found invalid by the count of digits
+        int start = s;
+        if (buf[s] == '+') s++;
+        boolean negative = s == start && buf[s] == '-';
+        long unscaled = 0;
+        int point = -1;
+        int digits = 0;
+        for (int i = negative ? s + 1 : s; i < e; i++) {
+            char c = buf[i];
+            if (c >= '0' && c <= '9') {
+                unscaled = unscaled * 10 + (c - '0');
+                digits++;
+            } else if (c == '.' && point < 0 && column.type() == Type.DECIMAL) {
+                point = i - s;
+            } else {
+                digits = 0;
+                break;
+            }
+        }
+        if (digits == 0) {
+            throw new PluginException("Invalid " + column.type().name().toLowerCase(Locale.ROOT) + " '"
+                    + new String(buf, start, e - start) + "' in column " + column.name() + " of record " + record);
+        }
+
+        if (digits > 18) { // past what a long is sure to hold
+            var big = new BigDecimal(buf, s, e - s);
+            String text = (point < 0 ? big.movePointLeft(column.scale()) : big).toPlainString();
+            return v.visitFloat64StringParts(text, text.indexOf('.'), -1, -1);
+        } else if (column.type() == Type.INTEGER) {
+            return v.visitInt64(negative ? -unscaled : unscaled, -1);
+        } else if (point >= 0) {
+            return v.visitFloat64StringParts(new String(buf, s, e - s), point, -1, -1);
+        } else {
+            String text = BigDecimal.valueOf(negative ? -unscaled : unscaled, column.scale()).toPlainString();
+            return v.visitFloat64StringParts(text, text.indexOf('.'), -1, -1);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads local files through a read-only memory map, so parsers read straight from the OS page cache
+ * rather than through a stream's copy of every block into the heap.
+ * <p>
+ * A mapping stays valid after its channel is closed, and is released when the buffer is collected
+ * rather than at any particular point; on Windows the file cannot be deleted until then.
+ */
+public final class MappedFiles {
+    private MappedFiles() {
+    }
+
+    /**
+     * Maps the whole file, or returns null when it is too large for a single buffer to address, 2 GiB
+     * and up.
+     */
+    public static @Nullable MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) return null;
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /** A stream over the mapped file, or over the file itself when it is too large to map whole. */
+    public static InputStream newInputStream(Path path) throws IOException {
+        MappedByteBuffer mapped = map(path);
+        return mapped != null ? new ByteBufferBackedInputStream(mapped) : Files.newInputStream(path);
+    }
+}
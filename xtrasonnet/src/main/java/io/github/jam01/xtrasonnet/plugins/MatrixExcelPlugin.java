@@ -7,26 +7,31 @@ package io.github.jam01.xtrasonnet.plugins;
  * compliance with the Elastic License 2.0.
  */
 
+import org.jspecify.annotations.Nullable;
+
 import io.github.jam01.xtrasonnet.document.Document;
 import io.github.jam01.xtrasonnet.document.MediaType;
 import io.github.jam01.xtrasonnet.document.MediaTypes;
 import io.github.jam01.xtrasonnet.spi.BasePlugin;
 import io.github.jam01.xtrasonnet.spi.PluginException;
-import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
 import sjsonnet.EvalScope;
 import sjsonnet.Position;
 import sjsonnet.Val;
+import upickle.core.ArrVisitor;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.InputStream;
 
 public class MatrixExcelPlugin extends BasePlugin {
     public MatrixExcelPlugin() {
         supportedTypes.add(MediaTypes.APPLICATION_EXCEL);
 
+        // the same selection as DefaultExcelPlugin's
+        readerParams.add(DefaultExcelPlugin.PARAM_SHEETS);
+        readerParams.add(DefaultExcelPlugin.PARAM_RANGE);
+        readerParams.add(DefaultExcelPlugin.PARAM_COLUMNS);
+        readerParams.add(DefaultExcelPlugin.PARAM_MAX_ROWS);
+
         readerSupportedClasses.add(InputStream.class);
         readerSupportedClasses.add(File.class);
     }
@@ -43,36 +48,36 @@ public class MatrixExcelPlugin extends BasePlugin {
         }
 
         var bVisitor = new LiteralVisitor(pos).visitArray(-1, -1).narrow();
-        Class<?> targetType = doc.getContent().getClass();
-
-        try (Workbook book = File.class.isAssignableFrom(targetType) ? WorkbookFactory.create((File) doc.getContent()) : WorkbookFactory.create((InputStream) doc.getContent())) {
-            var sheets = book.iterator();
-
-            while (sheets.hasNext()) {
-                var sheet = sheets.next();
-                var rows = sheet.iterator();
-                var sVisitor = bVisitor.subVisitor().visitArray(-1, -1).narrow();
-
-                while (rows.hasNext()) {
-                    var row = rows.next();
-                    var cells = row.iterator();
-                    var rVisitor = sVisitor.subVisitor().visitArray(-1, -1).narrow();
-
-                    while (cells.hasNext()) {
-                        var cell = cells.next();
-                        var cVisitor = rVisitor.subVisitor();
-
-                        // shared with DefaultExcelPlugin: the copy here dropped false booleans and
-                        // sent formula cells to getStringCellValue, which throws on numeric formulas
-                        rVisitor.visitValue(DefaultExcelPlugin.literalOf(cell.getCellType(), cell, cVisitor), -1);
-                    }
-                    sVisitor.visitValue(rVisitor.visitEnd(-1), -1);
-                }
+        var selection = configFor(doc.getMediaType(), SpreadsheetReader.Selection::of);
+        SpreadsheetReader.read(doc.getContent(), pos, selection, new SpreadsheetReader.Sink() {
+            private @Nullable ArrVisitor<Object, ?> sVisitor;
+            private @Nullable ArrVisitor<Object, ?> rVisitor;
+
+            @Override
+            public void startSheet(String name) {
+                sVisitor = bVisitor.subVisitor().visitArray(-1, -1).narrow();
+            }
+
+            @Override
+            public void startRow() {
+                rVisitor = sVisitor.subVisitor().visitArray(-1, -1).narrow();
+            }
+
+            @Override
+            public void cell(String column, Val.Literal value) {
+                rVisitor.visitValue(value, -1);
+            }
+
+            @Override
+            public void endRow() {
+                sVisitor.visitValue(rVisitor.visitEnd(-1), -1);
+            }
+
+            @Override
+            public void endSheet() {
                 bVisitor.visitValue(sVisitor.visitEnd(-1), -1);
             }
-        } catch (IOException ex) {
-            throw new PluginException("Could not read spreadsheet: " + ex.getMessage(), ex);
-        }
+        });
 
         return bVisitor.visitEnd(-1);
     }
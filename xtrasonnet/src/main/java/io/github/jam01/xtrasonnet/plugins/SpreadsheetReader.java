@@ -0,0 +1,456 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import org.jspecify.annotations.Nullable;
+
+import io.github.jam01.xtrasonnet.document.MediaType;
+import io.github.jam01.xtrasonnet.spi.PluginException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import sjsonnet.Position;
+import sjsonnet.Val;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads a spreadsheet into a {@link Sink}, sheet by sheet and row by row.
+ * <p>
+ * OOXML workbooks (xlsx) are read through POI's event API: each sheet's XML is parsed as a stream and
+ * its cells handed over as they are found, so neither the workbook's object model nor a sheet of it is
+ * ever held. Only the shared strings and styles tables are, which is what the cells refer into. Loading
+ * the workbook through {@link WorkbookFactory} instead took several times the file's size in heap, the
+ * whole of it before the first cell was read. A workbook given as an InputStream is first copied to a
+ * temporary file, since POI cannot read a zip stream's entries one at a time. Anything else, xls in
+ * particular, is still loaded whole.
+ * <p>
+ * Cells convert as {@link DefaultExcelPlugin#literalOf} does, whichever the path. Those outside of the
+ * {@link Selection} are passed over before they are converted, and a sheet is left as soon as its
+ * selected rows are done.
+ */
+final class SpreadsheetReader {
+    private SpreadsheetReader() {
+    }
+
+    /** Receives a spreadsheet's contents, in document order. */
+    interface Sink {
+        void startSheet(String name);
+
+        void startRow();
+
+        void cell(String column, Val.Literal value);
+
+        void endRow();
+
+        void endSheet();
+    }
+
+    /** The named parameter as a whole number no less than {@code min}, or a PluginException naming it. */
+    static int intParameter(MediaType mediaType, String name, int min, int defaault) {
+        if (!mediaType.containsParameter(name)) return defaault;
+
+        String value = mediaType.getParameter(name, "").trim();
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= min) return parsed;
+        } catch (NumberFormatException e) {
+            // reported below, as the value being out of range is
+        }
+        throw new PluginException("Invalid spreadsheet %s '%s', expected a whole number of at least %d"
+                .formatted(name, value, min));
+    }
+
+    /**
+     * What of a spreadsheet to read, from the reader parameters of {@link DefaultExcelPlugin}; rows and
+     * columns are zero based, and inclusive.
+     */
+    record Selection(@Nullable Set<String> sheets, int firstRow, int lastRow, int firstColumn, int lastColumn,
+                     @Nullable BitSet columns, int maxRows) {
+        // e.g. B2:D10, B:D or 2:10; the end of it may be left out
+        private static final Pattern RANGE = Pattern.compile("([A-Z]{0,3})(\\d*)(?::([A-Z]{0,3})(\\d*))?");
+
+        static Selection of(MediaType mediaType) {
+            @Nullable Set<String> sheets = null;
+            if (mediaType.containsParameter(DefaultExcelPlugin.PARAM_SHEETS)) {
+                sheets = new HashSet<>();
+                for (String sheet : mediaType.getParameterAsList(DefaultExcelPlugin.PARAM_SHEETS, ',', List.of())) {
+                    sheets.add(sheet.trim());
+                }
+            }
+
+            int firstRow = 0, lastRow = Integer.MAX_VALUE, firstColumn = 0, lastColumn = Integer.MAX_VALUE;
+            if (mediaType.containsParameter(DefaultExcelPlugin.PARAM_RANGE)) {
+                String range = mediaType.getParameter(DefaultExcelPlugin.PARAM_RANGE, "").trim().toUpperCase(Locale.ROOT);
+                Matcher matcher = RANGE.matcher(range);
+                if (range.isEmpty() || !matcher.matches()) {
+                    throw new PluginException("Invalid spreadsheet range '%s', expected e.g. A1:D10, A:D or 1:10"
+                            .formatted(range));
+                }
+                if (!matcher.group(1).isEmpty()) firstColumn = CellReference.convertColStringToIndex(matcher.group(1));
+                if (!matcher.group(2).isEmpty()) firstRow = rowOf(matcher.group(2), range);
+                if (matcher.group(3) != null && !matcher.group(3).isEmpty()) lastColumn = CellReference.convertColStringToIndex(matcher.group(3));
+                if (matcher.group(4) != null && !matcher.group(4).isEmpty()) lastRow = rowOf(matcher.group(4), range);
+                if (firstRow > lastRow || firstColumn > lastColumn) {
+                    throw new PluginException("Invalid spreadsheet range '%s', its end is before its start".formatted(range));
+                }
+            }
+
+            @Nullable BitSet columns = null;
+            if (mediaType.containsParameter(DefaultExcelPlugin.PARAM_COLUMNS)) {
+                columns = new BitSet();
+                for (String column : mediaType.getParameterAsList(DefaultExcelPlugin.PARAM_COLUMNS, ',', List.of())) {
+                    String name = column.trim().toUpperCase(Locale.ROOT);
+                    if (name.isEmpty() || name.length() > 3 || !name.chars().allMatch(c -> c >= 'A' && c <= 'Z')) {
+                        throw new PluginException("Invalid spreadsheet column '%s', expected e.g. A, B or AA"
+                                .formatted(column));
+                    }
+                    columns.set(CellReference.convertColStringToIndex(name));
+                }
+            }
+
+            return new Selection(sheets, firstRow, lastRow, firstColumn, lastColumn, columns,
+                    intParameter(mediaType, DefaultExcelPlugin.PARAM_MAX_ROWS, 0, Integer.MAX_VALUE));
+        }
+
+        // rows are numbered from 1, and kept from 0
+        private static int rowOf(String digits, String range) {
+            try {
+                int row = Integer.parseInt(digits);
+                if (row >= 1) return row - 1;
+            } catch (NumberFormatException e) {
+                // too many digits for an int, and far too many for a sheet
+            }
+            throw new PluginException("Invalid spreadsheet range '%s', rows are numbered from 1 to %d"
+                    .formatted(range, SpreadsheetVersion.EXCEL2007.getMaxRows()));
+        }
+
+        boolean includesSheet(String name) {
+            return sheets == null || sheets.contains(name);
+        }
+
+        boolean includesColumn(int column) {
+            return column >= firstColumn && column <= lastColumn && (columns == null || columns.get(column));
+        }
+    }
+
+    static void read(Object content, Position pos, Selection selection, Sink sink) throws PluginException {
+        try {
+            if (content instanceof File file) {
+                if (FileMagic.valueOf(file) == FileMagic.OOXML) {
+                    readOoxml(OPCPackage.open(file, PackageAccess.READ), pos, selection, sink);
+                } else {
+                    try (Workbook book = WorkbookFactory.create(file, null, true)) {
+                        readWorkbook(book, pos, selection, sink);
+                    }
+                }
+            } else {
+                // the caller's stream is read, not closed; the magic check needs mark and reset
+                InputStream is = FileMagic.prepareToCheckMagic((InputStream) content);
+                if (FileMagic.valueOf(is) == FileMagic.OOXML) {
+                    readOoxml(is, pos, selection, sink);
+                } else {
+                    try (Workbook book = WorkbookFactory.create(is)) {
+                        readWorkbook(book, pos, selection, sink);
+                    }
+                }
+            }
+        } catch (IOException | OpenXML4JException | SAXException | ParserConfigurationException ex) {
+            throw new PluginException("Could not read spreadsheet: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static void readWorkbook(Workbook book, Position pos, Selection selection, Sink sink) {
+        var cellVisitor = new LiteralVisitor(pos);
+        for (var sheet : book) {
+            if (!selection.includesSheet(sheet.getSheetName())) continue;
+
+            sink.startSheet(sheet.getSheetName());
+            int rows = 0;
+            for (var row : sheet) {
+                if (row.getRowNum() < selection.firstRow()) continue;
+                if (row.getRowNum() > selection.lastRow() || rows == selection.maxRows()) break;
+
+                rows++;
+                sink.startRow();
+                for (var cell : row) {
+                    if (!selection.includesColumn(cell.getColumnIndex())) continue;
+                    sink.cell(CellReference.convertNumToColString(cell.getColumnIndex()),
+                            DefaultExcelPlugin.literalOf(cell.getCellType(), cell, cellVisitor));
+                }
+                sink.endRow();
+            }
+            sink.endSheet();
+        }
+    }
+
+    // Opened from a stream, POI reads every entry of the zip into the heap, each sheet's XML uncompressed,
+    // before a cell is parsed. Spooled to a file instead, the sheets are inflated as they are parsed, at
+    // the cost of writing the workbook, still compressed, to the temporary directory.
+    private static void readOoxml(InputStream is, Position pos, Selection selection, Sink sink)
+            throws IOException, OpenXML4JException, SAXException, ParserConfigurationException {
+        Path spooled = Files.createTempFile("xtrasonnet-", ".xlsx");
+        try {
+            Files.copy(is, spooled, StandardCopyOption.REPLACE_EXISTING);
+            readOoxml(OPCPackage.open(spooled.toFile(), PackageAccess.READ), pos, selection, sink);
+        } finally {
+            Files.deleteIfExists(spooled); // after revert has closed it
+        }
+    }
+
+    private static void readOoxml(OPCPackage pkg, Position pos, Selection selection, Sink sink)
+            throws IOException, OpenXML4JException, SAXException, ParserConfigurationException {
+        try {
+            var reader = new XSSFReader(pkg);
+            var strings = new ReadOnlySharedStringsTable(pkg, false);
+            var styles = reader.getStylesTable();
+            boolean date1904 = isDate1904(reader);
+
+            var sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream sheet = sheets.next()) {
+                    String name = sheets.getSheetName();
+                    if (!selection.includesSheet(name)) continue; // never parsed
+
+                    sink.startSheet(name);
+                    try {
+                        parse(sheet, new SheetHandler(name, strings, styles, date1904, selection, new LiteralVisitor(pos), sink));
+                    } catch (SheetDone done) {
+                        // what is left of the sheet is past the selected rows
+                    }
+                    sink.endSheet();
+                }
+            }
+        } finally {
+            pkg.revert(); // opened to read: closing would try to save it
+        }
+    }
+
+    // the workbook's date system, which date cells are relative to
+    private static boolean isDate1904(XSSFReader reader)
+            throws IOException, OpenXML4JException, SAXException, ParserConfigurationException {
+        var date1904 = new boolean[1];
+        try (InputStream workbook = reader.getWorkbookData()) {
+            parse(workbook, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attrs) {
+                    if ("workbookPr".equals(localName)) {
+                        String value = attrs.getValue("date1904");
+                        date1904[0] = "1".equals(value) || "true".equalsIgnoreCase(value);
+                    }
+                }
+            });
+        }
+        return date1904[0];
+    }
+
+    private static void parse(InputStream in, DefaultHandler handler)
+            throws IOException, SAXException, ParserConfigurationException {
+        XMLReader parser = XMLHelper.newXMLReader(); // POI's, configured against entity expansion
+        parser.setContentHandler(handler);
+        parser.parse(new InputSource(in));
+    }
+
+    /** Ends the parse of a sheet once past the selected rows. */
+    private static final class SheetDone extends SAXException {
+        SheetDone() {
+            super("Past the selected rows");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this; // not an error, and thrown once per sheet
+        }
+    }
+
+    /** One sheet's cells, from its XML; see ECMA-376 Part 1, 18.3.1.4. */
+    private static final class SheetHandler extends DefaultHandler {
+        private final String sheetName;
+        private final ReadOnlySharedStringsTable strings;
+        private final @Nullable StylesTable styles;
+        private final boolean date1904;
+        private final Selection selection;
+        private final LiteralVisitor cellVisitor;
+        private final Sink sink;
+        private final Map<Integer, Boolean> dateStyles = new HashMap<>();
+
+        private final StringBuilder text = new StringBuilder();
+        private boolean capture;
+        private boolean inInlineString;
+        private boolean inPhonetic;
+
+        private int row = -1;
+        private int rows; // selected so far
+        private boolean skipRow;
+
+        private int nextColumn;
+        private boolean skipCell;
+        private String column = "";
+        private @Nullable String ref;
+        private @Nullable String type;
+        private int style;
+        private boolean hasValue;
+        private boolean hasFormula;
+
+        SheetHandler(String sheetName, ReadOnlySharedStringsTable strings, @Nullable StylesTable styles,
+                     boolean date1904, Selection selection, LiteralVisitor cellVisitor, Sink sink) {
+            this.sheetName = sheetName;
+            this.strings = strings;
+            this.styles = styles;
+            this.date1904 = date1904;
+            this.selection = selection;
+            this.cellVisitor = cellVisitor;
+            this.sink = sink;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attrs) throws SAXException {
+            switch (localName) {
+                case "row" -> {
+                    String r = attrs.getValue("r"); // optional too, a row then being the one after the previous
+                    row = r == null ? row + 1 : Integer.parseInt(r) - 1;
+                    if (row > selection.lastRow() || rows == selection.maxRows()) throw new SheetDone();
+
+                    nextColumn = 0;
+                    skipRow = row < selection.firstRow();
+                    if (!skipRow) {
+                        rows++;
+                        sink.startRow();
+                    }
+                }
+                case "c" -> {
+                    ref = attrs.getValue("r");
+                    startCell();
+                    if (skipCell) return; // its value is never captured, nor converted
+
+                    type = attrs.getValue("t");
+                    String s = attrs.getValue("s");
+                    style = s == null ? 0 : Integer.parseInt(s);
+                    hasValue = false;
+                    hasFormula = false;
+                    text.setLength(0);
+                }
+                case "v" -> {
+                    hasValue = true;
+                    capture = !skipCell;
+                }
+                case "f" -> hasFormula = true;
+                case "is" -> {
+                    hasValue = true;
+                    inInlineString = true;
+                }
+                case "rPh" -> inPhonetic = true;
+                case "t" -> capture = !skipCell && inInlineString && !inPhonetic;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (capture) text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v", "t" -> capture = false;
+                case "rPh" -> inPhonetic = false;
+                case "is" -> inInlineString = false;
+                case "c" -> {
+                    if (!skipCell) sink.cell(column, valueOf(column));
+                }
+                case "row" -> {
+                    if (!skipRow) sink.endRow();
+                }
+                default -> {
+                }
+            }
+        }
+
+        private void startCell() {
+            int index;
+            if (ref == null) { // r is optional, a cell then being the one after the previous
+                index = nextColumn;
+                column = CellReference.convertNumToColString(index);
+            } else {
+                int digits = 0;
+                while (digits < ref.length() && !Character.isDigit(ref.charAt(digits))) digits++;
+                column = ref.substring(0, digits);
+                index = CellReference.convertColStringToIndex(column);
+            }
+            nextColumn = index + 1;
+            skipCell = skipRow || !selection.includesColumn(index);
+        }
+
+        private Val.Literal valueOf(String column) {
+            String value = text.toString();
+            if (type == null || "n".equals(type)) {
+                if (!hasValue) {
+                    // a formula with no cached result reads as 0, a cell with neither is blank
+                    return hasFormula ? cellVisitor.visitFloat64(0, -1) : cellVisitor.visitString("", -1);
+                }
+                double number = Double.parseDouble(value);
+                if (isDateStyle(style) && DateUtil.isValidExcelDate(number)) {
+                    return cellVisitor.visitString(DateUtil.getLocalDateTime(number, date1904).toString(), -1);
+                }
+                return cellVisitor.visitFloat64(number, -1);
+            }
+
+            return switch (type) {
+                case "s" -> cellVisitor.visitString(hasValue
+                        ? strings.getItemAt(Integer.parseInt(value.trim())).getString() : "", -1);
+                case "inlineStr", "str", "d" -> cellVisitor.visitString(value, -1);
+                case "b" -> "1".equals(value.trim()) || "true".equalsIgnoreCase(value.trim())
+                        ? cellVisitor.visitTrue(-1) : cellVisitor.visitFalse(-1);
+                default -> throw new IllegalArgumentException("Cannot represent cell %s of sheet '%s' as a jsonnet element: unsupported cell type %s"
+                        .formatted(ref != null ? ref : column, sheetName, "e".equals(type) ? "ERROR" : type));
+            };
+        }
+
+        private boolean isDateStyle(int index) {
+            if (styles == null) return false;
+            return dateStyles.computeIfAbsent(index, i -> {
+                if (i >= styles.getNumCellStyles()) return false;
+                XSSFCellStyle cellStyle = styles.getStyleAt(i);
+                return cellStyle != null && DateUtil.isADateFormat(cellStyle.getDataFormat(), cellStyle.getDataFormatString());
+            });
+        }
+    }
+}
@@ -15,7 +15,11 @@ import io.github.jam01.xtrasonnet.document.MediaType;
 import io.github.jam01.xtrasonnet.document.MediaTypes;
 
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 
 public abstract class BasePlugin implements DataFormatPlugin {
     public static final String PARAM_FORMAT = "fmt";
@@ -26,6 +30,45 @@ public abstract class BasePlugin implements DataFormatPlugin {
     protected final Set<Class<?>> readerSupportedClasses = new LinkedHashSet<>();
     protected final Set<Class<?>> writerSupportedClasses = new LinkedHashSet<>();
 
+    // supported parameters are patterns, and String.matches compiled each one again for every parameter
+    // of every media type checked; shared, since plugins declare many of the same
+    private static final Map<String, Pattern> PARAM_PATTERNS = new ConcurrentHashMap<>();
+    // keyed by parameters, the only part of a media type configuration is derived from; see configFor.
+    // Parameters are whatever a caller sends, a charset or a record path, and plugins are long-lived
+    // singletons, so only the first MAX_CACHED_CONFIGS sets are kept.
+    private final Map<Map<String, String>, Object> configs = new ConcurrentHashMap<>();
+    protected static final int MAX_CACHED_CONFIGS = 64;
+
+    /**
+     * The configuration this plugin derives from the given media type, derived once per distinct set
+     * of parameters and shared from then on, for the first {@value #MAX_CACHED_CONFIGS} sets; past
+     * those it is derived on every call. It must depend on the parameters alone, be safe to share
+     * across threads, and be of a single type per plugin.
+     */
+    @SuppressWarnings("unchecked")
+    protected final <C> C configFor(MediaType mediaType, Function<MediaType, C> derive) {
+        // MediaType.getParameters returns an unmodifiable map, so it is safe as a key
+        return (C) cached(configs, mediaType.getParameters(), p -> derive.apply(mediaType));
+    }
+
+    /**
+     * The value cached for the key, or else the computed one, kept only while the cache holds fewer
+     * than {@value #MAX_CACHED_CONFIGS} entries. For caches whose keys come from callers or data.
+     */
+    protected static <K, V> V cached(Map<K, V> cache, K key, Function<? super K, ? extends V> compute) {
+        @Nullable V value = cache.get(key);
+        if (value != null) {
+            return value;
+        }
+
+        value = compute.apply(key);
+        if (cache.size() < MAX_CACHED_CONFIGS) {
+            @Nullable V raced = cache.putIfAbsent(key, value);
+            if (raced != null) return raced;
+        }
+        return value;
+    }
+
     /**
      * Message for content this plugin cannot read. The previous text -- "Unsupported document
      * content class, use the test method canRead before invoking read" -- named neither the
@@ -126,7 +169,8 @@ public abstract class BasePlugin implements DataFormatPlugin {
                 // if it's not known params q or charset, or a general prefix, and it's not supported param, we fail
                 boolean matched = false;
                 for (String supportedParam : supported) {
-                    if (param.matches(supportedParam)) {
+                    if (param.equals(supportedParam) ||
+                            PARAM_PATTERNS.computeIfAbsent(supportedParam, Pattern::compile).matcher(param).matches()) {
                         matched = true;
                         break;
                     }
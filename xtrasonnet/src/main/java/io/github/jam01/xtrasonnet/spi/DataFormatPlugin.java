@@ -17,6 +17,12 @@ import sjsonnet.Materializer$;
 import sjsonnet.Position;
 import sjsonnet.Val;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
 public interface DataFormatPlugin {
 
     /**
@@ -27,10 +33,19 @@ public interface DataFormatPlugin {
         return java.util.Collections.emptyList();
     }
 
+    /**
+     * Whether this plugin reads the document. {@link io.github.jam01.xtrasonnet.DataFormatService} keeps
+     * the answer for any other document of the same media type and content class, so it must depend on
+     * those alone.
+     */
     default boolean canRead(Document<?> doc) {
         return false;
     }
 
+    /**
+     * Whether this plugin writes the media type as the class. Kept by
+     * {@link io.github.jam01.xtrasonnet.DataFormatService} like {@link #canRead(Document)}.
+     */
     default boolean canWrite(MediaType mediaType, Class<?> clazz) {
         return false;
     }
@@ -46,4 +61,45 @@ public interface DataFormatPlugin {
     default <T> Document<T> write(Val input, MediaType mediaType, Class<T> targetType, EvalScope ev) throws PluginException {
         return write(Materializer$.MODULE$.apply0(input, JsonNodeVisitor$.MODULE$, ev), mediaType, targetType);
     }
+
+    /**
+     * Writes the input into the given stream, which is flushed but left open. Plugins that can render
+     * as they go override this; by default the output is written whole, as bytes if the plugin can write
+     * those, or else as a String encoded with the media type's charset, UTF-8 if it names none.
+     */
+    default void writeTo(Val input, MediaType mediaType, OutputStream out, EvalScope ev) throws PluginException {
+        try {
+            if (canWrite(mediaType, byte[].class)) {
+                out.write(write(input, mediaType, byte[].class, ev).getContent());
+            } else {
+                out.write(write(input, mediaType, String.class, ev).getContent().getBytes(charsetOf(mediaType)));
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new PluginException("Unable to write " + mediaType, e);
+        }
+    }
+
+    /**
+     * Writes the input into the given writer, which is flushed but left open. Plugins that can render
+     * as they go override this; by default the output is written whole, as a String if the plugin can
+     * write one, or else as bytes decoded with the media type's charset, UTF-8 if it names none.
+     */
+    default void writeTo(Val input, MediaType mediaType, Writer out, EvalScope ev) throws PluginException {
+        try {
+            if (canWrite(mediaType, String.class)) {
+                out.write(write(input, mediaType, String.class, ev).getContent());
+            } else {
+                out.write(new String(write(input, mediaType, byte[].class, ev).getContent(), charsetOf(mediaType)));
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new PluginException("Unable to write " + mediaType, e);
+        }
+    }
+
+    private static Charset charsetOf(MediaType mediaType) {
+        Charset charset = mediaType.getCharset();
+        return charset != null ? charset : StandardCharsets.UTF_8;
+    }
 }
@@ -33,6 +33,20 @@ object ResourcePath {
       Some(StaticResolvedFile(ResourceResolver.asString(p, null)))
     }
   }
+
+  /**
+   * An importer that resolves and reads exactly like [[importer]], and reports the location of every
+   * resource it reads -- so a caller can tell which files a script's imports actually depend on.
+   */
+  def recordingImporter(onRead: java.util.function.Consumer[String]): Importer = new Importer {
+    override def resolve(docBase: Path, importName: String): Option[Path] = importer.resolve(docBase, importName)
+
+    override def read(path: Path, binaryData: Boolean): Option[ResolvedFile] = {
+      val read = importer.read(path, binaryData)
+      onRead.accept(path.asInstanceOf[ResourcePath].path)
+      read
+    }
+  }
 }
 
 /**
@@ -293,6 +293,62 @@ class Transformer(script: String,
                    inputs: java.util.Map[String, Document[_]],
                    output: MediaType,
                    target: Class[T]): Document[T] = exclusively {
+    val effectiveOut = effectiveOutput(output)
+    val result = evaluateResult(payload, inputs, effectiveOut)
+    unwrap(handleException(formats.mandatoryWrite(result, effectiveOut, target, evaluator)))
+  }
+
+  /**
+   * Transforms the payload and renders the result straight into the given stream, rather than into a
+   * Document that holds all of it. The stream is flushed, but left open.
+   *
+   * @return the media type the result was written as, which may have come from the script's header
+   */
+  def transformTo(payload: Document[_],
+                  inputs: java.util.Map[String, Document[_]],
+                  output: MediaType,
+                  sink: java.io.OutputStream): MediaType = exclusively {
+    val effectiveOut = effectiveOutput(output)
+    val result = evaluateResult(payload, inputs, effectiveOut)
+    unwrap(handleException(formats.mandatoryWriteTo(result, effectiveOut, sink, evaluator)))
+    effectiveOut
+  }
+
+  /**
+   * Transforms the payload and renders the result straight into the given writer, rather than into a
+   * Document that holds all of it. The writer is flushed, but left open.
+   *
+   * @return the media type the result was written as, which may have come from the script's header
+   */
+  def transformTo(payload: Document[_],
+                  inputs: java.util.Map[String, Document[_]],
+                  output: MediaType,
+                  sink: java.io.Writer): MediaType = exclusively {
+    val effectiveOut = effectiveOutput(output)
+    val result = evaluateResult(payload, inputs, effectiveOut)
+    unwrap(handleException(formats.mandatoryWriteTo(result, effectiveOut, sink, evaluator)))
+    effectiveOut
+  }
+
+  /**
+   * Transforms the payload and renders the result straight into the given channel, rather than into a
+   * Document that holds all of it. The channel is left open.
+   *
+   * @return the media type the result was written as, which may have come from the script's header
+   */
+  def transformTo(payload: Document[_],
+                  inputs: java.util.Map[String, Document[_]],
+                  output: MediaType,
+                  sink: java.nio.channels.WritableByteChannel): MediaType = {
+    // Channels' stream neither buffers nor closes anything until it is closed itself, which the
+    // plugins never do; their renderers buffer already
+    transformTo(payload, inputs, output, java.nio.channels.Channels.newOutputStream(sink))
+  }
+
+  // evaluates the script against the given inputs, up to the value that is to be written
+  private def evaluateResult(payload: Document[_],
+                             inputs: java.util.Map[String, Document[_]],
+                             effectiveOut: MediaType): Val = {
     val payloadExpr = formats.mandatoryRead(effectiveInput("payload", payload), evaluator.emptyMaterializeFileScopePos)
 
     val fnDefaultArgs = scriptFn.params.defaultExprs.clone()
@@ -321,8 +377,6 @@ class Transformer(script: String,
         scriptFn.evalDefault(expr, vs, es)
     }
 
-    val effectiveOut = effectiveOutput(output)
-
     val result = unwrap(handleException(scriptFn2.apply0(scriptFn.pos)(evaluator, TailstrictModeDisabled)))
 
     // Checked before materializing. sjsonnet has a good message for this ("Couldn't manifest
@@ -338,7 +392,7 @@ class Transformer(script: String,
       case _ =>
     }
 
-    unwrap(handleException(formats.mandatoryWrite(result, effectiveOut, target, evaluator)))
+    result
   }
 
   private def unwrap[T](result: Either[Error, T]): T = result match {
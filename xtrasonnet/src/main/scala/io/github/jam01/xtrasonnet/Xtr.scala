@@ -49,7 +49,7 @@ import io.github.jam01.xtrasonnet.modules.{Arrays, Base64, Crypto, Datetime, Dur
 import io.github.jam01.xtrasonnet.spi.Library
 import io.github.jam01.xtrasonnet.spi.Library.{emptyObj, keyFrom}
 import sjsonnet.functions.FunctionModule
-import sjsonnet.{Eval, Error, EvalScope, Materializer, Position, TailstrictModeDisabled, Val}
+import sjsonnet.{Eval, Error, EvalScope, Lazy, Materializer, Position, TailstrictModeDisabled, Val}
 import ujson.{Bool, Null, Num, Str}
 
 import java.util
@@ -258,7 +258,17 @@ final class Xtr(dataFormats: DataFormatService, header: Header) extends Library
     // TODO: add step param
     builtin("range", "begin", "end") {
       (pos, _, begin: Int, end: Int) =>
-        Val.Arr(pos, (begin to end).map(i => Val.Num(pos, i)).toArray)
+        // straight into the array, rather than through a boxed Range and the IndexedSeq its map builds;
+        // sized in a Long, as end - begin + 1 can be past what an Int holds, and so past any array
+        val size = math.max(0L, end.toLong - begin + 1)
+        if (size > Int.MaxValue - 8) Error.fail("Cannot make a range of %d elements, from %d to %d".format(size, begin, end))
+        val out = new Array[Eval](size.toInt)
+        var i = 0
+        while (i < out.length) {
+          out(i) = Val.Num(pos, begin + i)
+          i = i + 1
+        }
+        Val.Arr(pos, out)
     },
 
     builtin("replace", "str1", "str2", "replacement") {
@@ -538,6 +548,8 @@ final class Xtr(dataFormats: DataFormatService, header: Header) extends Library
   }
 
   // TODO: can we reference std.filter?
+  // Every element is tested up front: a Val.Arr is final and needs its length, which depends on all of
+  // them, so there is no filtered view for a take or a find to stop early in
   private def filter(array: Array[Eval], func: Val.Func, ev: EvalScope): Val.Arr = {
     val pos = func.pos
     val args = func.params.names.length
@@ -567,6 +579,9 @@ final class Xtr(dataFormats: DataFormatService, header: Header) extends Library
     Val.Arr(pos, out.toArray)
   }
 
+  // elements are evaluated when first looked at, as std.map's are, rather than all up front: a map
+  // followed by take, drop, find or any only evaluates the elements those look at. Nothing is fused, a
+  // map of a map still makes an array of thunks for each
   private def map(array: Array[Eval], func: Val.Func, ev: EvalScope): Val.Arr = {
     val pos = func.pos
     val args = func.params.names.length
@@ -575,12 +590,15 @@ final class Xtr(dataFormats: DataFormatService, header: Header) extends Library
     var i = 0
     if (args == 2) { //2 args
       while (i < array.length) {
-        out(i) = func.apply2(array(i), Val.Num(pos, i), pos.noOffset)(ev, TailstrictModeDisabled)
+        val item = array(i)
+        val idx = Val.Num(pos, i)
+        out(i) = new Lazy(() => func.apply2(item, idx, pos.noOffset)(ev, TailstrictModeDisabled))
         i = i + 1
       }
     } else if (args == 1) { // 1 arg
       while (i < array.length) {
-        out(i) = func.apply1(array(i), pos.noOffset)(ev, TailstrictModeDisabled)
+        val item = array(i)
+        out(i) = new Lazy(() => func.apply1(item, pos.noOffset)(ev, TailstrictModeDisabled))
         i = i + 1
       }
     } else {
@@ -630,6 +648,7 @@ final class Xtr(dataFormats: DataFormatService, header: Header) extends Library
     Val.Obj.mk(pos, m.toArray: _*)
   }
 
+  // every element is mapped up front, as with filter, since the result's length depends on them all
   private def flatMap(array: Array[Eval], func: Val.Func, ev: EvalScope): Val = {
     val pos = func.pos
     val args = func.params.names.length
@@ -638,22 +657,12 @@ final class Xtr(dataFormats: DataFormatService, header: Header) extends Library
     var i = 0
     if (args == 2) { // 2 args
       while (i < array.length) {
-        val inner = func.apply2(array(i).value, Val.Num(pos, i), pos.noOffset)(ev, TailstrictModeDisabled).asArr
-        var j = 0
-        while (j < inner.length) {
-          out.append(inner.asLazyArray(j))
-          j = j + 1
-        }
+        out.appendAll(func.apply2(array(i), Val.Num(pos, i), pos.noOffset)(ev, TailstrictModeDisabled).asArr.asLazyArray)
         i = i + 1
       }
     } else if (args == 1) { //  1 arg
       while (i < array.length) {
-        val inner = func.apply1(array(i).value, pos.noOffset)(ev, TailstrictModeDisabled).asArr
-        var j = 0
-        while (j < inner.length) {
-          out.append(inner.asLazyArray(j))
-          j = j + 1
-        }
+        out.appendAll(func.apply1(array(i), pos.noOffset)(ev, TailstrictModeDisabled).asArr.asLazyArray)
         i = i + 1
       }
     } else {
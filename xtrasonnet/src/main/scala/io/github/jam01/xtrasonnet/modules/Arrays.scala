@@ -59,7 +59,10 @@ object Arrays extends AbstractFunctionModule {
 
     builtin("drop", "arr", "num") {
       (pos, _, arr: Val.Arr, num: Int) =>
-        Val.Arr(pos, arr.asLazyArray.drop(num))
+        // elements are carried over as they are, so those of a lazy map that are dropped are never evaluated
+        val from = math.min(math.max(num, 0), arr.length)
+        if (from == 0) arr
+        else Val.Arr(pos, java.util.Arrays.copyOfRange(arr.asLazyArray, from, arr.length))
     },
 
     builtin("dropWhile", "arr", "func") {
@@ -77,10 +80,13 @@ object Arrays extends AbstractFunctionModule {
         val args = func.params.names.length
 
         if (args == 2) {
-          val found = arr.asLazyArray.zipWithIndex
-            .find(item => func.apply2(item._1, Val.Num(pos, item._2), pos.noOffset)(ev, TailstrictModeDisabled).isInstanceOf[Val.True])
-            .map(_._1)
-          if (found.nonEmpty) Val.Arr(pos, Array(found.get))
+          // stops at the first match, with no array of (item, index) pairs made up front
+          val array = arr.asLazyArray
+          var i = 0
+          while (i < array.length && !func.apply2(array(i), Val.Num(pos, i), pos.noOffset)(ev, TailstrictModeDisabled).isInstanceOf[Val.True]) {
+            i = i + 1
+          }
+          if (i < array.length) Val.Arr(pos, Array(array(i)))
           else Val.Arr(pos, Array.empty[Eval])
         } else if (args == 1) {
           val found = arr.asLazyArray.find(func.apply1(_, pos.noOffset)(ev, TailstrictModeDisabled).isInstanceOf[Val.True])
@@ -163,7 +169,10 @@ object Arrays extends AbstractFunctionModule {
 
     builtin("take", "array", "index") {
       (pos, _, array: Val.Arr, index: Int) =>
-        Val.Arr(pos, array.asLazyArray.splitAt(index)._1)
+        // only what is kept is copied, where splitAt copied the rest too
+        val to = math.min(math.max(index, 0), array.length)
+        if (to == array.length) array
+        else Val.Arr(pos, java.util.Arrays.copyOfRange(array.asLazyArray, 0, to))
     },
 
     builtin("takeWhile", "array", "func") {
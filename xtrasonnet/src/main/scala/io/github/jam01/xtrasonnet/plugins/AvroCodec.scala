@@ -0,0 +1,439 @@
+package io.github.jam01.xtrasonnet.plugins
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import org.apache.avro.Schema
+import org.apache.avro.Schema.Type
+import org.apache.avro.io.{Decoder, Encoder}
+import sjsonnet.{EvalScope, Position, Val}
+import upickle.core.Visitor
+
+import java.math.{BigInteger, BigDecimal => JBigDecimal}
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.time.temporal.ChronoUnit
+import java.time.{Instant, LocalDate, LocalDateTime, LocalTime, ZoneOffset}
+import scala.collection.mutable
+
+/**
+ * Reads and writes the Avro binary encoding of a schema's datums, straight between a Decoder or Encoder
+ * and Vals. A schema is compiled once into a tree of readers and writers, one per schema node, that is
+ * shared by every thread; reading or writing a datum then only walks that tree, never the schema.
+ *
+ * Records are read as objects whose field names are the schema's own Strings, the same instances for
+ * every record. Logical types are read as the JSON value a person would write: dates, times and
+ * timestamps as ISO-8601 strings, decimals as numbers. Bytes and fixed are read as arrays of their bytes.
+ */
+final class AvroCodec private(val schema: Schema, val reader: AvroCodec.Reader, val writer: AvroCodec.Writer)
+
+object AvroCodec {
+  /** Compiles the schema; the codec is kept by whoever holds it, this keeps none. */
+  def of(schema: Schema): AvroCodec =
+    new AvroCodec(schema, readerOf(schema, mutable.Map.empty), writerOf(schema, mutable.Map.empty))
+
+  /** Reads one datum of a schema node into a Visitor. */
+  abstract class Reader {
+    def read[T](in: Decoder, f: Visitor[_, T]): T
+  }
+
+  /** Writes one Val as a datum of a schema node. */
+  abstract class Writer {
+    def write(v: Val, out: Encoder, ev: EvalScope): Unit
+  }
+
+  private val dummyPos = new Position(null, 0)
+
+  // records are compiled once each, so that a recursive schema compiles to a cyclic tree
+  private def readerOf(schema: Schema, records: mutable.Map[String, Reader]): Reader = {
+    val logical = logicalNameOf(schema)
+    schema.getType match {
+      case Type.NULL => new Reader {
+        def read[T](in: Decoder, f: Visitor[_, T]): T = {
+          in.readNull()
+          f.visitNull(-1)
+        }
+      }
+      case Type.BOOLEAN => new Reader {
+        def read[T](in: Decoder, f: Visitor[_, T]): T = if (in.readBoolean()) f.visitTrue(-1) else f.visitFalse(-1)
+      }
+      case Type.INT => logical match {
+        case "date" => new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T = f.visitString(LocalDate.ofEpochDay(in.readInt()).toString, -1)
+        }
+        case "time-millis" => new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T = f.visitString(LocalTime.ofNanoOfDay(in.readInt() * 1000000L).toString, -1)
+        }
+        case _ => new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T = f.visitInt32(in.readInt(), -1)
+        }
+      }
+      case Type.LONG => logical match {
+        case "time-micros" => new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T = f.visitString(LocalTime.ofNanoOfDay(in.readLong() * 1000L).toString, -1)
+        }
+        case "timestamp-millis" => new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T = f.visitString(Instant.ofEpochMilli(in.readLong()).toString, -1)
+        }
+        case "timestamp-micros" => new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T = f.visitString(Instant.EPOCH.plus(in.readLong(), ChronoUnit.MICROS).toString, -1)
+        }
+        case "local-timestamp-millis" => new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T =
+            f.visitString(LocalDateTime.ofInstant(Instant.ofEpochMilli(in.readLong()), ZoneOffset.UTC).toString, -1)
+        }
+        case "local-timestamp-micros" => new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T =
+            f.visitString(LocalDateTime.ofInstant(Instant.EPOCH.plus(in.readLong(), ChronoUnit.MICROS), ZoneOffset.UTC).toString, -1)
+        }
+        case _ => new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T = f.visitInt64(in.readLong(), -1)
+        }
+      }
+      case Type.FLOAT => new Reader {
+        def read[T](in: Decoder, f: Visitor[_, T]): T = f.visitFloat32(in.readFloat(), -1)
+      }
+      case Type.DOUBLE => new Reader {
+        def read[T](in: Decoder, f: Visitor[_, T]): T = f.visitFloat64(in.readDouble(), -1)
+      }
+      case Type.STRING => new Reader {
+        def read[T](in: Decoder, f: Visitor[_, T]): T = f.visitString(in.readString(), -1)
+      }
+      case Type.BYTES =>
+        val scale = scaleOf(schema)
+        new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T = visitBytes(bytesOf(in.readBytes(null)), scale, f)
+        }
+      case Type.FIXED =>
+        val size = schema.getFixedSize
+        val scale = scaleOf(schema)
+        new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T = {
+            val bytes = new Array[Byte](size)
+            in.readFixed(bytes, 0, size)
+            visitBytes(bytes, scale, f)
+          }
+        }
+      case Type.ENUM =>
+        val symbols = schema.getEnumSymbols.toArray(new Array[String](0))
+        new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T = f.visitString(symbols(in.readEnum()), -1)
+        }
+      case Type.ARRAY =>
+        val items = readerOf(schema.getElementType, records)
+        new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T = {
+            val arr = f.visitArray(-1, -1)
+            var n = in.readArrayStart()
+            while (n > 0) {
+              var i = 0L
+              while (i < n) {
+                arr.narrow.visitValue(items.read(in, arr.subVisitor), -1)
+                i += 1
+              }
+              n = in.arrayNext()
+            }
+            arr.visitEnd(-1)
+          }
+        }
+      case Type.MAP =>
+        val values = readerOf(schema.getValueType, records)
+        new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T = {
+            val obj = f.visitObject(-1, true, -1)
+            var n = in.readMapStart()
+            while (n > 0) {
+              var i = 0L
+              while (i < n) {
+                obj.visitKeyValue(obj.visitKey(-1).visitString(in.readString(), -1))
+                obj.narrow.visitValue(values.read(in, obj.subVisitor), -1)
+                i += 1
+              }
+              n = in.mapNext()
+            }
+            obj.visitEnd(-1)
+          }
+        }
+      case Type.UNION =>
+        val branches = schema.getTypes.toArray(new Array[Schema](0)).map(readerOf(_, records))
+        new Reader {
+          def read[T](in: Decoder, f: Visitor[_, T]): T = branches(in.readIndex()).read(in, f)
+        }
+      case Type.RECORD =>
+        records.getOrElse(schema.getFullName, {
+          val record = new RecordReader
+          records.put(schema.getFullName, record)
+          val fields = schema.getFields.toArray(new Array[Schema.Field](0))
+          record.names = fields.map(_.name)
+          record.fields = fields.map(field => readerOf(field.schema, records))
+          record
+        })
+    }
+  }
+
+  private final class RecordReader extends Reader {
+    var names: Array[String] = _
+    var fields: Array[Reader] = _
+
+    def read[T](in: Decoder, f: Visitor[_, T]): T = {
+      val obj = f.visitObject(names.length, true, -1)
+      var i = 0
+      while (i < names.length) {
+        obj.visitKeyValue(obj.visitKey(-1).visitString(names(i), -1))
+        obj.narrow.visitValue(fields(i).read(in, obj.subVisitor), -1)
+        i += 1
+      }
+      obj.visitEnd(-1)
+    }
+  }
+
+  private def visitBytes[T](bytes: Array[Byte], scale: Int, f: Visitor[_, T]): T =
+    if (scale < 0) f.visitBinary(bytes, 0, bytes.length, -1)
+    else { // a decimal, as JsonParserTransformer visits a BigDecimal
+      val s = new JBigDecimal(new BigInteger(bytes), scale).toString
+      f.visitFloat64StringParts(s, s.indexOf('.'), s.indexWhere(c => (c | 0x20) == 'e'), -1)
+    }
+
+  private def bytesOf(buffer: ByteBuffer): Array[Byte] =
+    if (buffer.hasArray && buffer.arrayOffset == 0 && buffer.position == 0 && buffer.remaining == buffer.array.length) buffer.array
+    else {
+      val bytes = new Array[Byte](buffer.remaining)
+      buffer.duplicate.get(bytes)
+      bytes
+    }
+
+  private def writerOf(schema: Schema, records: mutable.Map[String, Writer]): Writer = {
+    val logical = logicalNameOf(schema)
+    schema.getType match {
+      case Type.NULL => (v, out, _) => v match {
+        case _: Val.Null => out.writeNull()
+        case _ => mismatch(v, schema)
+      }
+      case Type.BOOLEAN => (v, out, _) => v match {
+        case _: Val.True => out.writeBoolean(true)
+        case _: Val.False => out.writeBoolean(false)
+        case _ => mismatch(v, schema)
+      }
+      case Type.INT => logical match {
+        case "date" => (v, out, _) => out.writeInt(v match {
+          case str: Val.Str => Math.toIntExact(LocalDate.parse(str.str).toEpochDay)
+          case _ => intOf(v, schema)
+        })
+        case "time-millis" => (v, out, _) => out.writeInt(v match {
+          case str: Val.Str => (LocalTime.parse(str.str).toNanoOfDay / 1000000L).toInt
+          case _ => intOf(v, schema)
+        })
+        case _ => (v, out, _) => out.writeInt(intOf(v, schema))
+      }
+      case Type.LONG => logical match {
+        case "time-micros" => (v, out, _) => out.writeLong(v match {
+          case str: Val.Str => LocalTime.parse(str.str).toNanoOfDay / 1000L
+          case _ => longOf(v, schema)
+        })
+        case "timestamp-millis" => (v, out, _) => out.writeLong(v match {
+          case str: Val.Str => Instant.parse(str.str).toEpochMilli
+          case _ => longOf(v, schema)
+        })
+        case "timestamp-micros" => (v, out, _) => out.writeLong(v match {
+          case str: Val.Str => ChronoUnit.MICROS.between(Instant.EPOCH, Instant.parse(str.str))
+          case _ => longOf(v, schema)
+        })
+        case "local-timestamp-millis" => (v, out, _) => out.writeLong(v match {
+          case str: Val.Str => LocalDateTime.parse(str.str).toInstant(ZoneOffset.UTC).toEpochMilli
+          case _ => longOf(v, schema)
+        })
+        case "local-timestamp-micros" => (v, out, _) => out.writeLong(v match {
+          case str: Val.Str => ChronoUnit.MICROS.between(Instant.EPOCH, LocalDateTime.parse(str.str).toInstant(ZoneOffset.UTC))
+          case _ => longOf(v, schema)
+        })
+        case _ => (v, out, _) => out.writeLong(longOf(v, schema))
+      }
+      case Type.FLOAT => (v, out, _) => v match {
+        case num: Val.Num => out.writeFloat(num.asDouble.toFloat)
+        case _ => mismatch(v, schema)
+      }
+      case Type.DOUBLE => (v, out, _) => v match {
+        case num: Val.Num => out.writeDouble(num.asDouble)
+        case _ => mismatch(v, schema)
+      }
+      case Type.STRING => (v, out, _) => v match {
+        case str: Val.Str => out.writeString(str.str)
+        case _ => mismatch(v, schema)
+      }
+      case Type.BYTES =>
+        val scale = scaleOf(schema)
+        (v, out, ev) => out.writeBytes(bytesOf(v, schema, scale, ev))
+      case Type.FIXED =>
+        val scale = scaleOf(schema)
+        val size = schema.getFixedSize
+        (v, out, ev) => {
+          val bytes = bytesOf(v, schema, scale, ev)
+          if (bytes.length == size) out.writeFixed(bytes)
+          else if (scale >= 0 && bytes.length < size) { // a decimal, sign extended to the fixed size
+            val padded = new Array[Byte](size)
+            java.util.Arrays.fill(padded, 0, size - bytes.length, if (bytes(0) < 0) -1.toByte else 0.toByte)
+            System.arraycopy(bytes, 0, padded, size - bytes.length, bytes.length)
+            out.writeFixed(padded)
+          } else throw new IllegalArgumentException(
+            "Cannot write %d bytes as Avro fixed %s of %d".format(bytes.length, schema.getFullName, size))
+        }
+      case Type.ENUM => (v, out, _) => v match {
+        case str: Val.Str if schema.hasEnumSymbol(str.str) => out.writeEnum(schema.getEnumOrdinal(str.str))
+        case _ => mismatch(v, schema)
+      }
+      case Type.ARRAY =>
+        val items = writerOf(schema.getElementType, records)
+        (v, out, ev) => v match {
+          case arr: Val.Arr =>
+            out.writeArrayStart()
+            out.setItemCount(arr.length)
+            var i = 0
+            while (i < arr.length) {
+              out.startItem()
+              items.write(arr.value(i), out, ev)
+              i += 1
+            }
+            out.writeArrayEnd()
+          case _ => mismatch(v, schema)
+        }
+      case Type.MAP =>
+        val values = writerOf(schema.getValueType, records)
+        (v, out, ev) => v match {
+          case obj: Val.Obj =>
+            val keys = obj.visibleKeyNames
+            out.writeMapStart()
+            out.setItemCount(keys.length)
+            keys.foreach { key =>
+              out.startItem()
+              out.writeString(key)
+              values.write(obj.value(key, dummyPos)(ev), out, ev)
+            }
+            out.writeMapEnd()
+          case _ => mismatch(v, schema)
+        }
+      case Type.UNION =>
+        val types = schema.getTypes.toArray(new Array[Schema](0))
+        val branches = types.map(writerOf(_, records))
+        (v, out, ev) => {
+          val i = branchOf(types, v)
+          if (i < 0) mismatch(v, schema)
+          out.writeIndex(i)
+          branches(i).write(v, out, ev)
+        }
+      case Type.RECORD =>
+        records.getOrElse(schema.getFullName, {
+          val record = new RecordWriter(schema)
+          records.put(schema.getFullName, record)
+          val fields = schema.getFields.toArray(new Array[Schema.Field](0))
+          record.names = fields.map(_.name)
+          record.fields = fields.map(field => writerOf(field.schema, records))
+          record.nullable = fields.map(field => accepts(field.schema, Val.Null(dummyPos)))
+          record
+        })
+    }
+  }
+
+  private final class RecordWriter(schema: Schema) extends Writer {
+    var names: Array[String] = _
+    var fields: Array[Writer] = _
+    var nullable: Array[Boolean] = _
+
+    def write(v: Val, out: Encoder, ev: EvalScope): Unit = v match {
+      case obj: Val.Obj =>
+        var i = 0
+        while (i < names.length) {
+          // only the schema's fields are forced; one left out is written as null, where it can be
+          if (obj.containsVisibleKey(names(i))) fields(i).write(obj.value(names(i), dummyPos)(ev), out, ev)
+          else if (nullable(i)) fields(i).write(Val.Null(dummyPos), out, ev)
+          else throw new IllegalArgumentException("Missing field '%s' of Avro record %s".format(names(i), schema.getFullName))
+          i += 1
+        }
+      case _ => mismatch(v, schema)
+    }
+  }
+
+  // Which branch of a union a value is written as: the first of a type that can hold it. An object may
+  // be held by several records, each having its required fields; the first of those with a field for each
+  // of its keys is taken, so a union of records writes each object as the record it was meant to be.
+  private def branchOf(types: Array[Schema], v: Val): Int = {
+    val first = types.indexWhere(accepts(_, v))
+    v match {
+      case obj: Val.Obj if first >= 0 && types(first).getType == Type.RECORD =>
+        val keys = obj.visibleKeyNames
+        var i = first
+        while (i < types.length) {
+          val t = types(i)
+          if (t.getType == Type.RECORD && accepts(t, v) && keys.forall(t.getField(_) != null)) return i
+          i += 1
+        }
+        first
+      case _ => first
+    }
+  }
+
+  // whether a value can be written as a schema: a record needs each field that cannot be left out as null
+  private def accepts(schema: Schema, v: Val): Boolean = (schema.getType, v) match {
+    case (Type.NULL, _: Val.Null) => true
+    case (Type.UNION, _) => schema.getTypes.stream.anyMatch(accepts(_, v))
+    case (Type.BOOLEAN, _: Val.Bool) => true
+    case (Type.INT, num: Val.Num) => num.asDouble == num.asDouble.toInt
+    case (Type.LONG, num: Val.Num) => num.asDouble == num.asDouble.toLong
+    case (Type.FLOAT | Type.DOUBLE, _: Val.Num) => true
+    case (Type.INT | Type.LONG, _: Val.Str) => logicalNameOf(schema) != null
+    case (Type.STRING, _: Val.Str) => true
+    case (Type.ENUM, str: Val.Str) => schema.hasEnumSymbol(str.str)
+    case (Type.BYTES | Type.FIXED, _: Val.Arr) => true
+    case (Type.BYTES | Type.FIXED, _: Val.Num) => scaleOf(schema) >= 0
+    case (Type.ARRAY, _: Val.Arr) => true
+    case (Type.MAP, _: Val.Obj) => true
+    case (Type.RECORD, obj: Val.Obj) =>
+      schema.getFields.stream.allMatch(f => obj.containsVisibleKey(f.name) || accepts(f.schema, Val.Null(dummyPos)))
+    case _ => false
+  }
+
+  private def intOf(v: Val, schema: Schema): Int = v match {
+    case num: Val.Num if num.asDouble == num.asDouble.toInt => num.asDouble.toInt
+    case _ => mismatch(v, schema)
+  }
+
+  private def longOf(v: Val, schema: Schema): Long = v match {
+    case num: Val.Num if num.asDouble == num.asDouble.toLong => num.asDouble.toLong
+    case _ => mismatch(v, schema)
+  }
+
+  // bytes as they are read: an array of numbers, or a number for a decimal; a string as its UTF-8
+  private def bytesOf(v: Val, schema: Schema, scale: Int, ev: EvalScope): Array[Byte] = v match {
+    case num: Val.Num if scale >= 0 =>
+      JBigDecimal.valueOf(num.asDouble).setScale(scale, java.math.RoundingMode.HALF_EVEN).unscaledValue.toByteArray
+    case arr: Val.Arr =>
+      val bytes = new Array[Byte](arr.length)
+      var i = 0
+      while (i < bytes.length) {
+        bytes(i) = arr.value(i) match {
+          case num: Val.Num => num.asDouble.toByte
+          case other => mismatch(other, schema)
+        }
+        i += 1
+      }
+      bytes
+    case str: Val.Str => str.str.getBytes(StandardCharsets.UTF_8)
+    case _ => mismatch(v, schema)
+  }
+
+  private def logicalNameOf(schema: Schema): String =
+    if (schema.getLogicalType == null) null else schema.getLogicalType.getName
+
+  private def scaleOf(schema: Schema): Int = schema.getLogicalType match {
+    case decimal: org.apache.avro.LogicalTypes.Decimal => decimal.getScale
+    case _ => -1
+  }
+
+  private def mismatch(v: Val, schema: Schema): Nothing =
+    throw new IllegalArgumentException("Cannot write %s as Avro %s".format(v.prettyName,
+      if (schema.getType == Type.RECORD || schema.getType == Type.ENUM || schema.getType == Type.FIXED) schema.getFullName
+      else schema.getType.getName))
+}
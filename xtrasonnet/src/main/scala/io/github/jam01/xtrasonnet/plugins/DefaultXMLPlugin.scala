@@ -9,7 +9,7 @@ package io.github.jam01.xtrasonnet.plugins
 
 import io.github.jam01.xtrasonnet.document.Document.BasicDocument
 import io.github.jam01.xtrasonnet.document.{Document, MediaType, MediaTypes}
-import io.github.jam01.xtrasonnet.plugins.xml.XML
+import io.github.jam01.xtrasonnet.plugins.xml.{XML, XMLRecords}
 import io.github.jam01.xtrasonnet.spi.{BasePlugin, PluginException}
 import org.xml.sax.SAXParseException
 import sjsonnet.{EvalScope, Position, Val}
@@ -18,6 +18,7 @@ import java.io.*
 import java.net.URL
 import java.nio.charset.{Charset, StandardCharsets}
 import java.util.Collections
+import javax.xml.stream.XMLStreamException
 import scala.jdk.CollectionConverters.MapHasAsScala
 
 // See: http://wiki.open311.org/JSON_and_XML_Conversion/#the-badgerfish-convention
@@ -65,6 +66,7 @@ object DefaultXMLPlugin extends BasePlugin {
   val PARAM_ARR_ELEMENTS = "arrelements"
   val PARAM_TRIM_TEXT = "trimtext"
   val PARAM_XMLNS_AWARE = "xmlnsaware"
+  val PARAM_RECORD_PATH = "recordpath"
 
   // write only
   val PARAM_XML_VERSION = "xmlversion"
@@ -103,10 +105,12 @@ object DefaultXMLPlugin extends BasePlugin {
   // consumed by BadgerFishHandler; without registering it here parametersAreSupported rejects any
   // media type that sets it, making an implemented feature unreachable
   readerParams.add(PARAM_NAME_FORM)
+  readerParams.add(PARAM_RECORD_PATH)
 
   readerSupportedClasses.add(classOf[String].asInstanceOf[java.lang.Class[_]])
   readerSupportedClasses.add(classOf[java.net.URL].asInstanceOf[java.lang.Class[_]])
   readerSupportedClasses.add(classOf[java.io.File].asInstanceOf[java.lang.Class[_]])
+  readerSupportedClasses.add(classOf[java.nio.file.Path].asInstanceOf[java.lang.Class[_]])
   readerSupportedClasses.add(classOf[java.io.InputStream].asInstanceOf[java.lang.Class[_]])
 
   writerSupportedClasses.add(classOf[String].asInstanceOf[java.lang.Class[_]])
@@ -116,13 +120,15 @@ object DefaultXMLPlugin extends BasePlugin {
   override def read(doc: Document[_], pos: Position): Val.Literal = {
     if (doc.getContent == null) return Val.Null(pos)
 
-    val effectiveParams = EffectiveParams(doc.getMediaType)
+    val effectiveParams = effectiveParamsOf(doc.getMediaType)
+    if (effectiveParams.recordPath.nonEmpty) return readRecords(doc, effectiveParams, pos)
 
     try {
       doc.getContent.getClass match {
         case cls if classOf[String].isAssignableFrom(cls) => XML.loadString(doc.getContent.asInstanceOf[String], effectiveParams)
         case cls if classOf[URL].isAssignableFrom(cls) => XML.load(doc.getContent.asInstanceOf[URL], effectiveParams)
         case cls if classOf[File].isAssignableFrom(cls) => XML.loadFile(doc.getContent.asInstanceOf[File], effectiveParams)
+        case cls if classOf[java.nio.file.Path].isAssignableFrom(cls) => XML.loadFile(doc.getContent.asInstanceOf[java.nio.file.Path], effectiveParams)
         case cls if classOf[InputStream].isAssignableFrom(cls) => XML.load(doc.getContent.asInstanceOf[InputStream], effectiveParams)
         case _ => throw unsupportedReadClass(doc)
       }
@@ -135,17 +141,35 @@ object DefaultXMLPlugin extends BasePlugin {
     }
   }
 
-  @throws[PluginException]
-  override def write[T](input: Val, mediaType: MediaType, targetType: Class[T], ev: EvalScope): Document[T] = {
-    if (!input.isInstanceOf[Val.Obj]) {
-      throw new PluginException("Input for XML writer must be an Object, got " + input.prettyName)
+  // the elements at the record path, one at a time, rather than the whole document as one Object
+  private def readRecords(doc: Document[_], params: EffectiveParams, pos: Position): Val.Literal = {
+    val path = params.recordPath
+    try {
+      doc.getContent match {
+        case string: String => XMLRecords.load(new StringReader(string), path, params, pos)
+        case url: URL =>
+          val is = url.openStream()
+          try XMLRecords.load(is, path, params, pos) finally is.close()
+        case file: File => readRecords(file.toPath, params, pos)
+        case file: java.nio.file.Path => readRecords(file, params, pos)
+        case is: InputStream => XMLRecords.load(is, path, params, pos)
+        case _ => throw unsupportedReadClass(doc)
+      }
+    } catch {
+      // StAX puts the location in the message itself
+      case ex: XMLStreamException => throw new PluginException("Could not read XML: " + ex.getMessage, ex)
     }
+  }
 
-    val effectiveParams = EffectiveParams(mediaType)
-    val inputAsObj: Val.Obj = input.asObj
-    if (inputAsObj.visibleKeyNames.length > 1) {
-      throw new PluginException("Object must have only one root element")
-    }
+  private def readRecords(file: java.nio.file.Path, params: EffectiveParams, pos: Position): Val.Literal = {
+    val is = MappedFiles.newInputStream(file)
+    try XMLRecords.load(is, params.recordPath, params, pos) finally is.close()
+  }
+
+  @throws[PluginException]
+  override def write[T](input: Val, mediaType: MediaType, targetType: Class[T], ev: EvalScope): Document[T] = {
+    val inputAsObj = rootObj(input)
+    val effectiveParams = effectiveParamsOf(mediaType)
 
     val name = inputAsObj.visibleKeyNames.head
     if (targetType.isAssignableFrom(classOf[String])) {
@@ -163,7 +187,7 @@ object DefaultXMLPlugin extends BasePlugin {
       // stream must be the ByteArrayOutputStream itself: wrapping it hands back a stream whose
       // bytes the caller has no way to reach
       val out = new ByteArrayOutputStream
-      val writer = new OutputStreamWriter(out, effectiveParams.writeCharset)
+      val writer = new BufferedWriter(new OutputStreamWriter(out, effectiveParams.writeCharset))
       XML.writeXML(writer,
         (name, inputAsObj.value(name, ev.emptyMaterializeFileScopePos)(ev)), effectiveParams,
         effectiveParams.writeCharset)(ev)
@@ -177,6 +201,49 @@ object DefaultXMLPlugin extends BasePlugin {
     }
   }
 
+  @throws[PluginException]
+  override def writeTo(input: Val, mediaType: MediaType, out: OutputStream, ev: EvalScope): Unit = {
+    val inputAsObj = rootObj(input)
+    val effectiveParams = effectiveParamsOf(mediaType)
+
+    val name = inputAsObj.visibleKeyNames.head
+    // flushed rather than closed: the stream is the caller's. Buffered, since the document is written
+    // a few characters at a time, and each write to the encoder has a fixed cost of its own.
+    val writer = new BufferedWriter(new OutputStreamWriter(out, effectiveParams.writeCharset))
+    XML.writeXML(writer, (name, inputAsObj.value(name, ev.emptyMaterializeFileScopePos)(ev)), effectiveParams,
+      effectiveParams.writeCharset)(ev)
+    writer.flush()
+  }
+
+  @throws[PluginException]
+  override def writeTo(input: Val, mediaType: MediaType, out: Writer, ev: EvalScope): Unit = {
+    val inputAsObj = rootObj(input)
+    val effectiveParams = effectiveParamsOf(mediaType)
+
+    val name = inputAsObj.visibleKeyNames.head
+    // the characters' eventual encoding is up to the caller; declare the one requested, if any
+    XML.writeXML(out, (name, inputAsObj.value(name, ev.emptyMaterializeFileScopePos)(ev)), effectiveParams,
+      effectiveParams.writeCharset)(ev)
+    out.flush()
+  }
+
+  // derived once per distinct set of parameters: there are a dozen settings, and a scan of all the
+  // parameters for namespace declarations, behind every read and write
+  private def effectiveParamsOf(mediaType: MediaType): EffectiveParams =
+    configFor(mediaType, (mt: MediaType) => EffectiveParams(mt))
+
+  private def rootObj(input: Val): Val.Obj = {
+    if (!input.isInstanceOf[Val.Obj]) {
+      throw new PluginException("Input for XML writer must be an Object, got " + input.prettyName)
+    }
+
+    val inputAsObj: Val.Obj = input.asObj
+    if (inputAsObj.visibleKeyNames.length > 1) {
+      throw new PluginException("Object must have only one root element")
+    }
+    inputAsObj
+  }
+
   object Mode extends Enumeration {
     val simplified: Mode.Value = Value("simplified")
     val extended: Mode.Value = Value("extended")
@@ -190,6 +257,9 @@ object DefaultXMLPlugin extends BasePlugin {
                              omitDeclaration: Boolean, xmlVer: String,
                              emptyTagsStr: Boolean, emptyTagsNull: Boolean, emptyTagsObj: Boolean,
                              nameform: String, trimText: Boolean,
+                             // the names of the elements to read as records, from the root; empty to
+                             // read the document whole
+                             recordPath: List[String],
                              // None when the media type declared no charset. Writing then defaults to
                              // UTF-8; reading leaves detection to the parser, which honours the
                              // document's own declaration -- forcing an encoding there would override it.
@@ -230,6 +300,8 @@ object DefaultXMLPlugin extends BasePlugin {
       else if (mode == Mode.extended) false
       else true
 
+      val recordPath = mediaType.getParameter(PARAM_RECORD_PATH, "").split('/').filter(_.nonEmpty).toList
+
       new EffectiveParams(mode,
         excludeAttrs, excludeXmlns, includeComments,
         textKey, cdataKey, attrKey, posKey, xmlnsKey,
@@ -237,6 +309,7 @@ object DefaultXMLPlugin extends BasePlugin {
         omitDeclaration, xmlVer,
         emptyTags.contains(EMPTY_TAGS_STRING_VALUE), emptyTags.contains(EMPTY_TAGS_NULL_VALUE), emptyTags.contains(EMPTY_TAGS_OBJECT_VALUE),
         nameForm, trimText,
+        recordPath,
         Option(mediaType.getCharset))
     }
   }
@@ -0,0 +1,135 @@
+package io.github.jam01.xtrasonnet.plugins
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import io.github.jam01.xtrasonnet.plugins.FixedWidthLayout.{Column, Type}
+import sjsonnet.JsonVisitor
+import upickle.core.{ArrVisitor, ObjVisitor, Visitor}
+
+import java.io.Writer
+import java.math.{RoundingMode, BigDecimal => JBigDecimal}
+
+/**
+ * Writes a visit of an Array of objects as fixed-width records of a [[FixedWidthLayout]], each filled in
+ * one buffer as its object is visited and written out when it ends, followed by a newline when
+ * `delimited`. Keys that aren't columns of the layout are left out, and columns without a key, or with a
+ * null, are left blank.
+ *
+ * Strings are left aligned, padded with spaces and cut to fit. Numbers are right aligned and padded with
+ * zeros, a decimal's scale of digits implied rather than written, and are an error when they don't fit.
+ */
+final class FixedWidthVisitor(layout: FixedWidthLayout, out: Writer, delimited: Boolean) extends JsonVisitor[Unit, Unit] {
+  private val record = new Array[Char](layout.length)
+  private var count = 0
+
+  override def visitArray(length: Int, index: Int): ArrVisitor[Unit, Unit] = new ArrVisitor[Unit, Unit] {
+    override def subVisitor: Visitor[_, _] = RecordVisitor
+    override def visitValue(v: Unit, index: Int): Unit = ()
+    override def visitEnd(index: Int): Unit = ()
+  }
+
+  private def what = "an Array of records"
+  override def visitJsonableObject(length: Int, index: Int): ObjVisitor[Unit, Unit] = unexpected("object", what)
+  override def visitNull(index: Int): Unit = unexpected("null", what)
+  override def visitFalse(index: Int): Unit = unexpected("boolean", what)
+  override def visitTrue(index: Int): Unit = unexpected("boolean", what)
+  override def visitString(s: CharSequence, index: Int): Unit = unexpected("string", what)
+  override def visitFloat64StringParts(s: CharSequence, decIndex: Int, expIndex: Int, index: Int): Unit = unexpected("number", what)
+
+  private object RecordVisitor extends JsonVisitor[Unit, Unit] {
+    override def visitJsonableObject(length: Int, index: Int): ObjVisitor[Unit, Unit] = {
+      java.util.Arrays.fill(record, ' ')
+      count += 1
+
+      new ObjVisitor[Unit, Unit] {
+        private var column: Column = _
+        override def visitKey(index: Int): Visitor[_, _] = upickle.core.StringVisitor
+        override def visitKeyValue(v: Any): Unit = {
+          val i = layout.indexOf(v.toString)
+          column = if (i < 0) null else layout.columns()(i)
+        }
+        override def subVisitor: Visitor[_, _] = if (column == null) upickle.core.NoOpVisitor else new ValueVisitor(column)
+        override def visitValue(v: Unit, index: Int): Unit = ()
+        override def visitEnd(index: Int): Unit = {
+          out.write(record)
+          if (delimited) out.write('\n')
+        }
+      }
+    }
+
+    private def what = "an Object for record " + (count + 1)
+    override def visitArray(length: Int, index: Int): ArrVisitor[Unit, Unit] = unexpected("array", what)
+    override def visitNull(index: Int): Unit = unexpected("null", what)
+    override def visitFalse(index: Int): Unit = unexpected("boolean", what)
+    override def visitTrue(index: Int): Unit = unexpected("boolean", what)
+    override def visitString(s: CharSequence, index: Int): Unit = unexpected("string", what)
+    override def visitFloat64StringParts(s: CharSequence, decIndex: Int, expIndex: Int, index: Int): Unit = unexpected("number", what)
+  }
+
+  private final class ValueVisitor(column: Column) extends JsonVisitor[Unit, Unit] {
+    override def visitNull(index: Int): Unit = ()
+
+    override def visitString(s: CharSequence, index: Int): Unit =
+      if (column.`type` != Type.STRING) unexpected("string", expected)
+      else {
+        val n = math.min(s.length, column.length)
+        var i = 0
+        while (i < n) {
+          record(column.offset + i) = s.charAt(i)
+          i += 1
+        }
+      }
+
+    override def visitFloat64(d: Double, index: Int): Unit = column.`type` match {
+      case Type.INTEGER if d == d.toLong => number(d.toLong.toString)
+      case Type.DECIMAL =>
+        number(JBigDecimal.valueOf(d).setScale(column.scale, RoundingMode.HALF_EVEN).unscaledValue.toString)
+      case _ => unexpected("number " + d, expected)
+    }
+
+    override def visitInt64(i: Long, index: Int): Unit = column.`type` match {
+      case Type.INTEGER => number(i.toString)
+      case Type.DECIMAL => number(JBigDecimal.valueOf(i).movePointRight(column.scale).toBigInteger.toString)
+      case _ => unexpected("number", expected)
+    }
+
+    override def visitFloat64StringParts(s: CharSequence, decIndex: Int, expIndex: Int, index: Int): Unit =
+      visitFloat64(s.toString.toDouble, index)
+
+    // right aligned, zero padded, and the sign ahead of the zeros
+    private def number(text: String): Unit = {
+      val negative = text.charAt(0) == '-'
+      val digits = if (negative) text.length - 1 else text.length
+      val width = if (negative) column.length - 1 else column.length
+      if (digits > width) throw new IllegalArgumentException("Cannot write %s in column %s of %d characters, for record %d"
+        .format(text, column.name, column.length, count))
+
+      var at = column.offset
+      if (negative) {
+        record(at) = '-'
+        at += 1
+      }
+      var i = 0
+      while (i < width - digits) {
+        record(at) = '0'
+        at += 1
+        i += 1
+      }
+      text.getChars(if (negative) 1 else 0, text.length, record, at)
+    }
+
+    private def expected = column.`type`.name.toLowerCase + " column " + column.name + " of record " + count
+    override def visitFalse(index: Int): Unit = unexpected("boolean", expected)
+    override def visitTrue(index: Int): Unit = unexpected("boolean", expected)
+    override def visitJsonableObject(length: Int, index: Int): ObjVisitor[Unit, Unit] = unexpected("object", expected)
+    override def visitArray(length: Int, index: Int): ArrVisitor[Unit, Unit] = unexpected("array", expected)
+  }
+
+  private def unexpected(found: String, expected: String): Nothing =
+    throw new IllegalArgumentException("Cannot write fixed-width records from a %s, expected %s".format(found, expected))
+}
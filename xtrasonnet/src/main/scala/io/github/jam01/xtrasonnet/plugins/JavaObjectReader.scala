@@ -0,0 +1,161 @@
+package io.github.jam01.xtrasonnet.plugins
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.fasterxml.jackson.annotation.{JsonFilter, JsonInclude}
+import com.fasterxml.jackson.databind.ser.{BeanPropertyWriter, BeanSerializer}
+import com.fasterxml.jackson.databind.{BeanDescription, JsonNode, ObjectMapper, SerializationFeature}
+import upickle.core.Visitor
+
+import java.util.concurrent.ConcurrentHashMap
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * Walks a Java object graph straight into a Visitor, rather than through a Jackson tree that is then
+ * walked a second time by [[JsonNodeVisitor]].
+ *
+ * The output is meant to be exactly what `mapper.valueToTree` would have given, so only what Jackson
+ * itself would write plainly is walked here: JDK scalars, maps with simple keys and collections, arrays,
+ * and records or beans whose serializer is a plain `BeanSerializer`. Their properties come from that
+ * serializer, so naming, ordering and `@JsonIgnore` are Jackson's, and are cached per class. Anything
+ * with a custom serializer, type info, a filter, an any-getter, null suppression or views -- and every
+ * other JDK type, dates included -- is handed to the mapper, for that value only.
+ *
+ * One per mapper: the decisions cached here depend on how it is configured.
+ */
+final class JavaObjectReader(mapper: ObjectMapper) {
+  // a map is walked as is only if the mapper would not reorder or filter its entries
+  private val plainMaps: Boolean = !mapper.isEnabled(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS) && {
+    val content = mapper.getSerializationConfig.getDefaultPropertyInclusion(classOf[java.util.Map[_, _]]).getContentInclusion
+    content == JsonInclude.Include.ALWAYS || content == JsonInclude.Include.USE_DEFAULTS
+  }
+
+  // None once a class is known to need the mapper; ConcurrentHashMap cannot hold a null for that
+  private val beans = new ConcurrentHashMap[Class[_], Option[Array[BeanPropertyWriter]]]()
+
+  def transform[T](value: Any, f: Visitor[_, T]): T = value match {
+    case null => f.visitNull(-1)
+    case s: String => f.visitString(s, -1)
+    case b: java.lang.Boolean => if (b.booleanValue()) f.visitTrue(-1) else f.visitFalse(-1)
+    case i: java.lang.Integer => f.visitInt32(i.intValue(), -1)
+    case l: java.lang.Long => f.visitInt64(l.longValue(), -1)
+    case s: java.lang.Short => f.visitInt32(s.intValue(), -1)
+    case b: java.lang.Byte => f.visitInt32(b.intValue(), -1)
+    case d: java.lang.Double => f.visitFloat64(d.doubleValue(), -1)
+    case fl: java.lang.Float => f.visitFloat32(fl.floatValue(), -1)
+    case bi: java.math.BigInteger => f.visitFloat64StringParts(bi.toString, -1, -1, -1)
+    case bd: java.math.BigDecimal =>
+      val s = bd.toString
+      f.visitFloat64StringParts(s, s.indexOf('.'), s.indexWhere(c => (c | 0x20) == 'e'), -1)
+    case c: java.lang.Character => f.visitString(c.toString, -1)
+    case m: java.util.Map[_, _] if plainMaps && isJdk(m.getClass) && hasSimpleKeys(m) => visitMap(m, f)
+    case c: java.util.Collection[_] if isJdk(c.getClass) =>
+      val arr = f.visitArray(c.size(), -1)
+      val it = c.iterator()
+      while (it.hasNext) arr.narrow.visitValue(transform(it.next(), arr.subVisitor), -1)
+      arr.visitEnd(-1)
+    case a: Array[AnyRef] =>
+      val arr = f.visitArray(a.length, -1)
+      var i = 0
+      while (i < a.length) {
+        arr.narrow.visitValue(transform(a(i), arr.subVisitor), -1)
+        i += 1
+      }
+      arr.visitEnd(-1)
+    case a: Array[Int] => visitPrimitives(a.length, f)(i => java.lang.Integer.valueOf(a(i)))
+    case a: Array[Long] => visitPrimitives(a.length, f)(i => java.lang.Long.valueOf(a(i)))
+    case a: Array[Double] => visitPrimitives(a.length, f)(i => java.lang.Double.valueOf(a(i)))
+    case a: Array[Float] => visitPrimitives(a.length, f)(i => java.lang.Float.valueOf(a(i)))
+    case a: Array[Short] => visitPrimitives(a.length, f)(i => java.lang.Short.valueOf(a(i)))
+    case a: Array[Boolean] => visitPrimitives(a.length, f)(i => java.lang.Boolean.valueOf(a(i)))
+    // byte[] and char[] are written as strings by Jackson, and fall through to it
+    case obj: AnyRef => writersFor(obj.getClass) match {
+      case Some(writers) => visitBean(obj, writers, f)
+      case None => JsonNodeVisitor.transform(mapper.valueToTree[JsonNode](obj), f)
+    }
+  }
+
+  private def visitMap[T](m: java.util.Map[_, _], f: Visitor[_, T]): T = {
+    val obj = f.visitObject(m.size(), true, -1)
+    val it = m.entrySet().iterator()
+    while (it.hasNext) {
+      val entry = it.next()
+      obj.visitKeyValue(obj.visitKey(-1).visitString(String.valueOf(entry.getKey), -1))
+      obj.narrow.visitValue(transform(entry.getValue, obj.subVisitor), -1)
+    }
+    obj.visitEnd(-1)
+  }
+
+  private def visitBean[T](bean: AnyRef, writers: Array[BeanPropertyWriter], f: Visitor[_, T]): T = {
+    val obj = f.visitObject(writers.length, true, -1)
+    var i = 0
+    while (i < writers.length) {
+      val writer = writers(i)
+      obj.visitKeyValue(obj.visitKey(-1).visitString(writer.getName, -1))
+      obj.narrow.visitValue(transform(writer.get(bean), obj.subVisitor), -1)
+      i += 1
+    }
+    obj.visitEnd(-1)
+  }
+
+  private def visitPrimitives[T](length: Int, f: Visitor[_, T])(boxed: Int => AnyRef): T = {
+    val arr = f.visitArray(length, -1)
+    var i = 0
+    while (i < length) {
+      arr.narrow.visitValue(transform(boxed(i), arr.subVisitor), -1)
+      i += 1
+    }
+    arr.visitEnd(-1)
+  }
+
+  // user subclasses of Map or Collection may carry their own serializer; the JDK's never do
+  private def isJdk(cls: Class[_]): Boolean = {
+    val name = cls.getName
+    name.startsWith("java.") || name.startsWith("javax.")
+  }
+
+  // keys Jackson writes with toString; anything else has a key serializer of its own
+  private def hasSimpleKeys(m: java.util.Map[_, _]): Boolean = {
+    val it = m.keySet().iterator()
+    while (it.hasNext) it.next() match {
+      case _: String | _: java.lang.Number | _: java.lang.Boolean | _: java.lang.Character | _: java.util.UUID =>
+      case _ => return false
+    }
+    true
+  }
+
+  private def writersFor(cls: Class[_]): Option[Array[BeanPropertyWriter]] =
+    beans.computeIfAbsent(cls, c => introspect(c))
+
+  private def introspect(cls: Class[_]): Option[Array[BeanPropertyWriter]] = {
+    if (cls.isAnnotationPresent(classOf[JsonFilter])) return None
+
+    val provider = mapper.getSerializerProviderInstance
+    val tpe = mapper.constructType(cls)
+    if (provider.findTypeSerializer(tpe) != null) return None // polymorphic type info
+
+    provider.findValueSerializer(tpe) match {
+      // exactly BeanSerializer: its subclasses unwrap, or otherwise write differently
+      case ser: BeanSerializer if ser.getClass == classOf[BeanSerializer] && !ser.usesObjectId() =>
+        if (mapper.getSerializationConfig.introspect[BeanDescription](tpe).findAnyGetter() != null) return None
+
+        val writers = new ArrayBuffer[BeanPropertyWriter]()
+        val it = ser.properties()
+        while (it.hasNext) it.next() match {
+          case writer: BeanPropertyWriter if writer.getClass == classOf[BeanPropertyWriter]
+            && !writer.hasSerializer && writer.getTypeSerializer == null
+            && !writer.willSuppressNulls() && writer.getViews == null => writers.addOne(writer)
+          case _ => return None
+        }
+
+        // Jackson fails on a bean with no properties, and should keep doing so
+        if (writers.isEmpty) None else Some(writers.toArray)
+      case _ => None
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package io.github.jam01.xtrasonnet.plugins
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import sjsonnet.JsonVisitor
+import upickle.core.{ArrVisitor, ObjVisitor, Visitor}
+
+import java.math.MathContext
+
+/**
+ * Builds plain Java values -- `LinkedHashMap`, `ArrayList`, `String`, `Boolean`, numbers and `null` --
+ * straight from a visit, with the same number types [[JsonNodeVisitor]] followed by
+ * `BaseJacksonPlugin.objectOfJsonNode` gave, but without the tree in between.
+ */
+object JavaObjectVisitor extends JsonVisitor[Any, AnyRef] {
+  override def visitNull(index: Int): AnyRef = null
+  override def visitFalse(index: Int): AnyRef = java.lang.Boolean.FALSE
+  override def visitTrue(index: Int): AnyRef = java.lang.Boolean.TRUE
+  override def visitString(s: CharSequence, index: Int): AnyRef = s.toString
+  override def visitFloat64(d: Double, index: Int): AnyRef = java.lang.Double.valueOf(d)
+  override def visitInt64(i: Long, index: Int): AnyRef = java.lang.Long.valueOf(i)
+  override def visitFloat64StringParts(s: CharSequence, decIndex: Int, expIndex: Int, index: Int): AnyRef = {
+    if (decIndex == -1 && expIndex == -1) {
+      s.toString.toLongOption match {
+        case Some(l) => java.lang.Long.valueOf(l)
+        case None => new java.math.BigDecimal(s.toString, MathContext.DECIMAL128)
+      }
+    } else {
+      s.toString.toDoubleOption match {
+        case Some(d) if !d.isInfinite => java.lang.Double.valueOf(d)
+        case _ => new java.math.BigDecimal(s.toString, MathContext.DECIMAL128)
+      }
+    }
+  }
+
+  override def visitJsonableObject(length: Int, index: Int): ObjVisitor[Any, AnyRef] = new ObjVisitor[Any, AnyRef] {
+    val map = new java.util.LinkedHashMap[String, AnyRef](if (length < 0) 16 else capacity(length))
+    var key: String = _
+
+    override def visitKey(index: Int): Visitor[_, _] = upickle.core.StringVisitor
+    override def visitKeyValue(v: Any): Unit = key = v.toString
+    override def subVisitor: Visitor[_, _] = JavaObjectVisitor
+    override def visitValue(v: Any, index: Int): Unit = map.put(key, v.asInstanceOf[AnyRef])
+    override def visitEnd(index: Int): AnyRef = map
+  }
+
+  override def visitArray(length: Int, index: Int): ArrVisitor[Any, AnyRef] = new ArrVisitor[Any, AnyRef] {
+    val list = if (length < 0) new java.util.ArrayList[AnyRef]() else new java.util.ArrayList[AnyRef](length)
+
+    override def subVisitor: Visitor[_, _] = JavaObjectVisitor
+    override def visitValue(v: Any, index: Int): Unit = list.add(v.asInstanceOf[AnyRef])
+    override def visitEnd(index: Int): AnyRef = list
+  }
+
+  // sized so that length entries fit without a rehash at the default load factor
+  private def capacity(length: Int): Int = (length / 0.75f).toInt + 1
+}
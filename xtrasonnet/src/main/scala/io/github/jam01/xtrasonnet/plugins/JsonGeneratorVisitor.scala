@@ -0,0 +1,53 @@
+package io.github.jam01.xtrasonnet.plugins
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.fasterxml.jackson.core.JsonGenerator
+import sjsonnet.JsonVisitor
+import upickle.core.{ArrVisitor, ObjVisitor, Visitor}
+
+/**
+ * Writes a visit as tokens to a Jackson generator as it happens, so a value can be handed to any Jackson
+ * backend -- a `TokenBuffer` to bind to a type, or a format's own generator -- without building a tree
+ * first. Numbers are written as the same types [[JsonNodeVisitor]] would have held them.
+ */
+final class JsonGeneratorVisitor(gen: JsonGenerator) extends JsonVisitor[Unit, Unit] {
+  override def visitNull(index: Int): Unit = gen.writeNull()
+  override def visitFalse(index: Int): Unit = gen.writeBoolean(false)
+  override def visitTrue(index: Int): Unit = gen.writeBoolean(true)
+  override def visitString(s: CharSequence, index: Int): Unit = gen.writeString(s.toString)
+  override def visitFloat64(d: Double, index: Int): Unit = gen.writeNumber(d)
+  override def visitInt64(i: Long, index: Int): Unit = gen.writeNumber(i)
+  override def visitFloat64StringParts(s: CharSequence, decIndex: Int, expIndex: Int, index: Int): Unit =
+    JavaObjectVisitor.visitFloat64StringParts(s, decIndex, expIndex, index) match {
+      case l: java.lang.Long => gen.writeNumber(l.longValue())
+      case d: java.lang.Double => gen.writeNumber(d.doubleValue())
+      case bd: java.math.BigDecimal => gen.writeNumber(bd)
+      case other => throw new IllegalStateException("Unexpected number " + other)
+    }
+
+  override def visitJsonableObject(length: Int, index: Int): ObjVisitor[Unit, Unit] = {
+    gen.writeStartObject()
+    new ObjVisitor[Unit, Unit] {
+      override def visitKey(index: Int): Visitor[_, _] = upickle.core.StringVisitor
+      override def visitKeyValue(v: Any): Unit = gen.writeFieldName(v.toString)
+      override def subVisitor: Visitor[_, _] = JsonGeneratorVisitor.this
+      override def visitValue(v: Unit, index: Int): Unit = ()
+      override def visitEnd(index: Int): Unit = gen.writeEndObject()
+    }
+  }
+
+  override def visitArray(length: Int, index: Int): ArrVisitor[Unit, Unit] = {
+    if (length < 0) gen.writeStartArray() else gen.writeStartArray(null, length)
+    new ArrVisitor[Unit, Unit] {
+      override def subVisitor: Visitor[_, _] = JsonGeneratorVisitor.this
+      override def visitValue(v: Unit, index: Int): Unit = ()
+      override def visitEnd(index: Int): Unit = gen.writeEndArray()
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package io.github.jam01.xtrasonnet.plugins
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import io.github.jam01.xtrasonnet.spi.PluginException
+import sjsonnet.{Lazy, Position, Val}
+import ujson.{ByteBufferParser, CharSequenceParser}
+
+import java.nio.ByteBuffer
+
+/**
+ * Reads newline-delimited JSON as an Array whose elements are parsed on demand. Reading only finds where
+ * each line begins and ends; a line is parsed the first time its element is looked at, and then kept, so
+ * an element that is never looked at is never parsed and one that errs only does so if it is.
+ *
+ * Blank lines, and lines of whitespace only, are not elements. A line may end with `\r\n`.
+ */
+object JsonLines {
+  /** Reads the lines of the buffer, from its position to its limit, which are read but never moved. */
+  def read(buffer: ByteBuffer, pos: Position): Val.Arr = {
+    val lines = new LineIndex('\n'.toByte, skipBlank = true, from = buffer.position())
+    var i = buffer.position()
+    val end = buffer.limit()
+    while (i < end) {
+      lines.next(buffer.get(i), i)
+      i += 1
+    }
+    lines.end(end)
+
+    Val.Arr(pos, lines.toArray((from, to, line) => new Lazy(() =>
+      try ByteBufferParser.transform(buffer.slice(from, to - from), new LiteralVisitor(pos))
+      catch { case e: Exception => throw failed(line, e) })))
+  }
+
+  /** Reads the lines of the characters. */
+  def read(chars: CharSequence, pos: Position): Val.Arr = {
+    val lines = new LineIndex('\n'.toByte, skipBlank = true)
+    var i = 0
+    val end = chars.length
+    while (i < end) {
+      val c = chars.charAt(i)
+      lines.next(if (c < 0x80) c.toByte else 'x'.toByte, i) // only the ASCII of newlines and whitespace matters
+      i += 1
+    }
+    lines.end(end)
+
+    Val.Arr(pos, lines.toArray((from, to, line) => new Lazy(() =>
+      try CharSequenceParser.transform(chars.subSequence(from, to), new LiteralVisitor(pos))
+      catch { case e: Exception => throw failed(line, e) })))
+  }
+
+  private def failed(line: Int, e: Exception) = new PluginException("Unable to read NDJSON line " + line, e)
+}
@@ -0,0 +1,69 @@
+package io.github.jam01.xtrasonnet.plugins
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.fasterxml.jackson.core.{JsonParser, JsonToken}
+import upickle.core.Visitor
+
+/**
+ * Drives a Visitor straight from a Jackson token stream, so any Jackson-backed format can be read
+ * without first building the `JsonNode` tree that [[JsonNodeVisitor]] would walk. Values are visited as
+ * the same types that walk would have visited them as.
+ *
+ * Field names are passed on as the parser hands them out. Jackson's parsers canonicalize them, and the
+ * CSV parser hands out its schema's column names, so a name repeated on every row or record is the same
+ * String every time rather than a copy per occurrence.
+ */
+object JsonParserTransformer {
+
+  /**
+   * Visits the value at the parser's current token, advancing to the first one if it has not been yet.
+   * An empty input is visited as an empty array. The parser is left on the value's last token.
+   */
+  def transform[T](p: JsonParser, f: Visitor[_, T]): T = {
+    if (!p.hasCurrentToken && p.nextToken() == null) f.visitArray(0, -1).visitEnd(-1)
+    else visitValue(p, f)
+  }
+
+  private def visitValue[T](p: JsonParser, f: Visitor[_, T]): T = p.currentToken() match {
+    case JsonToken.VALUE_NULL => f.visitNull(-1)
+    case JsonToken.VALUE_TRUE => f.visitTrue(-1)
+    case JsonToken.VALUE_FALSE => f.visitFalse(-1)
+    case JsonToken.VALUE_STRING => f.visitString(p.getText, -1)
+    case JsonToken.VALUE_NUMBER_INT | JsonToken.VALUE_NUMBER_FLOAT => p.getNumberType match {
+      case JsonParser.NumberType.INT => f.visitInt32(p.getIntValue, -1)
+      case JsonParser.NumberType.LONG => f.visitInt64(p.getLongValue, -1)
+      case JsonParser.NumberType.BIG_INTEGER => f.visitFloat64StringParts(p.getBigIntegerValue.toString, -1, -1, -1)
+      case JsonParser.NumberType.FLOAT => f.visitFloat32(p.getFloatValue, -1)
+      case JsonParser.NumberType.DOUBLE => f.visitFloat64(p.getDoubleValue, -1)
+      case JsonParser.NumberType.BIG_DECIMAL =>
+        val s = p.getDecimalValue.toString
+        f.visitFloat64StringParts(s, s.indexOf('.'), s.indexWhere(c => (c | 0x20) == 'e'), -1)
+    }
+    case JsonToken.VALUE_EMBEDDED_OBJECT => p.getEmbeddedObject match {
+      case null => f.visitNull(-1)
+      case bytes: Array[Byte] => f.visitBinary(bytes, 0, bytes.length, -1)
+      case other => f.visitString(other.toString, -1)
+    }
+    case JsonToken.START_ARRAY =>
+      val arr = f.visitArray(-1, -1)
+      while (p.nextToken() != JsonToken.END_ARRAY) {
+        arr.narrow.visitValue(visitValue(p, arr.subVisitor), -1)
+      }
+      arr.visitEnd(-1)
+    case JsonToken.START_OBJECT =>
+      val obj = f.visitObject(-1, true, -1)
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        obj.visitKeyValue(obj.visitKey(-1).visitString(p.currentName(), -1))
+        p.nextToken()
+        obj.narrow.visitValue(visitValue(p, obj.subVisitor), -1)
+      }
+      obj.visitEnd(-1)
+    case token => throw new IllegalStateException("Unexpected token " + token + " at " + p.currentLocation())
+  }
+}
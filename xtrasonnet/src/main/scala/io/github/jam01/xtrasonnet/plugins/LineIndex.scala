@@ -0,0 +1,60 @@
+package io.github.jam01.xtrasonnet.plugins
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import sjsonnet.Eval
+
+/**
+ * Where each line of some text begins and ends, found in one pass over its bytes or characters and kept
+ * as three ints a line: its start, its end before the newline, and its number. Used to make an Array of
+ * lines whose elements each take only their own line apart, and only when they are looked at.
+ *
+ * The text is fed one unit at a time to [[next]], and ended with [[end]]. A last line without a newline
+ * is a line; the nothing after a last newline is not.
+ *
+ * @param newline   the unit that ends a line, e.g. `'\n'`, or 0x15 in EBCDIC
+ * @param skipBlank whether lines of nothing but whitespace are left out
+ * @param from      where the text begins
+ */
+private[plugins] final class LineIndex(newline: Byte, skipBlank: Boolean, from: Int = 0) {
+  private var bounds = new Array[Int](64 * 3)
+  private var size = 0
+
+  private var line = 1
+  private var start = from
+  private var blank = true
+
+  def next(b: Byte, i: Int): Unit =
+    if (b == newline) {
+      add(i)
+      line += 1
+      start = i + 1
+      blank = true
+    } else if (blank && b != ' ' && b != '\t' && b != '\r') blank = false
+
+  def end(i: Int): Unit = if (i > start) add(i)
+
+  private def add(i: Int): Unit = if (!(skipBlank && blank)) {
+    if (size == bounds.length) bounds = java.util.Arrays.copyOf(bounds, size * 2)
+    bounds(size) = start
+    bounds(size + 1) = i
+    bounds(size + 2) = line
+    size += 3
+  }
+
+  /** The elements for each line, made from its start, its end and its number. */
+  def toArray(f: (Int, Int, Int) => Eval): Array[Eval] = {
+    val out = new Array[Eval](size / 3)
+    var i = 0
+    while (i < out.length) {
+      out(i) = f(bounds(i * 3), bounds(i * 3 + 1), bounds(i * 3 + 2))
+      i += 1
+    }
+    out
+  }
+}
@@ -0,0 +1,81 @@
+package io.github.jam01.xtrasonnet.plugins
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import org.msgpack.core.{MessageFormat, MessageUnpacker}
+import org.msgpack.value.ValueType
+import upickle.core.Visitor
+
+/**
+ * Drives a Visitor straight from a MessagePack unpacker, as [[JsonParserTransformer]] does from a Jackson
+ * parser. Values are visited as the same types that would have been visited reading their JSON
+ * equivalent; binaries are visited as such, and timestamps as ISO-8601 strings.
+ *
+ * Strings and binaries are decoded from the unpacker's own buffer, which for a ByteBuffer input is the
+ * caller's buffer itself, direct or not.
+ */
+object MessagePackTransformer {
+  private val TimestampType: Byte = -1
+
+  /** Visits the next value of the unpacker. An empty input is visited as an empty array. */
+  def transform[T](u: MessageUnpacker, f: Visitor[_, T]): T =
+    if (!u.hasNext) f.visitArray(0, -1).visitEnd(-1)
+    else visitValue(u, f)
+
+  private def visitValue[T](u: MessageUnpacker, f: Visitor[_, T]): T = {
+    val format = u.getNextFormat
+    format.getValueType match {
+      case ValueType.NIL =>
+        u.unpackNil()
+        f.visitNull(-1)
+      case ValueType.BOOLEAN => if (u.unpackBoolean()) f.visitTrue(-1) else f.visitFalse(-1)
+      case ValueType.INTEGER =>
+        if (format == MessageFormat.UINT64) { // the one integer format that may not fit a long
+          val big = u.unpackBigInteger()
+          if (big.bitLength < 64) f.visitInt64(big.longValue, -1)
+          else f.visitFloat64StringParts(big.toString, -1, -1, -1)
+        } else f.visitInt64(u.unpackLong(), -1)
+      case ValueType.FLOAT => f.visitFloat64(u.unpackDouble(), -1)
+      case ValueType.STRING => f.visitString(u.unpackString(), -1)
+      case ValueType.BINARY =>
+        val bytes = u.readPayload(u.unpackBinaryHeader())
+        f.visitBinary(bytes, 0, bytes.length, -1)
+      case ValueType.ARRAY =>
+        val length = u.unpackArrayHeader()
+        val arr = f.visitArray(length, -1)
+        var i = 0
+        while (i < length) {
+          arr.narrow.visitValue(visitValue(u, arr.subVisitor), -1)
+          i += 1
+        }
+        arr.visitEnd(-1)
+      case ValueType.MAP =>
+        val length = u.unpackMapHeader()
+        val obj = f.visitObject(length, true, -1)
+        var i = 0
+        while (i < length) {
+          obj.visitKeyValue(obj.visitKey(-1).visitString(keyOf(u), -1))
+          obj.narrow.visitValue(visitValue(u, obj.subVisitor), -1)
+          i += 1
+        }
+        obj.visitEnd(-1)
+      case ValueType.EXTENSION =>
+        val header = u.unpackExtensionTypeHeader()
+        if (header.getType == TimestampType) f.visitString(u.unpackTimestamp(header).toString, -1)
+        else {
+          val bytes = u.readPayload(header.getLength)
+          f.visitBinary(bytes, 0, bytes.length, -1)
+        }
+    }
+  }
+
+  // keys are strings in practice; any other is keyed by its JSON form, as other MessagePack tools do
+  private def keyOf(u: MessageUnpacker): String =
+    if (u.getNextFormat.getValueType == ValueType.STRING) u.unpackString()
+    else u.unpackValue().toJson
+}
@@ -0,0 +1,98 @@
+package io.github.jam01.xtrasonnet.plugins
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import org.msgpack.core.{MessageBufferPacker, MessagePack, MessagePacker}
+import sjsonnet.JsonVisitor
+import upickle.core.{ArrVisitor, ObjVisitor, Visitor}
+
+/**
+ * Writes a visit to a MessagePack packer as it happens, as [[JsonGeneratorVisitor]] does to a Jackson
+ * generator. Integral numbers are packed as integers, in the smallest format that holds them, and any
+ * other as doubles.
+ *
+ * MessagePack heads arrays and maps with their size. Objects and arrays visited with theirs are written
+ * straight through; one visited without is written to a buffer until its size is known.
+ */
+final class MessagePackVisitor(packer: MessagePacker) extends JsonVisitor[Unit, Unit] {
+  import MessagePackVisitor.MaxExactLong
+
+  override def visitNull(index: Int): Unit = packer.packNil()
+  override def visitFalse(index: Int): Unit = packer.packBoolean(false)
+  override def visitTrue(index: Int): Unit = packer.packBoolean(true)
+  override def visitString(s: CharSequence, index: Int): Unit = packer.packString(s.toString)
+  override def visitInt64(i: Long, index: Int): Unit = packer.packLong(i)
+
+  override def visitFloat64(d: Double, index: Int): Unit =
+    if (d == Math.rint(d) && Math.abs(d) <= MaxExactLong) packer.packLong(d.toLong)
+    else packer.packDouble(d)
+
+  override def visitFloat64StringParts(s: CharSequence, decIndex: Int, expIndex: Int, index: Int): Unit =
+    JavaObjectVisitor.visitFloat64StringParts(s, decIndex, expIndex, index) match {
+      case l: java.lang.Long => packer.packLong(l.longValue())
+      case d: java.lang.Double => visitFloat64(d.doubleValue(), index)
+      case bd: java.math.BigDecimal =>
+        // an integer up to 2^64-1 packs as a uint64, anything beyond as the nearest double
+        val big = if (bd.stripTrailingZeros.scale <= 0) bd.toBigInteger else null
+        if (big != null && big.signum >= 0 && big.bitLength <= 64) packer.packBigInteger(big)
+        else packer.packDouble(bd.doubleValue())
+      case other => throw new IllegalStateException("Unexpected number " + other)
+    }
+
+  override def visitJsonableObject(length: Int, index: Int): ObjVisitor[Unit, Unit] = {
+    val buffer = if (length >= 0) { packer.packMapHeader(length); null } else MessagePack.newDefaultBufferPacker()
+    val out = if (buffer == null) packer else buffer
+    val values = if (buffer == null) this else new MessagePackVisitor(buffer)
+
+    new ObjVisitor[Unit, Unit] {
+      private var count = 0
+      override def visitKey(index: Int): Visitor[_, _] = upickle.core.StringVisitor
+      override def visitKeyValue(v: Any): Unit = out.packString(v.toString)
+      override def subVisitor: Visitor[_, _] = values
+      override def visitValue(v: Unit, index: Int): Unit = count += 1
+      override def visitEnd(index: Int): Unit =
+        if (buffer == null) checkSize("object", length, count)
+        else {
+          packer.packMapHeader(count)
+          writeBuffered(buffer)
+        }
+    }
+  }
+
+  override def visitArray(length: Int, index: Int): ArrVisitor[Unit, Unit] = {
+    val buffer = if (length >= 0) { packer.packArrayHeader(length); null } else MessagePack.newDefaultBufferPacker()
+    val values = if (buffer == null) this else new MessagePackVisitor(buffer)
+
+    new ArrVisitor[Unit, Unit] {
+      private var count = 0
+      override def subVisitor: Visitor[_, _] = values
+      override def visitValue(v: Unit, index: Int): Unit = count += 1
+      override def visitEnd(index: Int): Unit =
+        if (buffer == null) checkSize("array", length, count)
+        else {
+          packer.packArrayHeader(count)
+          writeBuffered(buffer)
+        }
+    }
+  }
+
+  private def writeBuffered(buffer: MessageBufferPacker): Unit = {
+    buffer.flush()
+    packer.writePayload(buffer.toByteArray)
+  }
+
+  // the header is already written; a size other than the one visited would leave the output corrupt
+  private def checkSize(what: String, expected: Int, actual: Int): Unit =
+    if (expected != actual) throw new IllegalStateException(
+      "Visited an %s of %d entries as one of %d".format(what, actual, expected))
+}
+
+object MessagePackVisitor {
+  // beyond 2^53 a double no longer holds every integer, so one there is not taken for an exact value
+  private val MaxExactLong = 9007199254740992d
+}
@@ -0,0 +1,289 @@
+package io.github.jam01.xtrasonnet.plugins
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.google.protobuf.Descriptors.{Descriptor, EnumValueDescriptor, FieldDescriptor}
+import com.google.protobuf.{ByteString, CodedInputStream, DynamicMessage, Message, MessageOrBuilder}
+import sjsonnet.{EvalScope, Position, Val}
+import upickle.core.Visitor
+
+import java.math.{BigDecimal => JBigDecimal}
+import java.nio.charset.StandardCharsets
+import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Reads and writes protobuf messages of a descriptor as Vals, through DynamicMessage. Each message type
+ * is looked at once, for the fields it has, the names they are read as and the names they can be
+ * written from, and the codec keeps that for every message of the type that follows, nested or not.
+ *
+ * Messages are read as objects keyed by their fields' JSON names, with only the fields that are set.
+ * 64-bit integers are read as numbers, enums as the names of their values, bytes as arrays of bytes and
+ * map fields as objects. Timestamps and durations are read as ISO-8601 and `1.5s` strings, and the
+ * wrapper types as the value they wrap.
+ */
+final class ProtobufCodec private(val descriptor: Descriptor) {
+  import ProtobufCodec._
+
+  // every message type reachable from the descriptor, each looked at once; no more than its .proto declares
+  private val messages = new ConcurrentHashMap[Descriptor, MessageFields]()
+  private val fields = fieldsOf(descriptor)
+
+  /** Reads one message into a Visitor. */
+  def read[T](in: CodedInputStream, f: Visitor[_, T]): T =
+    visitMessage(DynamicMessage.parseFrom(descriptor, in), fields, f)
+
+  /** Builds one message from a Val. */
+  def write(v: Val, ev: EvalScope): Message = messageOf(v, fields, ev)
+
+  private def fieldsOf(descriptor: Descriptor): MessageFields =
+    messages.computeIfAbsent(descriptor, new MessageFields(_))
+
+  private def visitMessage[T](msg: MessageOrBuilder, mf: MessageFields, f: Visitor[_, T]): T = mf.wellKnown match {
+    case WellKnown.Timestamp =>
+      f.visitString(Instant.ofEpochSecond(longField(msg, mf, 0), longField(msg, mf, 1)).toString, -1)
+    case WellKnown.Duration =>
+      f.visitString(JBigDecimal.valueOf(longField(msg, mf, 0))
+        .add(JBigDecimal.valueOf(longField(msg, mf, 1), 9)).stripTrailingZeros.toPlainString + "s", -1)
+    case WellKnown.Wrapper => visitSingular(msg.getField(mf.fields(0)), mf.fields(0), f)
+    case WellKnown.None =>
+      val obj = f.visitObject(-1, true, -1)
+      var i = 0
+      while (i < mf.fields.length) {
+        val field = mf.fields(i)
+        if (if (field.isRepeated) msg.getRepeatedFieldCount(field) > 0 else msg.hasField(field)) {
+          obj.visitKeyValue(obj.visitKey(-1).visitString(mf.names(i), -1))
+          obj.narrow.visitValue(visitField(msg, field, obj.subVisitor), -1)
+        }
+        i += 1
+      }
+      obj.visitEnd(-1)
+  }
+
+  private def visitField[T](msg: MessageOrBuilder, field: FieldDescriptor, f: Visitor[_, T]): T =
+    if (field.isMapField) {
+      val entry = fieldsOf(field.getMessageType)
+      val count = msg.getRepeatedFieldCount(field)
+      val obj = f.visitObject(count, true, -1)
+      var i = 0
+      while (i < count) {
+        val kv = msg.getRepeatedField(field, i).asInstanceOf[Message]
+        obj.visitKeyValue(obj.visitKey(-1).visitString(String.valueOf(kv.getField(entry.fields(0))), -1))
+        obj.narrow.visitValue(visitSingular(kv.getField(entry.fields(1)), entry.fields(1), obj.subVisitor), -1)
+        i += 1
+      }
+      obj.visitEnd(-1)
+    } else if (field.isRepeated) {
+      val count = msg.getRepeatedFieldCount(field)
+      val arr = f.visitArray(count, -1)
+      var i = 0
+      while (i < count) {
+        arr.narrow.visitValue(visitSingular(msg.getRepeatedField(field, i), field, arr.subVisitor), -1)
+        i += 1
+      }
+      arr.visitEnd(-1)
+    } else visitSingular(msg.getField(field), field, f)
+
+  private def visitSingular[T](value: Any, field: FieldDescriptor, f: Visitor[_, T]): T = field.getType match {
+    case FieldDescriptor.Type.INT32 | FieldDescriptor.Type.SINT32 | FieldDescriptor.Type.SFIXED32 =>
+      f.visitInt32(value.asInstanceOf[Integer], -1)
+    case FieldDescriptor.Type.UINT32 | FieldDescriptor.Type.FIXED32 =>
+      f.visitInt64(Integer.toUnsignedLong(value.asInstanceOf[Integer]), -1)
+    case FieldDescriptor.Type.INT64 | FieldDescriptor.Type.SINT64 | FieldDescriptor.Type.SFIXED64 =>
+      f.visitInt64(value.asInstanceOf[java.lang.Long], -1)
+    case FieldDescriptor.Type.UINT64 | FieldDescriptor.Type.FIXED64 =>
+      val l: Long = value.asInstanceOf[java.lang.Long]
+      if (l >= 0) f.visitInt64(l, -1)
+      else f.visitFloat64StringParts(java.lang.Long.toUnsignedString(l), -1, -1, -1)
+    case FieldDescriptor.Type.FLOAT =>
+      // as the float it is printed, not the double it widens to
+      val fl: Float = value.asInstanceOf[java.lang.Float]
+      if (fl.isNaN || fl.isInfinite) f.visitString(fl.toString, -1)
+      else {
+        val s = java.lang.Float.toString(fl)
+        f.visitFloat64StringParts(s, s.indexOf('.'), s.indexOf('E'), -1)
+      }
+    case FieldDescriptor.Type.DOUBLE =>
+      val d: Double = value.asInstanceOf[java.lang.Double]
+      if (d.isNaN || d.isInfinite) f.visitString(d.toString, -1)
+      else f.visitFloat64(d, -1)
+    case FieldDescriptor.Type.BOOL => if (value.asInstanceOf[java.lang.Boolean]) f.visitTrue(-1) else f.visitFalse(-1)
+    case FieldDescriptor.Type.STRING => f.visitString(value.asInstanceOf[String], -1)
+    case FieldDescriptor.Type.BYTES =>
+      val bytes = value.asInstanceOf[ByteString].toByteArray
+      f.visitBinary(bytes, 0, bytes.length, -1)
+    case FieldDescriptor.Type.ENUM =>
+      val e = value.asInstanceOf[EnumValueDescriptor]
+      if (e.getIndex < 0) f.visitInt32(e.getNumber, -1) // a value the descriptor doesn't know
+      else f.visitString(e.getName, -1)
+    case FieldDescriptor.Type.MESSAGE | FieldDescriptor.Type.GROUP =>
+      val msg = value.asInstanceOf[Message]
+      visitMessage(msg, fieldsOf(msg.getDescriptorForType), f)
+  }
+
+  private def messageOf(v: Val, mf: MessageFields, ev: EvalScope): Message = {
+    val builder = DynamicMessage.newBuilder(mf.descriptor)
+    mf.wellKnown match {
+      case WellKnown.Timestamp => v match {
+        case str: Val.Str =>
+          val instant = Instant.parse(str.str)
+          builder.setField(mf.fields(0), java.lang.Long.valueOf(instant.getEpochSecond))
+            .setField(mf.fields(1), Integer.valueOf(instant.getNano))
+        case _ => mismatch(v, mf.descriptor.getFullName)
+      }
+      case WellKnown.Duration => v match {
+        case str: Val.Str if str.str.endsWith("s") =>
+          val seconds = new JBigDecimal(str.str.substring(0, str.str.length - 1))
+          builder.setField(mf.fields(0), java.lang.Long.valueOf(seconds.longValue))
+            .setField(mf.fields(1), Integer.valueOf(seconds.remainder(JBigDecimal.ONE).movePointRight(9).intValue))
+        case _ => mismatch(v, mf.descriptor.getFullName)
+      }
+      case WellKnown.Wrapper => builder.setField(mf.fields(0), singularOf(v, mf.fields(0), ev))
+      case WellKnown.None => v match {
+        case obj: Val.Obj =>
+          obj.visibleKeyNames.foreach { key =>
+            val field = mf.byName.get(key)
+            if (field == null) throw new IllegalArgumentException(
+              "Unknown field '%s' of protobuf message %s".format(key, mf.descriptor.getFullName))
+
+            obj.value(key, dummyPos)(ev) match {
+              case _: Val.Null => // left unset
+              case value if field.isMapField => value match {
+                case map: Val.Obj =>
+                  val entry = fieldsOf(field.getMessageType)
+                  map.visibleKeyNames.foreach { k =>
+                    builder.addRepeatedField(field, DynamicMessage.newBuilder(entry.descriptor)
+                      .setField(entry.fields(0), mapKeyOf(k, entry.fields(0)))
+                      .setField(entry.fields(1), singularOf(map.value(k, dummyPos)(ev), entry.fields(1), ev))
+                      .build())
+                  }
+                case _ => mismatch(value, field.getFullName)
+              }
+              case value if field.isRepeated => value match {
+                case arr: Val.Arr =>
+                  var i = 0
+                  while (i < arr.length) {
+                    builder.addRepeatedField(field, singularOf(arr.value(i), field, ev))
+                    i += 1
+                  }
+                case _ => mismatch(value, field.getFullName)
+              }
+              case value => builder.setField(field, singularOf(value, field, ev))
+            }
+          }
+        case _ => mismatch(v, mf.descriptor.getFullName)
+      }
+    }
+    builder.build()
+  }
+
+  // the Java type DynamicMessage holds for a field; 64-bit integers may be strings, as in protobuf's JSON
+  private def singularOf(v: Val, field: FieldDescriptor, ev: EvalScope): AnyRef = (field.getJavaType, v) match {
+    case (FieldDescriptor.JavaType.INT, num: Val.Num) if isUnsigned(field) && num.asDouble >= 0 && num.asDouble <= 0xFFFFFFFFL &&
+      num.asDouble == num.asDouble.toLong => Integer.valueOf(num.asDouble.toLong.toInt)
+    case (FieldDescriptor.JavaType.INT, num: Val.Num) if num.asDouble == num.asDouble.toInt => Integer.valueOf(num.asDouble.toInt)
+    case (FieldDescriptor.JavaType.LONG, num: Val.Num) if num.asDouble == num.asDouble.toLong => java.lang.Long.valueOf(num.asDouble.toLong)
+    case (FieldDescriptor.JavaType.LONG, str: Val.Str) =>
+      try java.lang.Long.valueOf(if (isUnsigned(field)) java.lang.Long.parseUnsignedLong(str.str) else str.str.toLong)
+      catch { case _: NumberFormatException => mismatch(v, field.getFullName) }
+    case (FieldDescriptor.JavaType.FLOAT, num: Val.Num) => java.lang.Float.valueOf(num.asDouble.toFloat)
+    case (FieldDescriptor.JavaType.FLOAT, str: Val.Str) => java.lang.Float.valueOf(nonFinite(str, field).toFloat)
+    case (FieldDescriptor.JavaType.DOUBLE, num: Val.Num) => java.lang.Double.valueOf(num.asDouble)
+    case (FieldDescriptor.JavaType.DOUBLE, str: Val.Str) => java.lang.Double.valueOf(nonFinite(str, field))
+    case (FieldDescriptor.JavaType.BOOLEAN, b: Val.Bool) => java.lang.Boolean.valueOf(b.asBoolean)
+    case (FieldDescriptor.JavaType.STRING, str: Val.Str) => str.str
+    case (FieldDescriptor.JavaType.BYTE_STRING, str: Val.Str) => ByteString.copyFrom(str.str, StandardCharsets.UTF_8)
+    case (FieldDescriptor.JavaType.BYTE_STRING, arr: Val.Arr) =>
+      val bytes = new Array[Byte](arr.length)
+      var i = 0
+      while (i < bytes.length) {
+        bytes(i) = arr.value(i) match {
+          case num: Val.Num => num.asDouble.toByte
+          case other => mismatch(other, field.getFullName)
+        }
+        i += 1
+      }
+      ByteString.copyFrom(bytes)
+    case (FieldDescriptor.JavaType.ENUM, str: Val.Str) =>
+      val e = field.getEnumType.findValueByName(str.str)
+      if (e == null) mismatch(v, field.getEnumType.getFullName)
+      e
+    case (FieldDescriptor.JavaType.ENUM, num: Val.Num) if num.asDouble == num.asDouble.toInt =>
+      field.getEnumType.findValueByNumberCreatingIfUnknown(num.asDouble.toInt)
+    case (FieldDescriptor.JavaType.MESSAGE, _) => messageOf(v, fieldsOf(field.getMessageType), ev)
+    case _ => mismatch(v, field.getFullName)
+  }
+}
+
+object ProtobufCodec {
+  /** Compiles the message type; the codec is kept by whoever holds it, this keeps none. */
+  def of(descriptor: Descriptor): ProtobufCodec = new ProtobufCodec(descriptor)
+
+  private val dummyPos = new Position(null, 0)
+
+  // what of a message type is used on each message: its fields in order, the names they are read as,
+  // and every name they can be written from, the JSON name or the one in the .proto
+  private final class MessageFields(val descriptor: Descriptor) {
+    val fields: Array[FieldDescriptor] = descriptor.getFields.toArray(new Array[FieldDescriptor](0))
+    val names: Array[String] = fields.map(_.getJsonName)
+    val byName: java.util.Map[String, FieldDescriptor] = {
+      val map = new java.util.HashMap[String, FieldDescriptor](fields.length * 4)
+      fields.foreach { field =>
+        map.put(field.getName, field)
+        map.put(field.getJsonName, field)
+      }
+      map
+    }
+    val wellKnown: WellKnown = descriptor.getFullName match {
+      case "google.protobuf.Timestamp" => WellKnown.Timestamp
+      case "google.protobuf.Duration" => WellKnown.Duration
+      case "google.protobuf.DoubleValue" | "google.protobuf.FloatValue" | "google.protobuf.Int64Value" |
+           "google.protobuf.UInt64Value" | "google.protobuf.Int32Value" | "google.protobuf.UInt32Value" |
+           "google.protobuf.BoolValue" | "google.protobuf.StringValue" | "google.protobuf.BytesValue" => WellKnown.Wrapper
+      case _ => WellKnown.None
+    }
+  }
+
+  private enum WellKnown {
+    case None, Timestamp, Duration, Wrapper
+  }
+
+  private def longField(msg: MessageOrBuilder, mf: MessageFields, i: Int): Long =
+    msg.getField(mf.fields(i)).asInstanceOf[Number].longValue
+
+  // map keys are strings in a Val, and any of the integral, bool or string types in a message
+  private def mapKeyOf(key: String, field: FieldDescriptor): AnyRef =
+    try field.getJavaType match {
+      case FieldDescriptor.JavaType.INT =>
+        Integer.valueOf(if (isUnsigned(field)) Integer.parseUnsignedInt(key) else key.toInt)
+      case FieldDescriptor.JavaType.LONG =>
+        java.lang.Long.valueOf(if (isUnsigned(field)) java.lang.Long.parseUnsignedLong(key) else key.toLong)
+      case FieldDescriptor.JavaType.BOOLEAN if key == "true" || key == "false" => java.lang.Boolean.valueOf(key.toBoolean)
+      case FieldDescriptor.JavaType.STRING => key
+      case _ => throw new NumberFormatException(key)
+    } catch {
+      case _: NumberFormatException => throw new IllegalArgumentException(
+        "Cannot write key '%s' as protobuf %s".format(key, field.getType.name.toLowerCase))
+    }
+
+  private def isUnsigned(field: FieldDescriptor): Boolean = field.getType match {
+    case FieldDescriptor.Type.UINT32 | FieldDescriptor.Type.FIXED32 |
+         FieldDescriptor.Type.UINT64 | FieldDescriptor.Type.FIXED64 => true
+    case _ => false
+  }
+
+  private def nonFinite(str: Val.Str, field: FieldDescriptor): Double = str.str match {
+    case "NaN" => Double.NaN
+    case "Infinity" => Double.PositiveInfinity
+    case "-Infinity" => Double.NegativeInfinity
+    case _ => mismatch(str, field.getFullName)
+  }
+
+  private def mismatch(v: Val, what: String): Nothing =
+    throw new IllegalArgumentException("Cannot write %s as protobuf %s".format(v.prettyName, what))
+}
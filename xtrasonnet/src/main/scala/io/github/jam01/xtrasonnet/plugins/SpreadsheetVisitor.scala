@@ -0,0 +1,123 @@
+package io.github.jam01.xtrasonnet.plugins
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import org.apache.poi.ss.usermodel.{Row, Sheet, Workbook}
+import org.apache.poi.ss.util.CellReference
+import sjsonnet.JsonVisitor
+import upickle.core.{ArrVisitor, ObjVisitor, Visitor}
+
+/**
+ * Writes a visit into a workbook as it happens, the inverse of what [[DefaultExcelPlugin]] reads: an
+ * Object of sheets, each an Array of rows, or an Array of rows for a single sheet. A row is an Object of
+ * cells keyed by column, e.g. `{"A": "a1", "C": 3}`, or an Array of cells from column A on. Strings,
+ * numbers and booleans become cells of their type, and nulls leave theirs out.
+ *
+ * Each row is created as it is visited, so a streaming workbook can flush those behind it.
+ */
+final class SpreadsheetVisitor(book: Workbook) extends JsonVisitor[Unit, Unit] {
+  private val DefaultSheet = "Sheet1"
+
+  override def visitJsonableObject(length: Int, index: Int): ObjVisitor[Unit, Unit] = new ObjVisitor[Unit, Unit] {
+    private var sheet: String = _
+    override def visitKey(index: Int): Visitor[_, _] = upickle.core.StringVisitor
+    override def visitKeyValue(v: Any): Unit = sheet = v.toString
+    override def subVisitor: Visitor[_, _] = new RowsVisitor(book.createSheet(sheet))
+    override def visitValue(v: Unit, index: Int): Unit = ()
+    override def visitEnd(index: Int): Unit = ()
+  }
+
+  override def visitArray(length: Int, index: Int): ArrVisitor[Unit, Unit] =
+    new RowsVisitor(book.createSheet(DefaultSheet)).visitArray(length, index)
+
+  override def visitNull(index: Int): Unit = unexpected("null", "an Object of sheets or an Array of rows")
+  override def visitFalse(index: Int): Unit = unexpected("boolean", "an Object of sheets or an Array of rows")
+  override def visitTrue(index: Int): Unit = unexpected("boolean", "an Object of sheets or an Array of rows")
+  override def visitString(s: CharSequence, index: Int): Unit = unexpected("string", "an Object of sheets or an Array of rows")
+  override def visitFloat64StringParts(s: CharSequence, decIndex: Int, expIndex: Int, index: Int): Unit =
+    unexpected("number", "an Object of sheets or an Array of rows")
+
+  private final class RowsVisitor(sheet: Sheet) extends JsonVisitor[Unit, Unit] {
+    private var next = 0
+
+    override def visitArray(length: Int, index: Int): ArrVisitor[Unit, Unit] = new ArrVisitor[Unit, Unit] {
+      override def subVisitor: Visitor[_, _] = {
+        val row = sheet.createRow(next)
+        next += 1
+        new RowVisitor(row)
+      }
+      override def visitValue(v: Unit, index: Int): Unit = ()
+      override def visitEnd(index: Int): Unit = ()
+    }
+
+    private def what = "an Array of rows for sheet '" + sheet.getSheetName + "'"
+    override def visitJsonableObject(length: Int, index: Int): ObjVisitor[Unit, Unit] = unexpected("object", what)
+    override def visitNull(index: Int): Unit = unexpected("null", what)
+    override def visitFalse(index: Int): Unit = unexpected("boolean", what)
+    override def visitTrue(index: Int): Unit = unexpected("boolean", what)
+    override def visitString(s: CharSequence, index: Int): Unit = unexpected("string", what)
+    override def visitFloat64StringParts(s: CharSequence, decIndex: Int, expIndex: Int, index: Int): Unit = unexpected("number", what)
+  }
+
+  private final class RowVisitor(row: Row) extends JsonVisitor[Unit, Unit] {
+    override def visitJsonableObject(length: Int, index: Int): ObjVisitor[Unit, Unit] = new ObjVisitor[Unit, Unit] {
+      private var column = 0
+      override def visitKey(index: Int): Visitor[_, _] = upickle.core.StringVisitor
+      override def visitKeyValue(v: Any): Unit = column = columnOf(v.toString)
+      override def subVisitor: Visitor[_, _] = new CellVisitor(row, column)
+      override def visitValue(v: Unit, index: Int): Unit = ()
+      override def visitEnd(index: Int): Unit = ()
+    }
+
+    override def visitArray(length: Int, index: Int): ArrVisitor[Unit, Unit] = new ArrVisitor[Unit, Unit] {
+      private var column = 0
+      override def subVisitor: Visitor[_, _] = {
+        val cell = new CellVisitor(row, column)
+        column += 1
+        cell
+      }
+      override def visitValue(v: Unit, index: Int): Unit = ()
+      override def visitEnd(index: Int): Unit = ()
+    }
+
+    override def visitNull(index: Int): Unit = () // an empty row
+
+    private def what = "an Object or Array of cells for row " + (row.getRowNum + 1)
+    override def visitFalse(index: Int): Unit = unexpected("boolean", what)
+    override def visitTrue(index: Int): Unit = unexpected("boolean", what)
+    override def visitString(s: CharSequence, index: Int): Unit = unexpected("string", what)
+    override def visitFloat64StringParts(s: CharSequence, decIndex: Int, expIndex: Int, index: Int): Unit = unexpected("number", what)
+
+    private def columnOf(key: String): Int = {
+      if (key.isEmpty || key.length > 3 || !key.forall(c => c >= 'A' && c <= 'Z')) {
+        throw new IllegalArgumentException("Cannot write cell '%s' of row %d: cells are keyed by column, e.g. A, B or AA"
+          .format(key, row.getRowNum + 1))
+      }
+      CellReference.convertColStringToIndex(key)
+    }
+  }
+
+  private final class CellVisitor(row: Row, column: Int) extends JsonVisitor[Unit, Unit] {
+    override def visitNull(index: Int): Unit = ()
+    override def visitFalse(index: Int): Unit = row.createCell(column).setCellValue(false)
+    override def visitTrue(index: Int): Unit = row.createCell(column).setCellValue(true)
+    override def visitString(s: CharSequence, index: Int): Unit = row.createCell(column).setCellValue(s.toString)
+    override def visitFloat64(d: Double, index: Int): Unit = row.createCell(column).setCellValue(d)
+    override def visitInt64(i: Long, index: Int): Unit = row.createCell(column).setCellValue(i.toDouble)
+    override def visitFloat64StringParts(s: CharSequence, decIndex: Int, expIndex: Int, index: Int): Unit =
+      row.createCell(column).setCellValue(s.toString.toDouble)
+
+    private def what = "a string, number, boolean or null for cell " +
+      CellReference.convertNumToColString(column) + (row.getRowNum + 1)
+    override def visitJsonableObject(length: Int, index: Int): ObjVisitor[Unit, Unit] = unexpected("object", what)
+    override def visitArray(length: Int, index: Int): ArrVisitor[Unit, Unit] = unexpected("array", what)
+  }
+
+  private def unexpected(found: String, expected: String): Nothing =
+    throw new IllegalArgumentException("Cannot write a spreadsheet from a %s, expected %s".format(found, expected))
+}
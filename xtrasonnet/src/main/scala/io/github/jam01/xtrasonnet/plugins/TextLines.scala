@@ -0,0 +1,90 @@
+package io.github.jam01.xtrasonnet.plugins
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import sjsonnet.{Eval, Lazy, Position, Val}
+
+import java.io.{BufferedReader, Reader}
+import java.nio.ByteBuffer
+import java.nio.charset.Charset
+
+/**
+ * Reads text as an Array of its lines, whose elements are decoded on demand. Reading only finds where each
+ * line begins and ends; a line becomes a String the first time its element is looked at, and then kept.
+ *
+ * Empty lines are elements, a last newline does not start one more, and a line may end with `\r\n`.
+ */
+object TextLines {
+  /**
+   * Reads the lines of the buffer, from its position to its limit, which are read but never moved. Lines
+   * are decoded with the charset, whose newline must be a single byte; see [[newline]].
+   */
+  def read(buffer: ByteBuffer, charset: Charset, pos: Position): Val.Arr = {
+    val nl = newline(charset)
+    if (nl < 0) throw new IllegalArgumentException("Cannot find the lines of " + charset + " text before decoding it")
+    val cr = "\r".getBytes(charset)(0)
+    val lines = new LineIndex(nl.toByte, skipBlank = false, from = buffer.position())
+    var i = buffer.position()
+    val end = buffer.limit()
+    while (i < end) {
+      lines.next(buffer.get(i), i)
+      i += 1
+    }
+    lines.end(end)
+
+    Val.Arr(pos, lines.toArray((from, to, _) => new Lazy(() => {
+      val len = if (to > from && buffer.get(to - 1) == cr) to - from - 1 else to - from
+      Val.Str(pos, charset.decode(buffer.slice(from, len)).toString)
+    })))
+  }
+
+  /** Reads the lines of the characters. */
+  def read(chars: CharSequence, pos: Position): Val.Arr = {
+    val lines = new LineIndex('\n'.toByte, skipBlank = false)
+    var i = 0
+    val end = chars.length
+    while (i < end) {
+      val c = chars.charAt(i)
+      lines.next(if (c == '\n') '\n'.toByte else 0, i)
+      i += 1
+    }
+    lines.end(end)
+
+    Val.Arr(pos, lines.toArray((from, to, _) => new Lazy(() => {
+      val len = if (to > from && chars.charAt(to - 1) == '\r') to - from - 1 else to - from
+      Val.Str(pos, chars.subSequence(from, from + len).toString)
+    })))
+  }
+
+  /**
+   * Reads every line of the Reader, each decoded as it is read; for text whose lines can't be found
+   * before it is decoded.
+   */
+  def read(reader: Reader, pos: Position): Val.Arr = {
+    val in = reader match {
+      case buffered: BufferedReader => buffered
+      case _ => new BufferedReader(reader)
+    }
+    val lines = Array.newBuilder[Eval]
+    var line = in.readLine()
+    while (line != null) {
+      lines += Val.Str(pos, line)
+      line = in.readLine()
+    }
+    Val.Arr(pos, lines.result())
+  }
+
+  /**
+   * The single byte that ends a line in the charset, as in ASCII and its supersets, or EBCDIC; or -1 when
+   * it takes more than one, as in UTF-16, and its lines can only be found by decoding.
+   */
+  def newline(charset: Charset): Int = {
+    val nl = "\n".getBytes(charset)
+    if (nl.length == 1 && "\r".getBytes(charset).length == 1) nl(0) & 0xFF else -1
+  }
+}
@@ -7,248 +7,260 @@ package io.github.jam01.xtrasonnet.plugins.xml
  * compliance with the Elastic License 2.0.
  */
 
-import com.fasterxml.jackson.databind.JsonNode
-import com.fasterxml.jackson.databind.node.{ArrayNode, JsonNodeType, ObjectNode}
 import io.github.jam01.xtrasonnet.plugins.DefaultXMLPlugin.{DEFAULT_NS_KEY, EffectiveParams}
 import io.github.jam01.xtrasonnet.plugins.JsonNodeVisitor
-import sjsonnet.{EvalScope, JsonVisitor, Materializer, Val}
-import upickle.core.{ArrVisitor, ObjVisitor, StringVisitor, Visitor}
+import sjsonnet.{EvalScope, JsonVisitor, Materializer, Position, Val}
+import upickle.core.{ArrVisitor, ObjVisitor}
 
 import java.io.{StringWriter, Writer}
-import scala.collection.mutable
 import scala.collection.mutable.ArrayBuffer
-import scala.jdk.CollectionConverters.IteratorHasAsScala
 
+/**
+ * Writes a Val as XML straight into a Writer, element by element.
+ *
+ * Objects and arrays are walked rather than materialized: an object's children are forced only when
+ * that object is written, and an element is done with as soon as it is closed. Materializing the whole
+ * value first, as this once did, held a second copy of the document until the last tag was written.
+ * Children are ordered by their position key and text index before being written, so only the direct
+ * children of the elements currently open are held at any one time.
+ */
 final class BadgerFishVisitor(val params: EffectiveParams) {
+  private val dummyPos: Position = Position(null, -1)
 
-  // taken from scala.xml.Utility
-  object Escapes {
-    val pairs: Map[String, Char] = Map(
-      "lt" -> '<',
-      "gt" -> '>',
-      "amp" -> '&',
-      "quot" -> '"',
-      "apos" -> '\''
-    )
-    val escMap: Map[Char, String] = (pairs - "apos").map { case (s, c) => c -> s"&$s;" }
+  /** Escapes for attribute values (includes &quot;). */
+  def escape(text: String, s: Writer): Writer = {
+    escape(text, s, quot = true)
+    s
   }
-  import Escapes.escMap
 
-  private def appendQuoted(s: String, sb: Writer): Writer = {
-    val ch = if (s.contains('"')) '\'' else '"'
-    sb.append(ch).append(s).append(ch)
-  }
+  /** Escapes for element text content (does NOT escape "). */
+  private def escapeText(text: String, s: Writer): Unit = escape(text, s, quot = false)
 
-  /** Escapes for attribute values (includes &quot;). */
-  def escape(text: String, s: Writer): Writer =
-    text.iterator.foldLeft(s) { (s0, c) =>
-      escMap.get(c) match {
-        case Some(str) => s0.append(str)
-        case _ if c >= ' ' || "\n\r\t".contains(c) => s0.append(c)
-        case _ => s0
+  // copies unescaped runs whole; control characters other than whitespace are not allowed in XML, and
+  // are dropped
+  private def escape(text: String, out: Writer, quot: Boolean): Unit = {
+    val length = text.length
+    var start = 0
+    var i = 0
+    while (i < length) {
+      val replacement = text.charAt(i) match {
+        case '<' => "&lt;"
+        case '>' => "&gt;"
+        case '&' => "&amp;"
+        case '"' if quot => "&quot;"
+        case c if c < ' ' && c != '\n' && c != '\r' && c != '\t' => ""
+        case _ => null
       }
-    }
 
-  /** Escapes for element text content (does NOT escape "). */
-  private def escapeText(text: String, s: Writer): Writer = {
-    val escTextMap = escMap - '"'
-    text.iterator.foldLeft(s) { (s0, c) =>
-      escTextMap.get(c) match {
-        case Some(str) => s0.append(str)
-        case _ if c >= ' ' || "\n\r\t".contains(c) => s0.append(c)
-        case _ => s0
+      if (replacement != null) {
+        out.write(text, start, i - start)
+        out.write(replacement)
+        start = i + 1
       }
+      i += 1
     }
+    out.write(text, start, length - start)
   }
 
-  /**
-   * Visitor-based entrypoint.
-   *
-   * This version accepts Val and walks it via Visitor
-   * so the serialization logic lives in visitors rather than pattern matching.
-   */
   def serialize(qname: String, value: Val, sb: Writer = new StringWriter())(implicit ev: EvalScope): Writer = {
-    Materializer.apply0(value, new ElementVisitor(qname, sb)(ev))(ev)
+    writeElement(qname, value, sb)
     sb
   }
 
-  /** A Visitor that writes exactly one XML element named `qname` into `out`. */
-  private final class ElementVisitor(qname: String, out: Writer)(implicit ev: EvalScope)
-    extends JsonVisitor[Any, Unit] {
+  /** Writes exactly one XML element named `qname` into `out`. */
+  private def writeElement(qname: String, value: Val, out: Writer)(implicit ev: EvalScope): Unit = value match {
+    case obj: Val.Obj => writeObject(qname, obj, out)
 
-    // --- primitives ---------------------------------------------------------
-    override def visitFalse(index: Int): Unit = visitString("false", index)
-    override def visitTrue(index: Int): Unit = visitString("true", index)
-    // rendered as an integer rather than routed through Double, which lost exactness above 2^53
-    // and serialized integral values as "1.0"
-    override def visitInt64(i: Long, index: Int): Unit = {
-      out.append('<').append(qname).append('>')
-      out.append(java.lang.Long.toString(i))
-      out.append("</").append(qname).append('>')
+    case arr: Val.Arr =>
+      // <qname>  each item as <qname>...</qname>  </qname>
+      out.write('<')
+      out.write(qname)
+      out.write('>')
+      var i = 0
+      while (i < arr.length) {
+        writeElement(qname, arr.value(i), out)
+        i += 1
+      }
+      closeTag(qname, out)
+
+    // scalars, and functions, which fail here as they would anywhere else
+    case _ => Materializer.apply0(value, new ScalarVisitor(qname, out))(ev)
+  }
+
+  private def writeObject(qname: String, obj: Val.Obj, out: Writer)(implicit ev: EvalScope): Unit = {
+    out.write('<')
+    out.write(qname)
+
+    // attributes and namespaces are written as they come; everything else is a child
+    val children = new ArrayBuffer[(String, Val)]()
+    keysOf(obj).foreach { key =>
+      val child = obj.value(key, dummyPos)(ev)
+      if (key == params.xmlnsKey) {
+        val xmlns = child.asObj
+        keysOf(xmlns).foreach { prefix =>
+          out.write(" xmlns")
+          if (prefix.nonEmpty && prefix != DEFAULT_NS_KEY) {
+            out.write(':')
+            out.write(prefix)
+          }
+          writeAttributeValue(xmlns.value(prefix, dummyPos)(ev), out)
+        }
+      } else if (key == params.attrKey) {
+        val attrs = child.asObj
+        keysOf(attrs).foreach { name =>
+          out.write(' ')
+          out.write(name)
+          writeAttributeValue(attrs.value(name, dummyPos)(ev), out)
+        }
+      } else {
+        children.addOne(key -> child)
+      }
     }
 
-    override def visitNull(index: Int): Unit = {
-      out.append('<').append(qname)
-      if (params.emptyTagsNull) out.append("/>")
-      else out.append('>').append("</").append(qname).append('>')
+    // empty tags handling
+    if (children.isEmpty && params.emptyTagsObj) {
+      out.write("/>")
+      return
     }
 
-    override def visitString(s: CharSequence, index: Int): Unit = {
-      val str = if (s == null) "" else s.toString
-      out.append('<').append(qname)
-      if (str.isEmpty && params.emptyTagsStr) out.append("/>")
-      else {
-        out.append('>')
-        escapeText(str, out)
-        out.append("</").append(qname).append('>')
+    if (params.emptyTagsStr && children.size == 1) {
+      val (k, v) = children.head
+      if (k.startsWith(params.textKey) && isEmptyString(v)) {
+        out.write("/>")
+        return
       }
     }
 
-    override def visitFloat64(d: Double, index: Int): Unit = {
-      out.append('<').append(qname).append('>')
-      out.append(d.toString)
-      out.append("</").append(qname).append('>')
-    }
+    // long form
+    out.write('>')
 
-    override def visitFloat64StringParts(s: CharSequence, decIndex: Int, expIndex: Int, index: Int): Unit = {
-      out.append('<').append(qname).append('>')
-      out.append(s)
-      out.append("</").append(qname).append('>')
+    val flattened = new ArrayBuffer[(String, Val)](children.size)
+    children.foreach { case (k, v) =>
+      if (k != params.posKey) v match {
+        case arr: Val.Arr if arr.length > 0 =>
+          var i = 0
+          while (i < arr.length) {
+            flattened.addOne(k -> arr.value(i))
+            i += 1
+          }
+        case _ => flattened.addOne(k -> v)
+      }
     }
 
-    // --- arrays -------------------------------------------------------------
-    override def visitArray(length: Int, index: Int): ArrVisitor[Any, Unit] = {
-      // <qname>  serialize(qname, eachItem)  </qname>
-      out.append('<').append(qname).append('>')
+    // sort using ordering key in objects, and numeric suffix in text/cdata keys
+    val sorted = flattened.sortBy { case (k, v) => orderOf(k, v) }(Ordering[Int])
 
-      new ArrVisitor[Any, Unit] {
-        override def subVisitor: Visitor[_, _] =
-          new ElementVisitor(qname, out) // each array element becomes <qname>...</qname>
+    // emit
+    sorted.foreach { case (childKey, childVal) =>
+      if (childKey.startsWith(params.textKey)) {
+        escapeText(textOf(childVal), out)
+      } else if (childKey.startsWith(params.cdataKey)) {
+        out.write("<![CDATA[")
+        out.write(textOf(childVal).replace("]]>", "]]]]><![CDATA[>"))
+        out.write("]]>")
+      } else {
+        writeElement(childKey, childVal, out)
+      }
+    }
 
-        override def visitValue(v: Any, index: Int): Unit = () // side-effects already happened
-        override def visitEnd(index: Int): Unit = {
-          out.append("</").append(qname).append('>')
-        }
+    closeTag(qname, out)
+  }
+
+  private def orderOf(key: String, value: Val)(implicit ev: EvalScope): Int = value match {
+    case inner: Val.Obj =>
+      if (!inner.visibleKeyNames.contains(params.posKey)) Int.MaxValue
+      else inner.value(params.posKey, dummyPos)(ev) match {
+        case num: Val.Num => num.asInt
+        case str: Val.Str => str.str.trim.toDoubleOption.map(_.toInt).getOrElse(0)
+        case x => throw new IllegalArgumentException("Invalid ordering key value: " + x.prettyName)
       }
+    case _ =>
+      if (key.nonEmpty && key.last.isDigit) {
+        if (key.startsWith(params.textKey)) key.substring(params.textKey.length).toInt
+        else if (key.startsWith(params.cdataKey)) key.substring(params.cdataKey.length).toInt
+        else Int.MaxValue
+      } else Int.MaxValue
+  }
+
+  // the key order materializing would have given
+  private def keysOf(obj: Val.Obj)(implicit ev: EvalScope): Array[String] =
+    if (ev.settings.preserveOrder) obj.visibleKeyNames else obj.visibleKeyNames.sorted
+
+  private def writeAttributeValue(value: Val, out: Writer): Unit = {
+    out.write("=\"")
+    value match {
+      case str: Val.Str => escape(str.str, out, quot = true)
+      case _ => // only strings make attribute values
     }
+    out.write('"')
+  }
 
-    // --- objects ------------------------------------------------------------
-    override def visitJsonableObject(length: Int, index: Int): ObjVisitor[Any, Unit] = {
-      out.append('<').append(qname)
-
-      new ObjVisitor[Any, Unit] {
-        private var currentKey: String = _
-        private val children = new mutable.LinkedHashMap[String, JsonNode]()
-
-        // We buffer *values* so we can flatten + sort
-        private val valueBufferVisitor: Visitor[_, _] = JsonNodeVisitor
-
-        override def subVisitor: Visitor[_, _] = valueBufferVisitor
-        override def visitKey(index: Int): Visitor[_, _] = StringVisitor
-        override def visitKeyValue(v: Any): Unit = currentKey = if (v == null) "" else v.asInstanceOf[String]
-
-        override def visitValue(v: Any, index: Int): Unit = {
-          val childValue = v.asInstanceOf[JsonNode]
-          val childKey = currentKey
-
-          if (childKey == params.xmlnsKey) {
-            // xmlns object => append attributes in encounter order
-            childValue.asInstanceOf[ObjectNode].properties().forEach { kvv =>
-              val k = kvv.getKey
-              val vv = kvv.getValue
-              out.append(" xmlns")
-              if (k != null && k.nonEmpty && k != DEFAULT_NS_KEY) out.append(':').append(k)
-              out.append('=')
-              val tmp = new StringWriter()
-              val raw: String = if (vv != null && vv.isTextual) vv.asText() else ""
-              escape(raw, tmp)
-              appendQuoted(tmp.toString, out)
-            }
-          } else if (childKey == params.attrKey) {
-            // @ object => append attributes in encounter order
-            childValue.asInstanceOf[ObjectNode].properties().forEach { akav =>
-              val ak = akav.getKey
-              val av = akav.getValue
-              out.append(' ').append(ak).append('=')
-              val tmp = new StringWriter()
-              val raw = if (av != null && av.isTextual) av.asText() else ""
-              escape(raw, tmp)
-              appendQuoted(tmp.toString, out)
-            }
-          } else {
-            children.addOne(childKey -> childValue)
-          }
-        }
+  // text as Jackson would have given it for a materialized node: anything but a scalar is empty
+  private def textOf(value: Val)(implicit ev: EvalScope): String = value match {
+    case str: Val.Str => str.str
+    case _: Val.Obj | _: Val.Arr => ""
+    case _ => Materializer.apply0(value, JsonNodeVisitor)(ev).asText()
+  }
 
-        override def visitEnd(index: Int): Unit = {
-          // empty tags handling
-          if (children.isEmpty && params.emptyTagsObj) {
-            out.append("/>")
-            return
-          }
+  private def isEmptyString(value: Val): Boolean = value match {
+    case str: Val.Str => str.str.isEmpty
+    case _ => false
+  }
 
-          if (params.emptyTagsStr && children.size == 1) {
-            val (k, v) = children.head
-            if (k.startsWith(params.textKey) && v.isTextual && v.asText().isEmpty) {
-              out.append("/>")
-              return
-            }
-          }
+  private def closeTag(qname: String, out: Writer): Unit = {
+    out.write("</")
+    out.write(qname)
+    out.write('>')
+  }
 
-          // long form
-          out.append('>')
-
-          val flattened: ArrayBuffer[(String, JsonNode)] =
-            children.toSeq.foldLeft(new ArrayBuffer[(String, JsonNode)]()) { (acc, kv) =>
-              val (k, v) = kv
-              if (k == params.posKey) acc
-              else v match {
-                case arr: ArrayNode =>
-                  if (arr.isEmpty) acc.addOne(k -> v)
-                  else acc.addAll(arr.values().asScala.map(it => k -> it))
-                case _ =>
-                  acc.addOne(k -> v)
-              }
-            }
-
-          // sort using ordering key in objects, and numeric suffix in text/cdata keys
-          val sorted = flattened.sortBy { case (k, v) =>
-              v match {
-                case inner: ObjectNode =>
-                  val childVal0 = inner.get(params.posKey)
-                  if (childVal0 == null) Int.MaxValue
-                  else childVal0.getNodeType match {
-                    case JsonNodeType.MISSING => Int.MaxValue
-                    case JsonNodeType.NUMBER => childVal0.asInt()
-                    case JsonNodeType.STRING => childVal0.asInt()
-                    case x =>
-                      throw new IllegalArgumentException("Invalid ordering key value: " + x)
-                  }
-                case _ =>
-                  if (k.nonEmpty && k.last.isDigit) {
-                    if (k.startsWith(params.textKey)) k.substring(params.textKey.length).toInt
-                    else if (k.startsWith(params.cdataKey)) k.substring(params.cdataKey.length).toInt
-                    else Int.MaxValue
-                  } else Int.MaxValue
-              }
-            }(Ordering[Int])
-
-          // emit
-          sorted.foreach { case (childKey, childVal) =>
-            if (childKey.startsWith(params.textKey)) {
-              escapeText(childVal.asText(), out)
-            } else if (childKey.startsWith(params.cdataKey)) {
-              val safe = childVal.asText().replaceAll("]]>", "]]]]><![CDATA[>")
-              out.append("<![CDATA[").append(safe).append("]]>")
-            } else {
-              // recurse via Visitor (not pattern matching):
-              JsonNodeVisitor.transform(childVal, new ElementVisitor(childKey, out))
-            }
-          }
+  /** Writes exactly one XML element named `qname` holding a scalar into `out`. */
+  private final class ScalarVisitor(qname: String, out: Writer) extends JsonVisitor[Any, Unit] {
+    override def visitFalse(index: Int): Unit = visitString("false", index)
+    override def visitTrue(index: Int): Unit = visitString("true", index)
+    // rendered as an integer rather than routed through Double, which lost exactness above 2^53
+    // and serialized integral values as "1.0"
+    override def visitInt64(i: Long, index: Int): Unit = writeRaw(java.lang.Long.toString(i))
 
-          out.append("</").append(qname).append('>')
-        }
+    override def visitNull(index: Int): Unit = {
+      out.write('<')
+      out.write(qname)
+      if (params.emptyTagsNull) out.write("/>")
+      else {
+        out.write('>')
+        closeTag(qname, out)
+      }
+    }
+
+    override def visitString(s: CharSequence, index: Int): Unit = {
+      val str = if (s == null) "" else s.toString
+      out.write('<')
+      out.write(qname)
+      if (str.isEmpty && params.emptyTagsStr) out.write("/>")
+      else {
+        out.write('>')
+        escapeText(str, out)
+        closeTag(qname, out)
       }
     }
+
+    override def visitFloat64(d: Double, index: Int): Unit = writeRaw(d.toString)
+
+    override def visitFloat64StringParts(s: CharSequence, decIndex: Int, expIndex: Int, index: Int): Unit =
+      writeRaw(s.toString)
+
+    private def writeRaw(s: String): Unit = {
+      out.write('<')
+      out.write(qname)
+      out.write('>')
+      out.write(s)
+      closeTag(qname, out)
+    }
+
+    // objects and arrays are walked by writeElement, and never materialized
+    override def visitArray(length: Int, index: Int): ArrVisitor[Any, Unit] =
+      throw new IllegalStateException("Not a scalar: array")
+
+    override def visitJsonableObject(length: Int, index: Int): ObjVisitor[Any, Unit] =
+      throw new IllegalStateException("Not a scalar: object")
   }
 }
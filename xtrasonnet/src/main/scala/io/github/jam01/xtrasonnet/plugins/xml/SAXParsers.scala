@@ -0,0 +1,84 @@
+package io.github.jam01.xtrasonnet.plugins.xml
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import java.util
+import java.util.concurrent.ArrayBlockingQueue
+import javax.xml.parsers.{SAXParser, SAXParserFactory}
+import scala.util.control.NonFatal
+
+/**
+ * Preconfigured SAX parsers, kept for reuse. Looking up a factory and building a parser took longer
+ * than parsing the small documents most reads are, and was done on every one.
+ *
+ * Of the reader's parameters only namespace awareness changes how a parser is configured -- everything
+ * else is applied by [[BadgerFishHandler]] -- so there is one factory, and one pool, per setting. A pool
+ * holds a bounded number of idle parsers: a burst beyond it builds parsers that are simply dropped on
+ * release.
+ *
+ * Only parsers a pool built itself go back into it. Any other parser released here, such as one from an
+ * [[XMLLoader]] that overrides `parser` but not `release`, is dropped: it may allow a DOCTYPE or external
+ * entities, and would hand that to every later read.
+ */
+private[xml] object SAXParsers {
+  private val MaxIdle = math.max(4, Runtime.getRuntime.availableProcessors())
+
+  private val namespaceAware = new Pool(true)
+  private val namespaceUnaware = new Pool(false)
+
+  def borrow(xmlnsAware: Boolean): SAXParser = poolFor(xmlnsAware).borrow()
+
+  def release(parser: SAXParser, xmlnsAware: Boolean): Unit = poolFor(xmlnsAware).release(parser)
+
+  private def poolFor(xmlnsAware: Boolean): Pool = if (xmlnsAware) namespaceAware else namespaceUnaware
+
+  private final class Pool(xmlnsAware: Boolean) {
+    private lazy val factory: SAXParserFactory = {
+      val factory = SAXParserFactory.newInstance
+      factory.setNamespaceAware(xmlnsAware)
+
+      // Safer parsing settings to avoid certain class of XML attacks
+      // See https://github.com/scala/scala-xml/issues/17
+      factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true)
+      factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false)
+      factory.setFeature("http://xml.org/sax/features/external-general-entities", false)
+      factory.setXIncludeAware(false)
+      factory
+    }
+
+    private val idle = new ArrayBlockingQueue[SAXParser](MaxIdle)
+
+    // every parser this pool built, weakly, so those dropped rather than kept idle are still collected.
+    // JDK parsers don't override equals, so this is by identity
+    private val built = util.Collections.synchronizedMap(new util.WeakHashMap[SAXParser, java.lang.Boolean])
+
+    def borrow(): SAXParser = {
+      val parser = idle.poll()
+      if (parser != null) parser
+      else {
+        val created = factory.synchronized(factory.newSAXParser) // JAXP factories make no thread-safety promise
+        built.put(created, java.lang.Boolean.TRUE)
+        created
+      }
+    }
+
+    def release(parser: SAXParser): Unit = {
+      if (!built.containsKey(parser)) return // not ours, and not known to be configured as ours are
+
+      // back to the factory's configuration, which also lets go of the last handler and its result
+      val reusable = try {
+        parser.reset()
+        true
+      } catch {
+        case NonFatal(_) => false // an implementation that cannot reset is not reused
+      }
+
+      if (reusable) idle.offer(parser)
+    }
+  }
+}
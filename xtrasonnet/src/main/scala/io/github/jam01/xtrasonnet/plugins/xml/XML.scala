@@ -38,6 +38,7 @@ object XML extends XMLLoader {
   def withSAXParser(p: SAXParser): XMLLoader =
     new XMLLoader {
       override def parser(params: EffectiveParams): SAXParser = p
+      override def release(parser: SAXParser, params: EffectiveParams): Unit = () // the caller's
     }
 
   /**
@@ -8,29 +8,26 @@ package io.github.jam01.xtrasonnet.plugins.xml
  */
 
 import io.github.jam01.xtrasonnet.plugins.DefaultXMLPlugin.EffectiveParams
+import io.github.jam01.xtrasonnet.plugins.MappedFiles
 import io.github.jam01.xtrasonnet.plugins.xml.Source.{fromInputStream, fromString}
 import org.xml.sax.InputSource
 import sjsonnet.Val
 
 import java.io.*
 import java.net.URL
-import javax.xml.parsers.{SAXParser, SAXParserFactory}
+import javax.xml.parsers.SAXParser
 
 // See {@link scala.xml.factory.XMLLoader}
 trait XMLLoader {
   /* Override this to use a different SAXParser. */
-  def parser(params: EffectiveParams): SAXParser = {
-    val factory = SAXParserFactory.newInstance
-    factory.setNamespaceAware(params.xmlnsAware)
+  def parser(params: EffectiveParams): SAXParser = SAXParsers.borrow(params.xmlnsAware)
 
-    // Safer parsing settings to avoid certain class of XML attacks
-    // See https://github.com/scala/scala-xml/issues/17
-    factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true)
-    factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false)
-    factory.setFeature("http://xml.org/sax/features/external-general-entities", false)
-    factory.setXIncludeAware(false)
+  /* Called with each parser obtained from parser(params) once a load is done with it. */
+  def release(parser: SAXParser, params: EffectiveParams): Unit = SAXParsers.release(parser, params.xmlnsAware)
 
-    factory.newSAXParser
+  private def withParser[T](params: EffectiveParams)(f: SAXParser => T): T = {
+    val p = parser(params)
+    try f(p) finally release(p, params)
   }
 
   /**
@@ -46,21 +43,26 @@ trait XMLLoader {
   }
 
   /** Loads XML from the given file, file descriptor, or filename. */
-  def loadFile(file: File, params: EffectiveParams): Val.Literal = {
+  def loadFile(file: File, params: EffectiveParams): Val.Literal = loadFile(file.toPath, params)
+
+  /** Loads XML from the given file, read through a memory map unless it is too large to map whole. */
+  def loadFile(path: java.nio.file.Path, params: EffectiveParams): Val.Literal = {
     // whoever opens the stream closes it
-    val is = new FileInputStream(file)
-    try loadXML(fromInputStream(is, params), parser(params), params) finally is.close()
+    val is = MappedFiles.newInputStream(path)
+    try withParser(params)(loadXML(fromInputStream(is, params), _, params)) finally is.close()
   }
 
   /** loads XML from given InputStream, Reader, sysID, InputSource, or URL. The stream belongs to
    * the caller and is left open. */
-  def load(is: InputStream, params: EffectiveParams): Val.Literal = loadXML(fromInputStream(is, params), parser(params), params)
+  def load(is: InputStream, params: EffectiveParams): Val.Literal =
+    withParser(params)(loadXML(fromInputStream(is, params), _, params))
 
   def load(url: URL, params: EffectiveParams): Val.Literal = {
     val is = url.openStream()
-    try loadXML(fromInputStream(is, params), parser(params), params) finally is.close()
+    try withParser(params)(loadXML(fromInputStream(is, params), _, params)) finally is.close()
   }
 
   /** Loads XML from the given String. */
-  def loadString(string: String, params: EffectiveParams): Val.Literal = loadXML(fromString(string), parser(params), params)
+  def loadString(string: String, params: EffectiveParams): Val.Literal =
+    withParser(params)(loadXML(fromString(string), _, params))
 }
\ No newline at end of file
@@ -0,0 +1,160 @@
+package io.github.jam01.xtrasonnet.plugins.xml
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import io.github.jam01.xtrasonnet.plugins.DefaultXMLPlugin.EffectiveParams
+import org.xml.sax.helpers.AttributesImpl
+import sjsonnet.{Position, Val}
+
+import java.io.{InputStream, Reader}
+import javax.xml.stream.{XMLInputFactory, XMLStreamConstants, XMLStreamException, XMLStreamReader}
+import scala.collection.mutable
+
+/**
+ * Reads the elements found at a path as an Array of records, each converted by [[BadgerFishHandler]]
+ * exactly as it would be were it a document of its own. Only the record being read is ever under
+ * construction and nothing outside of the records is kept, so a document far larger than the heap
+ * reads as long as its records fit.
+ *
+ * The path is the names of the elements from the root down, as written in the document, e.g.
+ * `catalog/product`. Namespaces declared above a record are declared again on it, so that it reads
+ * the same on its own.
+ */
+object XMLRecords {
+  // the SAX parsers' stance: no DTDs at all, and no external entities should one get through
+  private lazy val factory: XMLInputFactory = {
+    val factory = XMLInputFactory.newFactory()
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true)
+    factory.setProperty(XMLInputFactory.IS_COALESCING, false)
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false)
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false)
+    factory
+  }
+
+  /** Reads the records from the given InputStream, which belongs to the caller and is left open. */
+  def load(is: InputStream, path: Seq[String], params: EffectiveParams, pos: Position): Val.Arr = {
+    // JAXP factories make no thread-safety promise
+    val reader = factory.synchronized {
+      params.charset match {
+        case Some(cs) => factory.createXMLStreamReader(is, cs.name())
+        case None => factory.createXMLStreamReader(is)
+      }
+    }
+    try read(reader, path.toArray, params, pos) finally reader.close() // leaves the stream open
+  }
+
+  /** Reads the records from the given Reader, which belongs to the caller and is left open. */
+  def load(r: Reader, path: Seq[String], params: EffectiveParams, pos: Position): Val.Arr = {
+    val reader = factory.synchronized(factory.createXMLStreamReader(r))
+    try read(reader, path.toArray, params, pos) finally reader.close()
+  }
+
+  private def read(reader: XMLStreamReader, path: Array[String], params: EffectiveParams, pos: Position): Val.Arr = {
+    val records = mutable.ArrayBuffer.empty[Val]
+
+    // namespaces declared outside of records, innermost last, and where each open element's begin
+    val inScope = mutable.ArrayBuffer.empty[(String, String)]
+    val declaredFrom = mutable.Stack.empty[Int]
+
+    var depth = 0
+    var matched = 0 // how many of the path's names the open elements match, from the root
+    var handler: BadgerFishHandler = null // the record being read, if any
+
+    while (reader.hasNext) reader.next() match {
+      case XMLStreamConstants.START_ELEMENT =>
+        depth += 1
+        if (handler != null) startElement(reader, handler, params, Nil)
+        else {
+          if (matched == depth - 1 && depth <= path.length && qname(reader) == path(depth - 1)) matched = depth
+
+          if (matched == path.length) {
+            handler = new BadgerFishHandler(params)
+            startElement(reader, handler, params, inScope)
+          } else {
+            declaredFrom.push(inScope.length)
+            var i = 0
+            while (i < reader.getNamespaceCount) {
+              inScope.addOne((prefixOf(reader.getNamespacePrefix(i)), reader.getNamespaceURI(i)))
+              i += 1
+            }
+          }
+        }
+
+      case XMLStreamConstants.END_ELEMENT =>
+        if (handler != null) {
+          handler.endElement(uriOf(reader.getNamespaceURI), reader.getLocalName, qname(reader))
+          if (depth == path.length) {
+            records.addOne(handler.result)
+            handler = null
+            matched -= 1
+          }
+        } else {
+          inScope.dropRightInPlace(inScope.length - declaredFrom.pop())
+          if (matched == depth) matched -= 1
+        }
+        depth -= 1
+
+      case XMLStreamConstants.CHARACTERS | XMLStreamConstants.SPACE =>
+        if (handler != null) handler.characters(reader.getTextCharacters, reader.getTextStart, reader.getTextLength)
+
+      case XMLStreamConstants.CDATA =>
+        if (handler != null) {
+          handler.startCDATA()
+          handler.characters(reader.getTextCharacters, reader.getTextStart, reader.getTextLength)
+          handler.endCDATA()
+        }
+
+      // SUPPORT_DTD=false only skips the declaration; reject it outright, as the SAX parsers do
+      case XMLStreamConstants.DTD => throw new XMLStreamException("DOCTYPE is disallowed", reader.getLocation)
+
+      case _ =>
+    }
+
+    Val.Arr(pos, records.toArray)
+  }
+
+  // replays a START_ELEMENT to the handler as the SAX parser would have reported it
+  private def startElement(reader: XMLStreamReader, handler: BadgerFishHandler, params: EffectiveParams,
+                           inherited: collection.Seq[(String, String)]): Unit = {
+    // inherited first, then the element's own, an inner declaration replacing an outer one
+    val declarations = mutable.LinkedHashMap.empty[String, String]
+    inherited.foreach(declarations.addOne)
+    var i = 0
+    while (i < reader.getNamespaceCount) {
+      declarations.put(prefixOf(reader.getNamespacePrefix(i)), reader.getNamespaceURI(i))
+      i += 1
+    }
+
+    val attrs = new AttributesImpl()
+    if (params.xmlnsAware) declarations.foreach { case (prefix, uri) => handler.startPrefixMapping(prefix, uri) }
+    else declarations.foreach { case (prefix, uri) => // plain attributes to a parser unaware of namespaces
+      attrs.addAttribute("", "", if (prefix.isEmpty) "xmlns" else "xmlns:" + prefix, "CDATA", uri)
+    }
+
+    i = 0
+    while (i < reader.getAttributeCount) {
+      val prefix = prefixOf(reader.getAttributePrefix(i))
+      val local = reader.getAttributeLocalName(i)
+      attrs.addAttribute(uriOf(reader.getAttributeNamespace(i)), local,
+        if (prefix.isEmpty) local else prefix + ":" + local, "CDATA", reader.getAttributeValue(i))
+      i += 1
+    }
+
+    handler.startElement(uriOf(reader.getNamespaceURI), reader.getLocalName, qname(reader), attrs)
+  }
+
+  private def qname(reader: XMLStreamReader): String = {
+    val prefix = prefixOf(reader.getPrefix)
+    if (prefix.isEmpty) reader.getLocalName else prefix + ":" + reader.getLocalName
+  }
+
+  // StAX reports no prefix and no namespace as either null or empty, depending on the implementation
+  private def prefixOf(prefix: String): String = if (prefix == null) "" else prefix
+
+  private def uriOf(uri: String): String = if (uri == null) "" else uri
+}
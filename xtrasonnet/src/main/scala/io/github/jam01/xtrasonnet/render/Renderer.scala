@@ -61,4 +61,9 @@ final case class DeepDelegate[T, V](delegate: Visitor[T, V]) extends Delegate[T,
 object Renderer {
   def bytesRenderer(indent: Int, escapeUnicode: Boolean) = DeepDelegate(ujson.BytesRenderer(indent, escapeUnicode))
   def stringRenderer(indent: Int, escapeUnicode: Boolean) = DeepDelegate(ujson.StringRenderer(indent, escapeUnicode))
+  // both buffer internally and pass their output on as it fills, rather than holding all of it
+  def outputStreamRenderer(out: java.io.OutputStream, indent: Int, escapeUnicode: Boolean) =
+    DeepDelegate(new ujson.BaseByteRenderer(out, indent, escapeUnicode))
+  def writerRenderer(out: java.io.Writer, indent: Int, escapeUnicode: Boolean) =
+    DeepDelegate(new ujson.Renderer(out, indent, escapeUnicode))
 }
@@ -0,0 +1,172 @@
+package io.github.jam01.xtrasonnet;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.Documents;
+import io.github.jam01.xtrasonnet.document.MediaType;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import io.github.jam01.xtrasonnet.spi.PluginException;
+import org.json.JSONException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ContentEncodingTest {
+    private static final MediaType GZIP_JSON = MediaTypes.APPLICATION_JSON.withParameter(MediaTypes.PARAM_ENCODING, "gzip");
+    private static final String ORDERS = """
+            [{"id": 1, "total": 9.5}, {"id": 2, "total": 12}]""";
+
+    private static byte[] gzip(String text) throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (var gz = new GZIPOutputStream(out)) {
+            gz.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void read_gzip() throws IOException, JSONException {
+        var doc = new Transformer("payload")
+                .transform(Document.of(gzip(ORDERS), GZIP_JSON));
+
+        JSONAssert.assertEquals(ORDERS, doc.getContent(), true);
+    }
+
+    @Test
+    public void read_gzip_inputStream_leftOpen() throws IOException, JSONException {
+        var closed = new boolean[1];
+        var in = new ByteArrayInputStream(gzip(ORDERS)) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        var doc = new Transformer("payload").transform(Document.of(in, GZIP_JSON));
+
+        JSONAssert.assertEquals(ORDERS, doc.getContent(), true);
+        assertFalse(closed[0]);
+    }
+
+    @Test
+    public void read_deflate_path(@TempDir Path dir) throws IOException, JSONException {
+        var file = dir.resolve("orders.json.z");
+        try (var out = new DeflaterOutputStream(Files.newOutputStream(file))) {
+            out.write(ORDERS.getBytes(StandardCharsets.UTF_8));
+        }
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(file, MediaTypes.APPLICATION_JSON.withParameter(MediaTypes.PARAM_ENCODING, "deflate")));
+
+        JSONAssert.assertEquals(ORDERS, doc.getContent(), true);
+    }
+
+    @Test
+    public void read_gzip_path_invalidHeader(@TempDir Path dir) throws IOException {
+        var file = Files.writeString(dir.resolve("orders.json.gz"), ORDERS);
+
+        var thrown = assertThrows(PluginException.class, () -> new Transformer("payload")
+                .transform(Document.of(file, GZIP_JSON)));
+
+        assertEquals("Unable to read gzip content", thrown.getMessage());
+        assertInstanceOf(ZipException.class, thrown.getCause());
+    }
+
+    @Test
+    public void write_gzip_outputStream() throws IOException, JSONException {
+        var closed = new boolean[1];
+        var out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        new Transformer("[{ id: i } for i in std.range(1, 3)]")
+                .transformTo(Documents.Null(), Collections.emptyMap(), GZIP_JSON, out);
+
+        JSONAssert.assertEquals("""
+                [{"id": 1}, {"id": 2}, {"id": 3}]""", gunzip(out.toByteArray()), true);
+        assertFalse(closed[0]);
+    }
+
+    @Test
+    public void write_gzip_failure_leavesStreamUnfinished() {
+        var out = new ByteArrayOutputStream();
+
+        assertThrows(XtrasonnetEvaluationException.class, () -> new Transformer("[{ id: 1 }, error 'boom']")
+                .transformTo(Documents.Null(), Collections.emptyMap(), GZIP_JSON, out));
+
+        // no trailer, so the part written cannot pass for the whole
+        assertThrows(EOFException.class, () -> gunzip(out.toByteArray()));
+    }
+
+    @Test
+    public void write_gzip_bytes_roundTrips() throws IOException, JSONException {
+        var written = new Transformer("payload")
+                .transform(Document.of(gzip(ORDERS), GZIP_JSON), Collections.emptyMap(), GZIP_JSON, byte[].class);
+
+        assertEquals(GZIP_JSON, written.getMediaType());
+        JSONAssert.assertEquals(ORDERS, gunzip(written.getContent()), true);
+    }
+
+    @Test
+    public void write_gzip_writer_fails() {
+        assertThrows(Exception.class, () -> new Transformer("{}")
+                .transformTo(Documents.Null(), Collections.emptyMap(), GZIP_JSON, new StringWriter()));
+    }
+
+    @Test
+    public void identity_roundTrips() throws IOException, JSONException {
+        var identity = MediaTypes.APPLICATION_JSON.withParameter(MediaTypes.PARAM_ENCODING, "identity");
+        var transformer = new Transformer("payload");
+
+        var written = transformer.transform(Document.of(ORDERS, identity), Collections.emptyMap(), identity, String.class);
+        JSONAssert.assertEquals(ORDERS, written.getContent(), true);
+
+        var out = new ByteArrayOutputStream();
+        transformer.transformTo(Document.of(ORDERS, identity), Collections.emptyMap(), identity, out);
+        JSONAssert.assertEquals(ORDERS, out.toString(StandardCharsets.UTF_8), true);
+
+        var writer = new StringWriter();
+        transformer.transformTo(Document.of(ORDERS, identity), Collections.emptyMap(), identity, writer);
+        JSONAssert.assertEquals(ORDERS, writer.toString(), true);
+    }
+
+    @Test
+    public void unsupportedEncoding_fails() {
+        assertThrows(Exception.class, () -> new Transformer("payload")
+                .transform(Document.of(new byte[0], MediaTypes.APPLICATION_JSON.withParameter(MediaTypes.PARAM_ENCODING, "br"))));
+    }
+}
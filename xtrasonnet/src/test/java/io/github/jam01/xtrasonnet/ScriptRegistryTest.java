@@ -0,0 +1,97 @@
+package io.github.jam01.xtrasonnet;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ScriptRegistryTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    public void reloadsChangedScript() throws Exception {
+        Path script = dir.resolve("script.xtr");
+        write(script, "{ version: 1 }");
+        String location = "file:" + script;
+
+        try (var registry = new ScriptRegistry(Duration.ofMillis(20))) {
+            assertEquals("{\"version\":1}", transform(registry, location));
+
+            write(script, "{ version: 2 }");
+            awaitOutput(registry, location, "{\"version\":2}");
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    public void reloadsChangedImport() throws Exception {
+        Path lib = dir.resolve("lib.libsonnet");
+        write(lib, "{ version: 1 }");
+        Path script = dir.resolve("script.xtr");
+        write(script, "(import 'file:" + lib + "')");
+        String location = "file:" + script;
+
+        try (var registry = new ScriptRegistry(Duration.ofMillis(20))) {
+            assertEquals("{\"version\":1}", transform(registry, location));
+
+            write(lib, "{ version: 2 }");
+            awaitOutput(registry, location, "{\"version\":2}");
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    public void keepsPreviousVersionWhenReloadFails() throws Exception {
+        Path script = dir.resolve("script.xtr");
+        write(script, "{ version: 1 }");
+        String location = "file:" + script;
+
+        try (var registry = new ScriptRegistry(Duration.ofMillis(20))) {
+            assertEquals("{\"version\":1}", transform(registry, location));
+
+            write(script, "{ version: ");
+            Thread.sleep(200); // several checks' worth
+            assertEquals("{\"version\":1}", transform(registry, location));
+
+            write(script, "{ version: 3 }");
+            awaitOutput(registry, location, "{\"version\":3}");
+        }
+    }
+
+    private static String transform(ScriptRegistry registry, String location) {
+        return registry.transform(location, Document.of("{}", MediaTypes.APPLICATION_JSON)).getContent();
+    }
+
+    private static void awaitOutput(ScriptRegistry registry, String location, String expected) throws InterruptedException {
+        while (!expected.equals(transform(registry, location))) {
+            Thread.sleep(10);
+        }
+    }
+
+    // bumps the timestamp explicitly: two writes inside the filesystem's granularity may otherwise
+    // share one, and every version written here has the same length
+    private static void write(Path file, String content) throws IOException {
+        long previous = Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : 0;
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, java.nio.file.attribute.FileTime.fromMillis(
+                Math.max(System.currentTimeMillis(), previous + 1000)));
+    }
+}
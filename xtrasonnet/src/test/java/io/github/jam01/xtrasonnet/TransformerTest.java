@@ -39,7 +39,11 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.skyscreamer.jsonassert.JSONAssert;
 
 import javax.net.ssl.HttpsURLConnection;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
@@ -302,4 +306,36 @@ public class TransformerTest {
         var res = Transformer.builder(imports).withLibrary(new LibraryTest.TestLib()).build().transform(Documents.Null());
         JSONAssert.assertEquals(resourceAsString("imports/extended-output.json"), res.getContent(), true);
     }
+
+    @Test
+    public void transformTo_outputStream() throws JSONException {
+        var out = new ByteArrayOutputStream();
+        var written = new Transformer("{ hello: payload.name }")
+                .transformTo(Document.of("{\"name\": \"world\"}", MediaTypes.APPLICATION_JSON),
+                        Collections.emptyMap(), MediaTypes.APPLICATION_JSON, out);
+
+        JSONAssert.assertEquals("{\"hello\": \"world\"}", out.toString(StandardCharsets.UTF_8), true);
+        assertEquals(MediaTypes.APPLICATION_JSON, written);
+    }
+
+    @Test
+    public void transformTo_writer() {
+        var out = new StringWriter();
+        var written = new Transformer("/** xtrasonnet\noutput text/csv\n*/\n[{ color: 'blue' }, { color: 'red' }]")
+                .transformTo(Documents.Null(), Collections.emptyMap(), MediaTypes.ANY, out);
+
+        assertEquals("color\r\nblue\r\nred\r\n", out.toString());
+        assertTrue(MediaTypes.TEXT_CSV.equalsTypeAndSubtype(written)); // from the header
+    }
+
+    @Test
+    public void transformTo_channel() throws Exception {
+        var out = new ByteArrayOutputStream();
+        var channel = Channels.newChannel(out);
+        new Transformer("'hello'")
+                .transformTo(Documents.Null(), Collections.emptyMap(), MediaTypes.TEXT_PLAIN, channel);
+
+        assertEquals("hello", out.toString(StandardCharsets.UTF_8));
+        assertTrue(channel.isOpen());
+    }
 }
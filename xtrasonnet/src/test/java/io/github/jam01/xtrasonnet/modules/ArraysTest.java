@@ -41,6 +41,8 @@ public class ArraysTest {
     @Test
     public void drop() {
         Assertions.assertEquals(TestUtils.transform("[4, 5]"), TestUtils.transform("xtr.arrays.drop([1, 2, 3, 4, 5], 3)"));
+        Assertions.assertEquals(TestUtils.transform("[]"), TestUtils.transform("xtr.arrays.drop([1, 2], 5)"));
+        Assertions.assertEquals(TestUtils.transform("[3]"), TestUtils.transform("xtr.arrays.drop(xtr.map([0, 0, 3], function(item) if item == 0 then error 'evaluated' else item), 2)"));
     }
 
     @Test
@@ -73,6 +75,7 @@ public class ArraysTest {
     public void find() {
         Assertions.assertEquals(TestUtils.transform("[4]"), TestUtils.transform("xtr.arrays.find([1, 2, 3, 4, 5], function(item) item * 3 > 10)"));
         Assertions.assertEquals(TestUtils.transform("[3]"), TestUtils.transform("xtr.arrays.find([1, 2, 3, 4, 5], function(item, idx) item * (3 + idx) > 10)"));
+        Assertions.assertEquals(TestUtils.transform("[2]"), TestUtils.transform("xtr.arrays.find(xtr.map([1, 2, 0], function(item) if item == 0 then error 'evaluated' else item), function(item, idx) item > 1)"));
     }
 
     @Test
@@ -126,6 +129,10 @@ public class ArraysTest {
     @Test
     public void take() {
         Assertions.assertEquals(TestUtils.transform("[1, 2, 3]"), TestUtils.transform("xtr.arrays.take([1, 2, 3, 4, 5], 3)"));
+        Assertions.assertEquals(TestUtils.transform("[1, 2]"), TestUtils.transform("xtr.arrays.take([1, 2], 5)"));
+        Assertions.assertEquals(TestUtils.transform("[]"), TestUtils.transform("xtr.arrays.take([1, 2], -1)"));
+        // filter tests every element, but the map after it only computes those taken
+        Assertions.assertEquals(TestUtils.transform("[1, 2]"), TestUtils.transform("xtr.arrays.take(xtr.map(xtr.filter([1, 4, 2, 0], function(item) item != 4), function(item) if item == 0 then error 'evaluated' else item), 2)"));
     }
 
     @Test
@@ -314,6 +314,13 @@ public class RootTest {
         Assertions.assertEquals(TestUtils.transform("[0, 2, 6, 12]"), TestUtils.transform("xtr.map([1, 2, 3, 4], function(item, idx) item * idx)"));
     }
 
+    @Test
+    public void map_evaluatesOnlyElementsUsed() {
+        Assertions.assertEquals(TestUtils.transform("[10, 20]"), TestUtils.transform("""
+                local mapped = xtr.map([1, 2, 0], function(item) if item == 0 then error 'evaluated' else item * 10);
+                xtr.arrays.take(xtr.map(mapped, function(item, idx) item + idx * 0), 2)"""));
+    }
+
     @Test
     public void mapObject() {
 
@@ -486,6 +493,15 @@ public class RootTest {
     @Test
     public void range() {
         Assertions.assertEquals(TestUtils.transform("[1, 2, 3, 4, 5]"), TestUtils.transform("xtr.range(1, 5)"));
+        Assertions.assertEquals(TestUtils.transform("[]"), TestUtils.transform("xtr.range(5, 1)"));
+        Assertions.assertEquals(TestUtils.transform("[2147483647]"), TestUtils.transform("xtr.range(2147483647, 2147483647)"));
+    }
+
+    @Test
+    public void range_rejectsMoreElementsThanAnArrayHolds() {
+        var thrown = Assertions.assertThrows(XtrasonnetException.class, () -> TestUtils.transform("xtr.range(-2147483648, 2147483647)"));
+        Assertions.assertTrue(thrown.getMessage().contains("Cannot make a range of 4294967296 elements, from -2147483648 to 2147483647"),
+                "expected a message naming the size but was <" + thrown.getMessage() + ">");
     }
 
     @Test
@@ -0,0 +1,171 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import io.github.jam01.xtrasonnet.Transformer;
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.Documents;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.json.JSONException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+public class AvroPluginTest {
+    private static final String ORDER_SCHEMA = "classpath:order.avsc";
+
+    private final String order = """
+            {
+                "id": 1001,
+                "customer": "jane",
+                "status": "SHIPPED",
+                "placed": "2024-05-06T07:08:09Z",
+                "total": 12.5,
+                "note": null,
+                "lines": [{"sku": "a-1", "qty": 2}, {"sku": "b-2", "qty": 1}]
+            }""";
+
+    @Test
+    public void write_read_roundTrips() throws JSONException {
+        var avro = MediaTypes.APPLICATION_AVRO.withParameter(DefaultAvroPlugin.PARAM_SCHEMA, ORDER_SCHEMA);
+
+        var written = new Transformer(order)
+                .transform(Documents.Null(), Collections.emptyMap(), avro, byte[].class);
+        Assertions.assertEquals(MediaTypes.APPLICATION_AVRO, written.getMediaType());
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(written.getContent(), avro));
+
+        JSONAssert.assertEquals(order, doc.getContent(), true);
+    }
+
+    @Test
+    public void write_omittedNullableField() throws JSONException {
+        var avro = MediaTypes.APPLICATION_AVRO.withParameter(DefaultAvroPlugin.PARAM_SCHEMA, ORDER_SCHEMA);
+
+        var written = new Transformer("""
+                { id: 1, customer: 'joe', status: 'OPEN', placed: 0, total: 0, lines: [] }""")
+                .transform(Documents.Null(), Collections.emptyMap(), avro, byte[].class);
+
+        var doc = new Transformer("payload.note")
+                .transform(Document.of(written.getContent(), avro));
+
+        Assertions.assertEquals("null", doc.getContent());
+    }
+
+    @Test
+    public void read_container_withRegisteredSchema() throws IOException, JSONException {
+        Schema schema = SchemaBuilder.record("Point").fields()
+                .requiredInt("x").requiredInt("y")
+                .endRecord();
+
+        var out = new ByteArrayOutputStream();
+        try (var writer = new DataFileWriter<GenericRecord>(new GenericDatumWriter<>(schema))) {
+            writer.create(schema, out);
+            for (int i = 0; i < 3; i++) {
+                GenericRecord point = new GenericData.Record(schema);
+                point.put("x", i);
+                point.put("y", i * 10);
+                writer.append(point);
+            }
+        }
+
+        // containers carry their schema
+        var doc = new Transformer("payload")
+                .transform(Document.of(new ByteArrayInputStream(out.toByteArray()), MediaTypes.APPLICATION_AVRO));
+        JSONAssert.assertEquals("""
+                [{"x": 0, "y": 0}, {"x": 1, "y": 10}, {"x": 2, "y": 20}]""", doc.getContent(), true);
+
+        // and can be written with one looked up by name
+        var transformer = Transformer.builder("payload")
+                .extendPlugins(plugins -> plugins.add(0, new DefaultAvroPlugin(Map.of("point", schema))))
+                .build();
+        var container = MediaTypes.APPLICATION_AVRO
+                .withParameter(DefaultAvroPlugin.PARAM_SCHEMA, "point")
+                .withParameter(DefaultAvroPlugin.PARAM_CONTAINER, "true");
+        var written = transformer.transform(Document.of(out.toByteArray(), MediaTypes.APPLICATION_AVRO),
+                Collections.emptyMap(), container, byte[].class);
+
+        doc = new Transformer("payload")
+                .transform(Document.of(written.getContent(), MediaTypes.APPLICATION_AVRO));
+        JSONAssert.assertEquals("""
+                [{"x": 0, "y": 0}, {"x": 1, "y": 10}, {"x": 2, "y": 20}]""", doc.getContent(), true);
+    }
+
+    @Test
+    public void read_container_leavesInputStreamOpen() throws IOException, JSONException {
+        Schema schema = SchemaBuilder.record("Point").fields()
+                .requiredInt("x")
+                .endRecord();
+
+        var out = new ByteArrayOutputStream();
+        try (var writer = new DataFileWriter<GenericRecord>(new GenericDatumWriter<>(schema))) {
+            writer.create(schema, out);
+            GenericRecord point = new GenericData.Record(schema);
+            point.put("x", 1);
+            writer.append(point);
+        }
+        var closed = new boolean[1];
+        var is = new ByteArrayInputStream(out.toByteArray()) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(is, MediaTypes.APPLICATION_AVRO));
+
+        JSONAssert.assertEquals("""
+                [{"x": 1}]""", doc.getContent(), true);
+        Assertions.assertFalse(closed[0], "the stream is the caller's to close");
+    }
+
+    @Test
+    public void write_unionOfRecords_picksRecordByFields() throws JSONException {
+        Schema point = SchemaBuilder.record("Point").fields().requiredInt("x").endRecord();
+        Schema plane = SchemaBuilder.record("Plane").fields().requiredInt("x").requiredInt("y").endRecord();
+        Schema circle = SchemaBuilder.record("Circle").fields().requiredInt("r").endRecord();
+        Schema shapes = SchemaBuilder.array().items(Schema.createUnion(point, plane, circle));
+
+        var transformer = Transformer.builder("payload")
+                .extendPlugins(plugins -> plugins.add(0, new DefaultAvroPlugin(Map.of("shapes", shapes))))
+                .build();
+        var avro = MediaTypes.APPLICATION_AVRO.withParameter(DefaultAvroPlugin.PARAM_SCHEMA, "shapes");
+
+        // Point holds each object with an x, but only Plane has a field for y, and only Circle holds r
+        var written = transformer.transform(Document.of("[{\"x\": 1}, {\"x\": 2, \"y\": 3}, {\"r\": 4}]", MediaTypes.APPLICATION_JSON),
+                Collections.emptyMap(), avro, byte[].class);
+
+        var doc = transformer.transform(Document.of(written.getContent(), avro));
+        JSONAssert.assertEquals("""
+                [{"x": 1}, {"x": 2, "y": 3}, {"r": 4}]""", doc.getContent(), true);
+    }
+
+    @Test
+    public void read_datumWithoutSchemaFails() {
+        var thrown = Assertions.assertThrows(Exception.class, () -> new Transformer("payload")
+                .transform(Document.of(new byte[]{2, 4}, MediaTypes.APPLICATION_AVRO)));
+
+        var chain = new StringBuilder();
+        for (Throwable t = thrown; t != null; t = t.getCause()) chain.append(t.getMessage()).append(" | ");
+        Assertions.assertTrue(chain.toString().contains("'schema' parameter"), chain.toString());
+    }
+}
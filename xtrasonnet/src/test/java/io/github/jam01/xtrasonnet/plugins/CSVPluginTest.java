@@ -12,12 +12,16 @@ import io.github.jam01.xtrasonnet.document.Documents;
 import io.github.jam01.xtrasonnet.document.MediaTypes;
 import org.json.JSONException;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.skyscreamer.jsonassert.JSONAssert;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -60,6 +64,14 @@ public class CSVPluginTest {
         assertEquals(MediaTypes.APPLICATION_JSON, doc.getMediaType());
     }
 
+    @Test
+    public void read_headerOnly() throws JSONException {
+        var doc = new Transformer("payload")
+                .transform(Document.of("color,type\r\n", MediaTypes.TEXT_CSV));
+
+        JSONAssert.assertEquals("[]", doc.getContent(), true);
+    }
+
     @Test
     public void read_noheader() throws JSONException {
         var doc = new Transformer("payload")
@@ -124,6 +136,20 @@ public class CSVPluginTest {
         assertEquals(MediaTypes.APPLICATION_JSON, doc.getMediaType());
     }
 
+    @Test
+    public void read_path(@TempDir Path dir) throws JSONException, IOException {
+        var file = Files.writeString(dir.resolve("cars.csv"), cars);
+        var doc = new Transformer("payload")
+                .transform(Document.of(file, MediaTypes.TEXT_CSV));
+
+        JSONAssert.assertEquals(carsJson, doc.getContent(), true);
+
+        doc = new Transformer("payload")
+                .transform(Document.of(file.toFile(), MediaTypes.TEXT_CSV));
+
+        JSONAssert.assertEquals(carsJson, doc.getContent(), true);
+    }
+
     @Test
     public void read_byteArray() throws JSONException {
         var doc = new Transformer("payload")
@@ -178,6 +204,28 @@ public class CSVPluginTest {
         assertEquals(MediaTypes.TEXT_CSV, doc.getMediaType());
     }
 
+    @Test
+    public void write_columnsPerResult() {
+        // same parameters, different columns: each result gets a schema of its own
+        var first = new Transformer("[{ color: 'blue' }]")
+                .transform(Documents.Null(), Collections.emptyMap(), MediaTypes.TEXT_CSV);
+        var second = new Transformer("[{ type: 'bus' }]")
+                .transform(Documents.Null(), Collections.emptyMap(), MediaTypes.TEXT_CSV);
+
+        assertEquals("color\r\nblue\r\n", first.getContent());
+        assertEquals("type\r\nbus\r\n", second.getContent());
+    }
+
+    @Test
+    public void write_columnsPastTheCache() {
+        // more record shapes than the plugin keeps schemas for: those past it are still written right
+        var transformer = new Transformer("[{ [payload]: 'v' }]");
+        for (int i = 0; i < 200; i++) {
+            var doc = transformer.transform(Document.of("c" + i, MediaTypes.TEXT_PLAIN), Collections.emptyMap(), MediaTypes.TEXT_CSV);
+            assertEquals("c" + i + "\r\nv\r\n", doc.getContent());
+        }
+    }
+
     @Test
     public void write_object_noheader() throws JSONException {
         var doc = new Transformer(carsJson)
@@ -10,17 +10,22 @@ package io.github.jam01.xtrasonnet.plugins;
 import io.github.jam01.xtrasonnet.TestUtils;
 import io.github.jam01.xtrasonnet.Transformer;
 import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.Documents;
 import io.github.jam01.xtrasonnet.document.MediaTypes;
+import io.github.jam01.xtrasonnet.spi.PluginException;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.json.JSONException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.skyscreamer.jsonassert.JSONAssert;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Collections;
 
 public class ExcelPluginTest {
     private final String simple_xlsx_json = """
@@ -163,6 +168,34 @@ public class ExcelPluginTest {
                 [[[true, false, "text", 2.5, "2019-07-10T00:00"]]]""", doc.getContent(), true);
     }
 
+    @Test
+    public void read_xlsx_formulasAndSparseRows() throws Exception {
+        byte[] bytes;
+        try (var wb = new XSSFWorkbook(); var out = new ByteArrayOutputStream()) {
+            var sheet = wb.createSheet("s1");
+            var first = sheet.createRow(0);
+            first.createCell(0).setCellValue("shared");
+            first.createCell(2).setCellValue("shared"); // B left out
+            var second = sheet.createRow(2); // row 2 left out
+            second.createCell(0).setCellFormula("2*3");
+            second.createCell(1).setCellFormula("CONCATENATE(\"a\",\"b\")");
+            second.createCell(2).setCellFormula("1=1");
+            wb.getCreationHelper().createFormulaEvaluator().evaluateAll();
+
+            wb.write(out);
+            bytes = out.toByteArray();
+        }
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(new ByteArrayInputStream(bytes), MediaTypes.APPLICATION_EXCEL));
+
+        JSONAssert.assertEquals("""
+                {"s1": [
+                    {"A": "shared", "C": "shared"},
+                    {"A": 6, "B": "ab", "C": true}
+                ]}""", doc.getContent(), true);
+    }
+
     @Test
     public void read_unreadableContentFailsWithPluginException() {
         var garbage = new ByteArrayInputStream("this is not a spreadsheet".getBytes(StandardCharsets.UTF_8));
@@ -178,6 +211,102 @@ public class ExcelPluginTest {
                 "expected the declared PluginException naming the failure, got: " + chain);
     }
 
+    @Test
+    public void read_xlsx_selection() throws JSONException {
+        var doc = new Transformer("payload")
+                .transform(Document.of(TestUtils.resourceAsFile("simple.xlsx"), MediaTypes.APPLICATION_EXCEL
+                        .withParameter(DefaultExcelPlugin.PARAM_SHEETS, "Sheet2, Sheet3")
+                        .withParameter(DefaultExcelPlugin.PARAM_RANGE, "B2:D4")
+                        .withParameter(DefaultExcelPlugin.PARAM_COLUMNS, "B,D")
+                        .withParameter(DefaultExcelPlugin.PARAM_MAX_ROWS, "2")));
+
+        JSONAssert.assertEquals("""
+                {
+                    "Sheet2": [{"B":"b2","D":"d2"}, {"B":"b3","D":"d3"}],
+                    "Sheet3": [{"B":"b2","D":"d2"}, {"B":"b3","D":"d3"}]
+                }""", doc.getContent(), true);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "range   | A0:C3 | Invalid spreadsheet range 'A0:C3', rows are numbered from 1 to 1048576",
+            "range   | C5:A1 | Invalid spreadsheet range 'C5:A1', its end is before its start",
+            "range   | A5:C1 | Invalid spreadsheet range 'A5:C1', its end is before its start",
+            "maxrows | ten   | Invalid spreadsheet maxrows 'ten', expected a whole number of at least 0",
+            "maxrows | -1    | Invalid spreadsheet maxrows '-1', expected a whole number of at least 0"
+    })
+    public void read_invalidSelectionFails(String param, String value, String message) {
+        var thrown = Assertions.assertThrows(PluginException.class, () -> new Transformer("payload")
+                .transform(Document.of(TestUtils.resourceAsFile("simple.xlsx"), MediaTypes.APPLICATION_EXCEL
+                        .withParameter(param, value))));
+
+        Assertions.assertEquals(message, thrown.getMessage());
+    }
+
+    @Test
+    public void read_xls_selection_matrix() throws JSONException {
+        var doc = Transformer.builder("payload")
+                .configurePlugins(plugins -> {
+                    plugins.add(new MatrixExcelPlugin());
+                    plugins.add(new DefaultJSONPlugin());
+                })
+                .build()
+                .transform(Document.of(TestUtils.resourceAsFile("simple.xls"), MediaTypes.APPLICATION_EXCEL
+                        .withParameter(DefaultExcelPlugin.PARAM_SHEETS, "Sheet1")
+                        .withParameter(DefaultExcelPlugin.PARAM_RANGE, "C4")));
+
+        JSONAssert.assertEquals("""
+                [[["c4","d4","e4"],["c5","d5","e5"]]]""", doc.getContent(), true);
+    }
+
+    @Test
+    public void write_xlsx_roundTrips() throws JSONException {
+        var xlsx = new Transformer("""
+                {
+                    people: [
+                        { A: 'name', B: 'age', C: 'member' },
+                        { A: 'alice', B: 30, C: true },
+                        null,
+                        ['bob', null, false]
+                    ]
+                }""")
+                .transform(Documents.Null(), Collections.emptyMap(),
+                        MediaTypes.APPLICATION_OOXML_SPREADSHEET_SHEET.withParameter(DefaultExcelPlugin.PARAM_WINDOW, "1"),
+                        byte[].class);
+        Assertions.assertEquals(MediaTypes.APPLICATION_OOXML_SPREADSHEET_SHEET, xlsx.getMediaType());
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(new ByteArrayInputStream((byte[]) xlsx.getContent()), MediaTypes.APPLICATION_EXCEL));
+
+        JSONAssert.assertEquals("""
+                {"people": [
+                    {"A": "name", "B": "age", "C": "member"},
+                    {"A": "alice", "B": 30, "C": true},
+                    {},
+                    {"A": "bob", "C": false}
+                ]}""", doc.getContent(), true);
+    }
+
+    @Test
+    public void write_invalidWindowFails() {
+        var thrown = Assertions.assertThrows(PluginException.class, () -> new Transformer("{ s: [{ A: 1 }] }")
+                .transform(Documents.Null(), Collections.emptyMap(),
+                        MediaTypes.APPLICATION_OOXML_SPREADSHEET_SHEET.withParameter(DefaultExcelPlugin.PARAM_WINDOW, "lots"),
+                        byte[].class));
+
+        Assertions.assertEquals("Invalid spreadsheet window 'lots', expected a whole number of at least 1", thrown.getMessage());
+    }
+
+    @Test
+    public void write_rejectsNestedCells() {
+        var thrown = Assertions.assertThrows(Exception.class, () -> new Transformer("[{ A: [1] }]")
+                .transform(Documents.Null(), Collections.emptyMap(), MediaTypes.APPLICATION_OOXML_SPREADSHEET_SHEET, byte[].class));
+
+        var chain = new StringBuilder();
+        for (Throwable t = thrown; t != null; t = t.getCause()) chain.append(t.getMessage()).append(" | ");
+        Assertions.assertTrue(chain.toString().contains("cell A1"), chain.toString());
+    }
+
     /**
      * MatrixExcelPlugin is not part of DataFormatService.DEFAULT and registers the same media type
      * as DefaultExcelPlugin, so it has to be configured as the only Excel reader to be reachable.
@@ -0,0 +1,132 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import io.github.jam01.xtrasonnet.Transformer;
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.Documents;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import io.github.jam01.xtrasonnet.spi.PluginException;
+import org.json.JSONException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+public class FixedWidthPluginTest {
+    private static final String LAYOUT = "classpath:fixedwidth-layout.json";
+
+    private final String records = """
+            00042Jane      00012550 A1
+               -7 Bob      -0000100 B\s
+
+            00003
+            """;
+
+    @Test
+    public void read() throws JSONException {
+        var doc = new Transformer("payload")
+                .transform(Document.of(records, MediaTypes.TEXT_FIXED_WIDTH.withParameter(DefaultFixedWidthPlugin.PARAM_LAYOUT, LAYOUT)));
+
+        JSONAssert.assertEquals("""
+                [
+                    {"id": 42, "name": "Jane", "amount": 125.5, "code": "A1"},
+                    {"id": -7, "name": " Bob", "amount": -1, "code": "B "},
+                    {"id": 3, "name": "", "amount": null, "code": ""}
+                ]""", doc.getContent(), true);
+    }
+
+    @Test
+    public void read_undelimited() throws JSONException {
+        var doc = new Transformer("payload")
+                .transform(Document.of("00001a         00000001 XYZ00002b         00000002 XYZ\n",
+                        MediaTypes.TEXT_FIXED_WIDTH
+                                .withParameter(DefaultFixedWidthPlugin.PARAM_LAYOUT, LAYOUT)
+                                .withParameter(DefaultFixedWidthPlugin.PARAM_DELIMITED, "false")));
+
+        JSONAssert.assertEquals("""
+                [
+                    {"id": 1, "name": "a", "amount": 0.01, "code": "XYZ"},
+                    {"id": 2, "name": "b", "amount": 0.02, "code": "XYZ"}
+                ]""", doc.getContent(), true);
+    }
+
+    @Test
+    public void read_invalidNumber() {
+        var thrown = Assertions.assertThrows(Exception.class, () -> new Transformer("payload")
+                .transform(Document.of("000x1\n", MediaTypes.TEXT_FIXED_WIDTH.withParameter(DefaultFixedWidthPlugin.PARAM_LAYOUT, LAYOUT))));
+
+        var chain = new StringBuilder();
+        for (Throwable t = thrown; t != null; t = t.getCause()) chain.append(t.getMessage()).append(" | ");
+        Assertions.assertTrue(chain.toString().contains("Invalid integer '000x1' in column id of record 1"), chain.toString());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"+", "-", "  + ", "+-1"})
+    public void read_signWithoutDigits(String id) {
+        var thrown = Assertions.assertThrows(PluginException.class, () -> new Transformer("payload")
+                .transform(Document.of(String.format("%-5s%n", id), MediaTypes.TEXT_FIXED_WIDTH.withParameter(DefaultFixedWidthPlugin.PARAM_LAYOUT, LAYOUT))));
+
+        Assertions.assertEquals("Invalid integer '" + id.trim() + "' in column id of record 1", thrown.getMessage());
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "{\"length\": 8, \"columns\": [{\"name\": \"a\", \"length\": 5}, {\"name\": \"b\", \"length\": 5}]}"
+                    + "| has a length of 8, shorter than its columns, which end at 10",
+            "{\"columns\": [{\"name\": \"a\", \"length\": 5}, {\"name\": \"b\", \"offset\": 3, \"length\": 5}]}"
+                    + "| has overlapping columns a [0, 5) and b [3, 8)",
+            "{\"columns\": [{\"name\": \"b\", \"offset\": 4, \"length\": 2}, {\"name\": \"a\", \"offset\": 0, \"length\": 5}]}"
+                    + "| has overlapping columns a [0, 5) and b [4, 6)",
+            "{\"columns\": [{\"name\": \"a\", \"offset\": -1, \"length\": 5}]}"
+                    + "| has an invalid column at 0; each needs a name, an offset of zero or more, and a length greater than zero"
+    })
+    public void layout_invalid(String layout, String problem, @TempDir Path dir) throws IOException {
+        var ref = "file:" + Files.writeString(dir.resolve("layout.json"), layout);
+
+        var thrown = Assertions.assertThrows(PluginException.class, () -> new Transformer("payload")
+                .transform(Document.of("00001\n", MediaTypes.TEXT_FIXED_WIDTH.withParameter(DefaultFixedWidthPlugin.PARAM_LAYOUT, ref))));
+
+        Assertions.assertEquals("Fixed-width layout " + ref + " " + problem.trim(), thrown.getMessage());
+    }
+
+    @Test
+    public void write() {
+        var doc = new Transformer("""
+                [
+                    { id: 42, name: 'Jane', amount: 125.5, code: 'A1', ignored: true },
+                    { id: -7, name: 'Bartholomew-Smith', amount: -1 },
+                ]""")
+                .transform(Documents.Null(), Collections.emptyMap(),
+                        MediaTypes.TEXT_FIXED_WIDTH.withParameter(DefaultFixedWidthPlugin.PARAM_LAYOUT, LAYOUT), String.class);
+
+        Assertions.assertEquals("""
+                00042Jane      00012550 A1\s
+                -0007Bartholome-0000100   \s
+                """, doc.getContent());
+    }
+
+    @Test
+    public void write_numberTooWide() {
+        var thrown = Assertions.assertThrows(Exception.class, () -> new Transformer("[{ id: 123456 }]")
+                .transform(Documents.Null(), Collections.emptyMap(),
+                        MediaTypes.TEXT_FIXED_WIDTH.withParameter(DefaultFixedWidthPlugin.PARAM_LAYOUT, LAYOUT), String.class));
+
+        var chain = new StringBuilder();
+        for (Throwable t = thrown; t != null; t = t.getCause()) chain.append(t.getMessage()).append(" | ");
+        Assertions.assertTrue(chain.toString().contains("Cannot write 123456 in column id of 5 characters"), chain.toString());
+    }
+}
@@ -14,8 +14,12 @@ import io.github.jam01.xtrasonnet.document.MediaTypes;
 import org.json.JSONException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.skyscreamer.jsonassert.JSONAssert;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
 
 public class JSONPluginTest {
@@ -33,6 +37,20 @@ public class JSONPluginTest {
         Assertions.assertEquals(MediaTypes.APPLICATION_JSON, doc.getMediaType());
     }
 
+    @Test
+    public void read_path(@TempDir Path dir) throws JSONException, IOException {
+        var file = Files.writeString(dir.resolve("foobar.json"), foobar);
+        var doc = new Transformer("payload")
+                .transform(Document.of(file, MediaTypes.APPLICATION_JSON));
+
+        JSONAssert.assertEquals(foobar, doc.getContent(), true);
+
+        doc = new Transformer("payload")
+                .transform(Document.of(file.toFile(), MediaTypes.APPLICATION_JSON));
+
+        JSONAssert.assertEquals(foobar, doc.getContent(), true);
+    }
+
     @Test
     public void read_null() throws JSONException {
         var doc = new Transformer("payload")
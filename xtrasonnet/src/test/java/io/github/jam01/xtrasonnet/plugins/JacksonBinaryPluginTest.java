@@ -0,0 +1,118 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import io.github.jam01.xtrasonnet.Transformer;
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.Documents;
+import io.github.jam01.xtrasonnet.document.MediaType;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import org.json.JSONException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/** The formats read and written through {@link BaseJacksonBinaryPlugin}, each against its own Jackson mapper. */
+public class JacksonBinaryPluginTest {
+    private final String json = """
+            {"str": "value", "int": 42, "dbl": 2.5, "bool": true, "nil": null, "arr": [1, "two", {}]}""";
+
+    static Stream<Arguments> formats() {
+        return Stream.of(
+                Arguments.of(MediaTypes.APPLICATION_CBOR, new CBORMapper()),
+                Arguments.of(MediaTypes.APPLICATION_SMILE, new SmileMapper()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    public void read(MediaType mediaType, ObjectMapper mapper) throws IOException, JSONException {
+        byte[] bytes = mapper.writeValueAsBytes(Map.of("str", "value", "arr", List.of(1, "two", true)));
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(bytes, mediaType));
+
+        JSONAssert.assertEquals("""
+                {"str": "value", "arr": [1, "two", true]}""", doc.getContent(), true);
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    public void read_directByteBuffer(MediaType mediaType, ObjectMapper mapper) throws IOException, JSONException {
+        byte[] bytes = mapper.writeValueAsBytes(Map.of("str", "value"));
+        var buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(buffer, mediaType));
+
+        JSONAssert.assertEquals("""
+                {"str": "value"}""", doc.getContent(), true);
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    public void read_leavesInputStreamOpen(MediaType mediaType, ObjectMapper mapper) throws IOException, JSONException {
+        var closed = new boolean[1];
+        var is = new ByteArrayInputStream(mapper.writeValueAsBytes(Map.of("str", "value"))) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(is, mediaType));
+
+        JSONAssert.assertEquals("""
+                {"str": "value"}""", doc.getContent(), true);
+        Assertions.assertFalse(closed[0], "the stream is the caller's to close");
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    public void writeTo_leavesOutputStreamOpen(MediaType mediaType, ObjectMapper mapper) throws IOException {
+        var closed = new boolean[1];
+        var out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        new Transformer("{ str: 'value' }").transformTo(Documents.Null(), Collections.emptyMap(), mediaType, out);
+
+        Assertions.assertFalse(closed[0], "the stream is the caller's to close");
+        Assertions.assertEquals(Map.of("str", "value"), mapper.readValue(out.toByteArray(), Map.class));
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    public void write_roundTrips(MediaType mediaType, ObjectMapper mapper) throws JSONException {
+        var written = new Transformer(json)
+                .transform(Documents.Null(), Collections.emptyMap(), mediaType, byte[].class);
+        Assertions.assertEquals(mediaType, written.getMediaType());
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(written.getContent(), mediaType));
+
+        JSONAssert.assertEquals(json, doc.getContent(), true);
+    }
+}
@@ -7,6 +7,8 @@ package io.github.jam01.xtrasonnet.plugins;
  * compliance with the Elastic License 2.0.
  */
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import io.github.jam01.xtrasonnet.Transformer;
 import io.github.jam01.xtrasonnet.document.Document;
 import io.github.jam01.xtrasonnet.document.Documents;
@@ -16,11 +18,15 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
 
+import java.math.BigDecimal;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -81,6 +87,49 @@ public class JavaPluginTest {
         assertEquals(MediaTypes.APPLICATION_JSON, doc.getMediaType());
     }
 
+    @Test
+    public void read_nested() throws JSONException {
+        var fleet = new LinkedHashMap<String, Object>();
+        fleet.put("cars", List.of(car, new Truck("red", 4, Size.LARGE)));
+        fleet.put("counts", new int[] { 1, 2 });
+        fleet.put("tags", new String[] { "a", "b" });
+        fleet.put("price", new BigDecimal("10.5"));
+        fleet.put("owner", null);
+
+        var doc = new Transformer("payload").transform(Document.of(fleet, MediaTypes.APPLICATION_JAVA));
+
+        JSONAssert.assertEquals("""
+                { "cars": [{ "color": "blue", "type": "bus" }, { "color": "red", "axles": 4, "size": "LARGE" }],
+                  "counts": [1, 2], "tags": ["a", "b"], "price": 10.5, "owner": null }""",
+                doc.getContent(), true);
+    }
+
+    @Test
+    public void read_annotated() throws JSONException {
+        var doc = new Transformer("payload")
+                .transform(Document.of(new Annotated("blue", null), MediaTypes.APPLICATION_JAVA));
+
+        JSONAssert.assertEquals("""
+                { "colour": "blue" }""", doc.getContent(), true);
+    }
+
+    public record Truck(String color, int axles, Size size) {
+    }
+
+    public enum Size { SMALL, LARGE }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Annotated {
+        @JsonProperty("colour")
+        public String color;
+        public String type;
+
+        public Annotated(String color, String type) {
+            this.color = color;
+            this.type = type;
+        }
+    }
+
     @Test
     public void read_null() throws JSONException {
         var doc = new Transformer("payload").transform(Documents.Null());
@@ -107,6 +156,29 @@ public class JavaPluginTest {
         assertEquals("application/x-java-object;type=io.github.jam01.xtrasonnet.plugins.JavaPluginTest$Car", doc.getMediaType().toString());
     }
 
+    @Test
+    public void write_list() {
+        var doc = new Transformer("[{ color: 'blue', type: 'bus' }, true, 'x', null]")
+                .transform(Documents.Null(), Collections.emptyMap(), MediaTypes.APPLICATION_JAVA, List.class);
+
+        assertEquals(Arrays.asList(carMap, true, "x", null), doc.getContent());
+    }
+
+    @Test
+    public void write_nested() {
+        var doc = new Transformer("{ name: 'main', cars: [{ color: 'blue', type: 'bus' }], spots: [1, 2] }")
+                .transform(Documents.Null(), Collections.emptyMap(), MediaTypes.APPLICATION_JAVA, Garage.class);
+
+        assertEquals(new Garage("main", List.of(car), new int[] { 1, 2 }), doc.getContent());
+    }
+
+    public record Garage(String name, List<Car> cars, int[] spots) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Garage g && name.equals(g.name) && cars.equals(g.cars) && Arrays.equals(spots, g.spots);
+        }
+    }
+
     @Test
     public void write_null() throws JSONException {
         var doc = new Transformer("null")
@@ -0,0 +1,112 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import io.github.jam01.xtrasonnet.Transformer;
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.Documents;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import org.json.JSONException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.msgpack.core.MessagePack;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Collections;
+
+public class MessagePackPluginTest {
+    private final String json = """
+            {"str": "value", "int": 42, "neg": -7, "dbl": 2.5, "bool": true, "nil": null, "arr": [1, "two", {}]}""";
+
+    @Test
+    public void read() throws IOException, JSONException {
+        byte[] bytes;
+        try (var packer = MessagePack.newDefaultBufferPacker()) {
+            packer.packMapHeader(4);
+            packer.packString("str").packString("value");
+            packer.packString("arr").packArrayHeader(3).packInt(1).packDouble(2.5).packNil();
+            packer.packInt(7).packBoolean(true); // a non-string key
+            packer.packString("at").packTimestamp(Instant.parse("2020-01-02T03:04:05Z"));
+            bytes = packer.toByteArray();
+        }
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(bytes, MediaTypes.APPLICATION_MSGPACK));
+
+        JSONAssert.assertEquals("""
+                {"str": "value", "arr": [1, 2.5, null], "7": true, "at": "2020-01-02T03:04:05Z"}""", doc.getContent(), true);
+    }
+
+    @Test
+    public void read_directByteBuffer() throws IOException, JSONException {
+        byte[] bytes;
+        try (var packer = MessagePack.newDefaultBufferPacker()) {
+            packer.packMapHeader(1).packString("str").packString("value");
+            bytes = packer.toByteArray();
+        }
+        var buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(buffer, MediaTypes.APPLICATION_MSGPACK));
+
+        JSONAssert.assertEquals("""
+                {"str": "value"}""", doc.getContent(), true);
+        Assertions.assertEquals(0, buffer.position(), "the caller's buffer is read, not consumed");
+    }
+
+    @Test
+    public void read_leavesInputStreamOpen() throws IOException, JSONException {
+        byte[] bytes;
+        try (var packer = MessagePack.newDefaultBufferPacker()) {
+            packer.packMapHeader(1).packString("str").packString("value");
+            bytes = packer.toByteArray();
+        }
+        var closed = new boolean[1];
+        var is = new ByteArrayInputStream(bytes) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(is, MediaTypes.APPLICATION_MSGPACK));
+
+        JSONAssert.assertEquals("""
+                {"str": "value"}""", doc.getContent(), true);
+        Assertions.assertFalse(closed[0], "the stream is the caller's to close");
+    }
+
+    @Test
+    public void write_packsIntegersAsIntegers() throws IOException {
+        var written = new Transformer("[42, 2.5]")
+                .transform(Documents.Null(), Collections.emptyMap(), MediaTypes.APPLICATION_MSGPACK, byte[].class);
+
+        try (var unpacker = MessagePack.newDefaultUnpacker((byte[]) written.getContent())) {
+            Assertions.assertEquals(2, unpacker.unpackArrayHeader());
+            Assertions.assertEquals(42, unpacker.unpackInt());
+            Assertions.assertEquals(2.5, unpacker.unpackDouble());
+        }
+    }
+
+    @Test
+    public void write_roundTrips() throws JSONException {
+        var written = new Transformer(json)
+                .transform(Documents.Null(), Collections.emptyMap(), MediaTypes.APPLICATION_MSGPACK, byte[].class);
+        Assertions.assertEquals(MediaTypes.APPLICATION_MSGPACK, written.getMediaType());
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(written.getContent(), MediaTypes.APPLICATION_MSGPACK));
+
+        JSONAssert.assertEquals(json, doc.getContent(), true);
+    }
+}
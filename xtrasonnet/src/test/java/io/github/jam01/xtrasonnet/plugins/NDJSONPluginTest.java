@@ -0,0 +1,110 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import io.github.jam01.xtrasonnet.Transformer;
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.Documents;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import org.json.JSONException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+public class NDJSONPluginTest {
+    private final String lines = """
+            {"level": "info", "msg": "started"}
+
+            {"level": "warn", "ms": 1200}\r
+            [1, 2]
+            """;
+
+    @Test
+    public void read() throws JSONException {
+        var doc = new Transformer("payload")
+                .transform(Document.of(lines, MediaTypes.APPLICATION_NDJSON));
+
+        JSONAssert.assertEquals("""
+                [{"level": "info", "msg": "started"}, {"level": "warn", "ms": 1200}, [1, 2]]""", doc.getContent(), true);
+    }
+
+    @Test
+    public void read_inputStream() throws JSONException {
+        var doc = new Transformer("payload")
+                .transform(Document.of(new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8)), MediaTypes.APPLICATION_NDJSON));
+
+        JSONAssert.assertEquals("""
+                [{"level": "info", "msg": "started"}, {"level": "warn", "ms": 1200}, [1, 2]]""", doc.getContent(), true);
+    }
+
+    @Test
+    public void read_byteBuffer_fromItsPosition() throws JSONException {
+        // lines are found from the position on, and each is sliced from where it starts, not from 0
+        byte[] bytes = ("{\"skipped\": true}\n" + lines).getBytes(StandardCharsets.UTF_8);
+        var buffer = ByteBuffer.wrap(bytes).position("{\"skipped\": true}\n".length());
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(buffer, MediaTypes.APPLICATION_NDJSON));
+
+        JSONAssert.assertEquals("""
+                [{"level": "info", "msg": "started"}, {"level": "warn", "ms": 1200}, [1, 2]]""", doc.getContent(), true);
+        Assertions.assertEquals("{\"skipped\": true}\n".length(), buffer.position(), "the buffer is read, but never moved");
+    }
+
+    @Test
+    public void read_parsesOnlyLinesUsed(@TempDir Path dir) throws IOException {
+        var file = Files.writeString(dir.resolve("events.ndjson"), """
+                {"id": 1}
+                {"id": 2, this line is not JSON
+                {"id": 3}
+                """);
+
+        var doc = new Transformer("std.length(payload) + payload[2].id")
+                .transform(Document.of(file, MediaTypes.APPLICATION_NDJSON));
+        Assertions.assertEquals("6", doc.getContent());
+
+        var thrown = Assertions.assertThrows(Exception.class, () -> new Transformer("payload[1].id")
+                .transform(Document.of(file, MediaTypes.APPLICATION_NDJSON)));
+        var chain = new StringBuilder();
+        for (Throwable t = thrown; t != null; t = t.getCause()) chain.append(t.getMessage()).append(" | ");
+        Assertions.assertTrue(chain.toString().contains("line 2"), chain.toString());
+    }
+
+    @Test
+    public void write() {
+        var doc = new Transformer("""
+                [{ level: 'info', msg: 'started' }, 'text', [1, null]]""")
+                .transform(Documents.Null(), Collections.emptyMap(), MediaTypes.APPLICATION_NDJSON, String.class);
+
+        Assertions.assertEquals("""
+                {"level":"info","msg":"started"}
+                "text"
+                [1,null]
+                """, doc.getContent());
+    }
+
+    @Test
+    public void write_bytes_roundTrips() throws JSONException {
+        var written = new Transformer("[{ id: i } for i in std.range(1, 3)]")
+                .transform(Documents.Null(), Collections.emptyMap(), MediaTypes.APPLICATION_NDJSON, byte[].class);
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(written.getContent(), MediaTypes.APPLICATION_NDJSON));
+        JSONAssert.assertEquals("""
+                [{"id": 1}, {"id": 2}, {"id": 3}]""", doc.getContent(), true);
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import io.github.jam01.xtrasonnet.Transformer;
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.Documents;
+import io.github.jam01.xtrasonnet.document.MediaType;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import org.json.JSONException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+public class PlainTextPluginTest {
+    private static final MediaType LINES = MediaTypes.TEXT_PLAIN.withParameter(DefaultPlainTextPlugin.PARAM_LINES, "true");
+
+    private final String text = """
+            first
+
+            third\r
+            fourth""";
+
+    @Test
+    public void read() {
+        var doc = new Transformer("payload")
+                .transform(Document.of(text, MediaTypes.TEXT_PLAIN), Collections.emptyMap(), MediaTypes.TEXT_PLAIN);
+
+        Assertions.assertEquals(text, doc.getContent());
+    }
+
+    @Test
+    public void read_lines() throws JSONException {
+        var doc = new Transformer("payload")
+                .transform(Document.of(text, LINES));
+
+        JSONAssert.assertEquals("""
+                ["first", "", "third", "fourth"]""", doc.getContent(), true);
+    }
+
+    @Test
+    public void read_lines_inputStream() throws JSONException {
+        var doc = new Transformer("payload")
+                .transform(Document.of(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), LINES));
+
+        JSONAssert.assertEquals("""
+                ["first", "", "third", "fourth"]""", doc.getContent(), true);
+    }
+
+    @Test
+    public void read_lines_multiByteNewline() throws JSONException {
+        var doc = new Transformer("payload")
+                .transform(Document.of(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_16)),
+                        LINES.withParameter(MediaTypes.PARAM_CHARSET, StandardCharsets.UTF_16.name())));
+
+        JSONAssert.assertEquals("""
+                ["first", "", "third", "fourth"]""", doc.getContent(), true);
+    }
+
+    @Test
+    public void read_lines_path(@TempDir Path dir) throws IOException {
+        var file = Files.writeString(dir.resolve("log.txt"), """
+                GET /index.html 200
+                GET /missing 404
+                POST /orders 201
+                """);
+
+        var doc = new Transformer("std.length(payload) + ': ' + payload[1]")
+                .transform(Document.of(file, LINES), Collections.emptyMap(), MediaTypes.TEXT_PLAIN);
+        Assertions.assertEquals("3: GET /missing 404", doc.getContent());
+    }
+
+    @Test
+    public void write_lines() {
+        var doc = new Transformer("['first', '', 'third']")
+                .transform(Documents.Null(), Collections.emptyMap(), LINES, String.class);
+
+        Assertions.assertEquals("first\n\nthird\n", doc.getContent());
+    }
+
+    @Test
+    public void write_lines_bytes() {
+        var doc = new Transformer("['ünïcödé', 'text']")
+                .transform(Documents.Null(), Collections.emptyMap(), LINES, byte[].class);
+
+        Assertions.assertEquals("ünïcödé\ntext\n", new String(doc.getContent(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void write_lines_requiresStrings() {
+        var thrown = Assertions.assertThrows(Exception.class, () -> new Transformer("['first', 2]")
+                .transform(Documents.Null(), Collections.emptyMap(), LINES, String.class));
+
+        var chain = new StringBuilder();
+        for (Throwable t = thrown; t != null; t = t.getCause()) chain.append(t.getMessage()).append(" | ");
+        Assertions.assertTrue(chain.toString().contains("index 1"), chain.toString());
+    }
+}
@@ -0,0 +1,189 @@
+package io.github.jam01.xtrasonnet.plugins;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumDescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumValueDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.DescriptorProtos.MessageOptions;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.TimestampProto;
+import io.github.jam01.xtrasonnet.Transformer;
+import io.github.jam01.xtrasonnet.document.Document;
+import io.github.jam01.xtrasonnet.document.Documents;
+import io.github.jam01.xtrasonnet.document.MediaType;
+import io.github.jam01.xtrasonnet.document.MediaTypes;
+import org.json.JSONException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Label.LABEL_OPTIONAL;
+import static com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Label.LABEL_REPEATED;
+import static com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type.TYPE_ENUM;
+import static com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type.TYPE_INT32;
+import static com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type.TYPE_INT64;
+import static com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type.TYPE_MESSAGE;
+import static com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING;
+
+public class ProtobufPluginTest {
+    // as protoc would describe:
+    //   syntax = "proto3"; package acme;
+    //   message Order {
+    //     int64 order_id = 1; string customer = 2; Status status = 3; repeated Line lines = 4;
+    //     map<string, int32> tags = 5; google.protobuf.Timestamp placed = 6;
+    //     message Line { string sku = 1; int32 qty = 2; }
+    //     enum Status { OPEN = 0; SHIPPED = 1; }
+    //   }
+    private static final FileDescriptorProto ORDER_PROTO = FileDescriptorProto.newBuilder()
+            .setName("acme/order.proto")
+            .setPackage("acme")
+            .setSyntax("proto3")
+            .addDependency("google/protobuf/timestamp.proto")
+            .addMessageType(DescriptorProto.newBuilder()
+                    .setName("Order")
+                    .addField(field("order_id", 1, TYPE_INT64).setJsonName("orderId"))
+                    .addField(field("customer", 2, TYPE_STRING))
+                    .addField(field("status", 3, TYPE_ENUM).setTypeName(".acme.Order.Status"))
+                    .addField(field("lines", 4, TYPE_MESSAGE).setLabel(LABEL_REPEATED).setTypeName(".acme.Order.Line"))
+                    .addField(field("tags", 5, TYPE_MESSAGE).setLabel(LABEL_REPEATED).setTypeName(".acme.Order.TagsEntry"))
+                    .addField(field("placed", 6, TYPE_MESSAGE).setTypeName(".google.protobuf.Timestamp"))
+                    .addNestedType(DescriptorProto.newBuilder()
+                            .setName("Line")
+                            .addField(field("sku", 1, TYPE_STRING))
+                            .addField(field("qty", 2, TYPE_INT32)))
+                    .addNestedType(DescriptorProto.newBuilder()
+                            .setName("TagsEntry")
+                            .setOptions(MessageOptions.newBuilder().setMapEntry(true))
+                            .addField(field("key", 1, TYPE_STRING))
+                            .addField(field("value", 2, TYPE_INT32)))
+                    .addEnumType(EnumDescriptorProto.newBuilder()
+                            .setName("Status")
+                            .addValue(EnumValueDescriptorProto.newBuilder().setName("OPEN").setNumber(0))
+                            .addValue(EnumValueDescriptorProto.newBuilder().setName("SHIPPED").setNumber(1))))
+            .build();
+
+    private static Descriptor order;
+
+    @TempDir
+    static Path dir;
+    private static MediaType protobuf;
+
+    @BeforeAll
+    static void describe() throws Exception {
+        order = FileDescriptor.buildFrom(ORDER_PROTO, new FileDescriptor[]{TimestampProto.getDescriptor()})
+                .findMessageTypeByName("Order");
+
+        // written without --include_imports: the well-known types are bundled
+        var set = dir.resolve("order.pb");
+        Files.write(set, FileDescriptorSet.newBuilder().addFile(ORDER_PROTO).build().toByteArray());
+        protobuf = MediaTypes.APPLICATION_PROTOBUF
+                .withParameter(DefaultProtobufPlugin.PARAM_DESCRIPTOR, "file:" + set)
+                .withParameter(DefaultProtobufPlugin.PARAM_MESSAGE, "acme.Order");
+    }
+
+    private static FieldDescriptorProto.Builder field(String name, int number, FieldDescriptorProto.Type type) {
+        return FieldDescriptorProto.newBuilder().setName(name).setNumber(number).setType(type).setLabel(LABEL_OPTIONAL);
+    }
+
+    @Test
+    public void read() throws JSONException {
+        var line = order.findNestedTypeByName("Line");
+        var tags = order.findNestedTypeByName("TagsEntry");
+        byte[] bytes = DynamicMessage.newBuilder(order)
+                .setField(order.findFieldByName("order_id"), 1001L)
+                .setField(order.findFieldByName("status"), order.findEnumTypeByName("Status").findValueByName("SHIPPED"))
+                .addRepeatedField(order.findFieldByName("lines"), DynamicMessage.newBuilder(line)
+                        .setField(line.findFieldByName("sku"), "a-1")
+                        .setField(line.findFieldByName("qty"), 2)
+                        .build())
+                .addRepeatedField(order.findFieldByName("tags"), DynamicMessage.newBuilder(tags)
+                        .setField(tags.findFieldByName("key"), "priority")
+                        .setField(tags.findFieldByName("value"), 1)
+                        .build())
+                .setField(order.findFieldByName("placed"), Timestamp.newBuilder().setSeconds(1714979289).build())
+                .build().toByteArray();
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(bytes, protobuf));
+
+        JSONAssert.assertEquals("""
+                {
+                    "orderId": 1001,
+                    "status": "SHIPPED",
+                    "lines": [{"sku": "a-1", "qty": 2}],
+                    "tags": {"priority": 1},
+                    "placed": "2024-05-06T07:08:09Z"
+                }""", doc.getContent(), true);
+    }
+
+    @Test
+    public void write_roundTrips() throws JSONException {
+        var written = new Transformer("""
+                {
+                    order_id: 7,
+                    customer: 'jane',
+                    status: 'OPEN',
+                    lines: [{ sku: 'b-2', qty: 3 }, { sku: 'c-3' }],
+                    tags: { rush: 2 },
+                    placed: '2024-05-06T07:08:09.5Z',
+                    note:: 'hidden fields are not written'
+                }""")
+                .transform(Documents.Null(), Collections.emptyMap(), protobuf, byte[].class);
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(written.getContent(), protobuf));
+
+        // OPEN is proto3's default, so it is not on the wire, nor read
+        JSONAssert.assertEquals("""
+                {
+                    "orderId": 7,
+                    "customer": "jane",
+                    "lines": [{"sku": "b-2", "qty": 3}, {"sku": "c-3"}],
+                    "tags": {"rush": 2},
+                    "placed": "2024-05-06T07:08:09.500Z"
+                }""", doc.getContent(), true);
+    }
+
+    @Test
+    public void write_withRegisteredDescriptor() throws Exception {
+        var transformer = Transformer.builder("{ orderId: 5, unknown: true }")
+                .extendPlugins(plugins -> plugins.add(0, new DefaultProtobufPlugin(List.of(order))))
+                .build();
+        var registered = MediaTypes.APPLICATION_PROTOBUF.withParameter(DefaultProtobufPlugin.PARAM_MESSAGE, "acme.Order");
+
+        var thrown = Assertions.assertThrows(Exception.class, () ->
+                transformer.transform(Documents.Null(), Collections.emptyMap(), registered, byte[].class));
+        var chain = new StringBuilder();
+        for (Throwable t = thrown; t != null; t = t.getCause()) chain.append(t.getMessage()).append(" | ");
+        Assertions.assertTrue(chain.toString().contains("Unknown field 'unknown' of protobuf message acme.Order"), chain.toString());
+    }
+
+    @Test
+    public void read_withoutMessageFails() {
+        var thrown = Assertions.assertThrows(Exception.class, () -> new Transformer("payload")
+                .transform(Document.of(new byte[0], MediaTypes.APPLICATION_PROTOBUF)));
+
+        var chain = new StringBuilder();
+        for (Throwable t = thrown; t != null; t = t.getCause()) chain.append(t.getMessage()).append(" | ");
+        Assertions.assertTrue(chain.toString().contains("'message' parameter"), chain.toString());
+    }
+}
@@ -11,6 +11,7 @@ import io.github.jam01.xtrasonnet.Transformer;
 import io.github.jam01.xtrasonnet.document.Document;
 import io.github.jam01.xtrasonnet.document.Documents;
 import io.github.jam01.xtrasonnet.document.MediaTypes;
+import io.github.jam01.xtrasonnet.spi.PluginException;
 import org.json.JSONException;
 import org.junit.jupiter.api.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
@@ -22,6 +23,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
 import java.util.Collections;
 
+import javax.xml.stream.XMLStreamException;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
@@ -95,6 +98,34 @@ public class XMLPluginTest {
         assertThat(doc.getContent(), CompareMatcher.isSimilarTo("<root>1</root>").ignoreWhitespace());
     }
 
+    @Test
+    public void write_escapes() {
+        var doc = new Transformer("{ root: { _attr: { q: 'a\"b<' }, _text: 'x & y > z\u0001' } }")
+                .transform(Documents.Null(), Collections.emptyMap(), MediaTypes.APPLICATION_XML
+                        .withParameter(DefaultXMLPlugin.PARAM_EXCLUDE(), DefaultXMLPlugin.EXCLUDE_XML_DECLARATION_VALUE()));
+
+        assertEquals("<root q=\"a&quot;b&lt;\">x &amp; y &gt; z</root>", doc.getContent());
+    }
+
+    @Test
+    public void write_onlyVisibleFieldsAreForced() {
+        // children are forced as they are written; hidden ones never are
+        var doc = new Transformer("{ root: { a: 1, b:: error 'forced' } }")
+                .transform(Documents.Null(), Collections.emptyMap(), MediaTypes.APPLICATION_XML
+                        .withParameter(DefaultXMLPlugin.PARAM_EXCLUDE(), DefaultXMLPlugin.EXCLUDE_XML_DECLARATION_VALUE()));
+
+        assertEquals("<root><a>1</a></root>", doc.getContent());
+    }
+
+    @Test
+    public void read_parametersMatchWhole() {
+        // xmlns.* is a pattern; a parameter merely containing a match of it is still unsupported
+        var mediaType = MediaTypes.APPLICATION_XML.withParameter("xmlns.ex", "http://example.com");
+        assertEquals(rootAsJsonBasic, new Transformer("payload").transform(Document.of(root, mediaType)).getContent());
+        assertThrows(Exception.class, () -> new Transformer("payload")
+                .transform(Document.of(root, MediaTypes.APPLICATION_XML.withParameter("x.xmlns.ex", "http://example.com"))));
+    }
+
     @Test
     public void read_nameform_isAccepted() throws JSONException {
         // nameform is consumed by BadgerFishHandler but was never registered as a reader param, so
@@ -168,6 +199,88 @@ public class XMLPluginTest {
                 "expected the reported location of the failure, got: " + chain);
     }
 
+    @Test
+    public void read_afterFailure_parsesCleanly() throws JSONException {
+        // parsers are pooled: one handed back mid-document must come out clean, and still configured;
+        // that the pool hands the same parser back is checked by SAXParsersTest
+        var expected = new Transformer("payload")
+                .transform(Document.of("<root><a>1</a></root>", MediaTypes.APPLICATION_XML));
+        for (int i = 0; i < 8; i++) {
+            var thrown = assertThrows(PluginException.class, () -> new Transformer("payload")
+                    .transform(Document.of("<root><a>unclosed</root>", MediaTypes.APPLICATION_XML)));
+            assertTrue(thrown.getMessage().startsWith("Could not read XML: "), thrown.getMessage());
+        }
+
+        var json = new Transformer("payload")
+                .transform(Document.of("<root><a>1</a></root>", MediaTypes.APPLICATION_XML));
+        JSONAssert.assertEquals(expected.getContent(), json.getContent(), true);
+
+        var doctype = assertThrows(PluginException.class, () -> new Transformer("payload")
+                .transform(Document.of("<!DOCTYPE root><root/>", MediaTypes.APPLICATION_XML)));
+        assertTrue(doctype.getMessage().contains("DOCTYPE"), doctype.getMessage());
+    }
+
+    @Test
+    public void read_recordPath() throws JSONException {
+        var catalog = """
+                <catalog xmlns:p="http://example.com/p">
+                    <name>spring</name>
+                    <products>
+                        <p:product sku="1"><p:name>bus</p:name></p:product>
+                        <p:product sku="2"><p:name>truck</p:name><![CDATA[<heavy>]]></p:product>
+                    </products>
+                </catalog>""";
+
+        var doc = new Transformer("payload")
+                .transform(Document.of(catalog, MediaTypes.APPLICATION_XML
+                        .withParameter(DefaultXMLPlugin.PARAM_RECORD_PATH(), "catalog/products/p:product")));
+
+        JSONAssert.assertEquals("""
+                [
+                    {"p:product":{"_xmlns":{"p":"http://example.com/p"},"_attr":{"sku":"1"},"p:name":{"_text":"bus"}}},
+                    {"p:product":{"_xmlns":{"p":"http://example.com/p"},"_attr":{"sku":"2"},"p:name":{"_text":"truck"},"_text":"<heavy>"}}
+                ]""", doc.getContent(), true);
+    }
+
+    @Test
+    public void read_recordPath_each_as_document() throws JSONException {
+        // a record reads exactly as the same element would as a document of its own
+        var product = "<product sku='1'><name>bus</name><tag>a</tag><tag>b</tag></product>";
+        var simplified = MediaTypes.APPLICATION_XML
+                .withParameter(DefaultXMLPlugin.PARAM_MODE(), DefaultXMLPlugin.SIMPLIFIED_MODE_VALUE());
+
+        var alone = new Transformer("payload").transform(Document.of(product, simplified));
+        var records = new Transformer("payload").transform(Document.of("<catalog>" + product + product + "</catalog>",
+                simplified.withParameter(DefaultXMLPlugin.PARAM_RECORD_PATH(), "catalog/product")));
+
+        JSONAssert.assertEquals("[" + alone.getContent() + "," + alone.getContent() + "]", records.getContent(), true);
+    }
+
+    @Test
+    public void read_recordPath_rejectsDoctype() {
+        String xxe = """
+                <?xml version="1.0"?>
+                <!DOCTYPE foo [<!ENTITY xxe SYSTEM "file:///etc/passwd">]>
+                <root><a>&xxe;</a></root>""";
+
+        var thrown = assertThrows(PluginException.class, () -> new Transformer("payload")
+                .transform(Document.of(xxe, MediaTypes.APPLICATION_XML.withParameter(DefaultXMLPlugin.PARAM_RECORD_PATH(), "root/a"))));
+
+        assertInstanceOf(XMLStreamException.class, thrown.getCause());
+        assertTrue(thrown.getMessage().startsWith("Could not read XML: "), thrown.getMessage());
+        assertTrue(thrown.getMessage().endsWith("DOCTYPE is disallowed"), thrown.getMessage());
+    }
+
+    @Test
+    public void read_recordPath_malformedXmlFails() {
+        var thrown = assertThrows(PluginException.class, () -> new Transformer("payload")
+                .transform(Document.of("<root><a>1</a><a>unclosed</root>",
+                        MediaTypes.APPLICATION_XML.withParameter(DefaultXMLPlugin.PARAM_RECORD_PATH(), "root/a"))));
+
+        assertInstanceOf(XMLStreamException.class, thrown.getCause());
+        assertEquals("Could not read XML: " + thrown.getCause().getMessage(), thrown.getMessage());
+    }
+
     @Test
     public void write_comprehensive_simplified() {
         var doc = new Transformer(TestUtils.resourceAsString("xml/reports-simplified.json"))
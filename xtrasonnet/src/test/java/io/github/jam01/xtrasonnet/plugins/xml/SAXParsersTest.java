@@ -0,0 +1,55 @@
+package io.github.jam01.xtrasonnet.plugins.xml;
+
+/*-
+ * Copyright 2022-2026 Jose Montoya.
+ *
+ * Licensed under the Elastic License 2.0; you may not use this file except in
+ * compliance with the Elastic License 2.0.
+ */
+
+import org.junit.jupiter.api.Test;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SAXParsersTest {
+    private static final SAXParsers$ PARSERS = SAXParsers$.MODULE$;
+
+    @Test
+    public void release_reusesPooledParser() throws Exception {
+        // the namespace unaware pool, which nothing else in this JVM is likely to be borrowing from
+        SAXParser parser = PARSERS.borrow(false);
+        PARSERS.release(parser, false);
+
+        SAXParser again = PARSERS.borrow(false);
+        try {
+            assertSame(parser, again);
+            assertTrue(again.getXMLReader().getFeature("http://apache.org/xml/features/disallow-doctype-decl"));
+        } finally {
+            PARSERS.release(again, false);
+        }
+    }
+
+    @Test
+    public void release_dropsForeignParser() throws Exception {
+        // as an XMLLoader that overrides parser but not release would hand back
+        var factory = SAXParserFactory.newInstance();
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", false);
+        SAXParser foreign = factory.newSAXParser();
+        PARSERS.release(foreign, true);
+
+        SAXParser borrowed = PARSERS.borrow(true);
+        try {
+            assertNotSame(foreign, borrowed);
+            assertTrue(borrowed.getXMLReader().getFeature("http://apache.org/xml/features/disallow-doctype-decl"));
+            assertFalse(borrowed.getXMLReader().getFeature("http://xml.org/sax/features/external-general-entities"));
+        } finally {
+            PARSERS.release(borrowed, true);
+        }
+    }
+}
@@ -10,12 +10,17 @@ import io.github.jam01.xtrasonnet.DataFormatService;
 import io.github.jam01.xtrasonnet.Transformer;
 import io.github.jam01.xtrasonnet.document.Document;
 import io.github.jam01.xtrasonnet.document.Documents;
+import io.github.jam01.xtrasonnet.document.MediaType;
 import io.github.jam01.xtrasonnet.document.MediaTypes;
 import org.junit.jupiter.api.Test;
 
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -88,4 +93,71 @@ public class DataFormatPluginsTest {
         assertFalse(chain.contains("use the test method"),
                 "should not leak the plugin SPI contract to the caller: " + chain);
     }
+
+    @Test
+    public void resolutionsAreKept() {
+        var asked = new AtomicInteger();
+        var service = new DataFormatService(List.of(new BasePlugin() {
+            @Override
+            public boolean canWrite(MediaType mediaType, Class<?> clazz) {
+                asked.incrementAndGet();
+                return MediaTypes.APPLICATION_JSON.equalsTypeAndSubtype(mediaType);
+            }
+        }));
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(service.thatCanWrite(MediaTypes.APPLICATION_JSON, String.class).isPresent());
+            assertFalse(service.thatCanWrite(MediaTypes.APPLICATION_XML, String.class).isPresent());
+        }
+        assertEquals(4, asked.get(), "a found plugin should be resolved once, and a miss every time");
+    }
+
+    @Test
+    public void resolutionsAreBounded() {
+        var asked = new AtomicInteger();
+        var service = new DataFormatService(List.of(new BasePlugin() {
+            @Override
+            public boolean canWrite(MediaType mediaType, Class<?> clazz) {
+                asked.incrementAndGet();
+                return true;
+            }
+        }));
+
+        // a distinct media type for every value of a parameter, as a caller's record paths could be
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(service.thatCanWrite(MediaTypes.APPLICATION_JSON.withParameter("n", String.valueOf(i)), String.class).isPresent());
+        }
+        asked.set(0);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(service.thatCanWrite(MediaTypes.APPLICATION_JSON.withParameter("n", String.valueOf(i)), String.class).isPresent());
+        }
+        assertTrue(asked.get() > 900, "only the first media types seen should be kept, asked " + asked.get());
+    }
+
+    @Test
+    public void configsAreBounded() {
+        var derived = new AtomicInteger();
+        var plugin = new BasePlugin() {
+            Object config(MediaType mediaType) {
+                return configFor(mediaType, mt -> {
+                    derived.incrementAndGet();
+                    return new Object();
+                });
+            }
+        };
+
+        // a distinct set of parameters for every value, as a caller's charsets or record paths could be
+        var first = plugin.config(MediaTypes.APPLICATION_JSON.withParameter("n", "0"));
+        for (int i = 1; i < 1000; i++) {
+            plugin.config(MediaTypes.APPLICATION_JSON.withParameter("n", String.valueOf(i)));
+        }
+        assertEquals(1000, derived.get());
+
+        derived.set(0);
+        assertSame(first, plugin.config(MediaTypes.APPLICATION_JSON.withParameter("n", "0")), "the first sets are kept");
+        for (int i = 1; i < 1000; i++) {
+            plugin.config(MediaTypes.APPLICATION_JSON.withParameter("n", String.valueOf(i)));
+        }
+        assertTrue(derived.get() > 900, "only the first parameter sets should be kept, derived " + derived.get());
+    }
 }